@@ -0,0 +1,87 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.verbraeck.smartmeter.chart.BarChart;
+import nl.verbraeck.smartmeter.chart.LineChart;
+
+/**
+ * Benchmark for building the charts of a day from a DaySeries, and for writing a day chart with 1440 points as a script. The
+ * series is loaded once from the synthetic day files in target/jmh-meter. Run with <code>-prof gc</code> to see the allocation
+ * rate next to the number of operations per second.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsmartmeter.folder=target/jmh-meter")
+public class ChartBenchmark
+{
+    /** the readings of a closed day. */
+    private DaySeries series;
+
+    /** the power chart of the closed day. */
+    private LineChart powerChart;
+
+    /**
+     * Load the series of a closed day, and build its power chart.
+     * @throws IOException on write error of the synthetic data
+     */
+    @Setup
+    public void setup() throws IOException
+    {
+        SyntheticData.prepareFolder(62);
+        this.series = TelegramFile.getDaySeries(LocalDate.now().minusDays(10));
+        this.powerChart = TelegramChart.powerDay(this.series, "power");
+    }
+
+    /**
+     * Build the power chart of a day.
+     * @return LineChart; the chart
+     */
+    @Benchmark
+    public LineChart powerDay()
+    {
+        return TelegramChart.powerDay(this.series, "power");
+    }
+
+    /**
+     * Build the energy per hour chart of a day.
+     * @return BarChart; the chart
+     */
+    @Benchmark
+    public BarChart energyPerHourDay()
+    {
+        return TelegramChart.energyPerHourDay(this.series, "energy");
+    }
+
+    /**
+     * Write the script of the power chart of a day.
+     * @return String; the script part of the HTML page
+     */
+    @Benchmark
+    public String lineChartToScriptHtml()
+    {
+        return this.powerChart.toScriptHtml();
+    }
+
+}
@@ -0,0 +1,88 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for rendering the full HTML pages from the synthetic day files in target/jmh-meter, without the web server: the
+ * overview page, the electricity page of a closed day, and the comparison page. Run with <code>-prof gc</code> to see the
+ * allocation rate next to the number of operations per second.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Dsmartmeter.folder=target/jmh-meter")
+public class PageBenchmark
+{
+    /** a closed day in the middle of the synthetic data. */
+    private LocalDate closedDay;
+
+    /**
+     * Write the synthetic day files when they are not there yet, and load the page framework as the web server does.
+     * @throws IOException on write error of the synthetic data, or read error of the framework
+     */
+    @Setup
+    public void setup() throws IOException
+    {
+        SyntheticData.prepareFolder(62);
+        this.closedDay = LocalDate.now().minusDays(10);
+        try (InputStream stream = SmartMeterWeb.class.getResourceAsStream("/framework.html"))
+        {
+            SmartMeterWeb.setFramework(new String(stream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        if (Constants.DATA_CACHING)
+            RollupStore.getInstance();
+    }
+
+    /**
+     * Render the overview page.
+     * @return String; the HTML page
+     */
+    @Benchmark
+    public String overview()
+    {
+        return SmartMeterWeb.overview();
+    }
+
+    /**
+     * Render the electricity page of a closed day.
+     * @return String; the HTML page
+     */
+    @Benchmark
+    public String electricity()
+    {
+        return SmartMeterWeb.electricity(this.closedDay);
+    }
+
+    /**
+     * Render the comparison page.
+     * @return String; the HTML page
+     */
+    @Benchmark
+    public String comparison()
+    {
+        return SmartMeterWeb.comparison();
+    }
+
+}
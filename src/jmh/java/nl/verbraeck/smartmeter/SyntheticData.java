@@ -0,0 +1,151 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * SyntheticData writes deterministic telegram files for the benchmarks, in the same format as the cron job (a date line and a
+ * time line, followed by a DSMR 5 telegram with CRLF line endings and a valid CRC), with one telegram per minute.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class SyntheticData
+{
+    /** formatter for the date line. */
+    private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /** formatter for the time line. */
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    /** formatter for the DSMR timestamp. */
+    private static final DateTimeFormatter DSMR = DateTimeFormatter.ofPattern("yyMMddHHmmss");
+
+    /**
+     * Utility class; do not instantiate.
+     */
+    private SyntheticData()
+    {
+        // Do not instantiate
+    }
+
+    /**
+     * Write telegram files for a number of consecutive days into a folder. Each file except the first one starts with a
+     * telegram of one minute before midnight, like the files of the cron job.
+     * @param folder Path; the folder to write the files to; it is created when it does not exist
+     * @param firstDate LocalDate; the date of the first file
+     * @param days int; the number of day files to write
+     * @throws IOException on write error
+     */
+    public static void writeDays(final Path folder, final LocalDate firstDate, final int days) throws IOException
+    {
+        Files.createDirectories(folder);
+        for (int d = 0; d < days; d++)
+        {
+            LocalDate date = firstDate.plusDays(d);
+            writeDay(folder.resolve(Constants.FILE_PREFIX + date + Constants.FILE_SUFFIX), date, d > 0);
+        }
+    }
+
+    /**
+     * Fill the folder in Constants.LOCAL_FOLDER with the given number of day files, ending with today, unless the folder
+     * already has a file for today. Because the register values only depend on the time, files that are kept from an earlier
+     * run fit together with the new ones. Point the folder to a scratch directory with -Dsmartmeter.folder=...
+     * @param days int; the number of day files, including today
+     * @throws IOException on write error
+     */
+    public static synchronized void prepareFolder(final int days) throws IOException
+    {
+        Path folder = Path.of(Constants.LOCAL_FOLDER);
+        LocalDate today = LocalDate.now();
+        if (!Files.exists(folder.resolve(Constants.FILE_PREFIX + today + Constants.FILE_SUFFIX)))
+            writeDays(folder, today.minusDays(days - 1), days);
+    }
+
+    /**
+     * Write one day file with 1440 (or 1441) telegrams.
+     * @param file Path; the file to write
+     * @param date LocalDate; the date of the file
+     * @param beforeMidnight boolean; whether to start with the telegram of 23:59 of the previous day
+     * @throws IOException on write error
+     */
+    public static void writeDay(final Path file, final LocalDate date, final boolean beforeMidnight) throws IOException
+    {
+        // register values are a deterministic function of the minute since the epoch, so consecutive days fit together
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.ISO_8859_1))
+        {
+            for (int m = beforeMidnight ? -1 : 0; m < 1440; m++)
+            {
+                LocalDateTime time = date.atStartOfDay().plusMinutes(m).plusSeconds(2);
+                writer.write(time.format(DATE) + "\n" + time.format(TIME) + "\n");
+                writer.write(telegram(time));
+            }
+        }
+    }
+
+    /**
+     * Make one telegram for the given time, including the CRC line.
+     * @param time LocalDateTime; the time of the telegram
+     * @return String; the telegram text with CRLF line endings
+     */
+    public static String telegram(final LocalDateTime time)
+    {
+        long minute = time.toLocalDate().toEpochDay() * 1440L + time.toLocalTime().toSecondOfDay() / 60;
+        double power = 0.2 + (minute * 7 % 50) / 100.0;
+        double t1 = 1000.0 + minute * 0.0025;
+        double t2 = 800.0 + minute * 0.005;
+        double gas = 100.0 + (minute / 5) * 0.01;
+        LocalDateTime gasTime = time.withSecond(0).minusMinutes(time.getMinute() % 5);
+        StringBuilder s = new StringBuilder(1024);
+        s.append("/XMX5LGBBLA4415473347\r\n\r\n");
+        s.append("1-3:0.2.8(50)\r\n");
+        s.append("0-0:1.0.0(").append(time.format(DSMR)).append("S)\r\n");
+        s.append("0-0:96.1.1(4530303435303034303832303939373137)\r\n");
+        s.append(String.format(Locale.US, "1-0:1.8.1(%010.3f*kWh)\r\n", t1));
+        s.append(String.format(Locale.US, "1-0:1.8.2(%010.3f*kWh)\r\n", t2));
+        s.append("1-0:2.8.1(000000.000*kWh)\r\n");
+        s.append("1-0:2.8.2(000000.000*kWh)\r\n");
+        s.append("0-0:96.14.0(0001)\r\n");
+        s.append(String.format(Locale.US, "1-0:1.7.0(%06.3f*kW)\r\n", power));
+        s.append("1-0:2.7.0(00.000*kW)\r\n");
+        s.append("0-0:96.7.21(00003)\r\n");
+        s.append("0-0:96.7.9(00000)\r\n");
+        s.append("1-0:99.97.0(0)(0-0:96.7.19)\r\n");
+        s.append("1-0:32.32.0(00011)\r\n");
+        s.append("1-0:32.36.0(00000)\r\n");
+        s.append("0-0:96.13.0()\r\n");
+        s.append("1-0:32.7.0(228.0*V)\r\n");
+        s.append(String.format(Locale.US, "1-0:31.7.0(%03d*A)\r\n", (int) (power * 1000.0 / 228.0)));
+        s.append(String.format(Locale.US, "1-0:21.7.0(%06.3f*kW)\r\n", power));
+        s.append("1-0:22.7.0(00.000*kW)\r\n");
+        s.append("0-1:24.1.0(003)\r\n");
+        s.append("0-1:96.1.0(4730303339303031383033353931323138)\r\n");
+        s.append("0-1:24.2.1(").append(gasTime.format(DSMR)).append(String.format(Locale.US, "S)(%09.3f*m3)\r\n", gas));
+        s.append("!");
+        s.append(String.format("%04X\r\n", crc16(s)));
+        return s.toString();
+    }
+
+    /**
+     * Calculate the CRC16/ARC checksum of a telegram, from the "/" up to and including the "!".
+     * @param text CharSequence; the text of the telegram
+     * @return int; the 16-bit CRC
+     */
+    private static int crc16(final CharSequence text)
+    {
+        int crc = 0;
+        for (int i = 0; i < text.length(); i++)
+            crc = Crc16.update(crc, text.charAt(i));
+        return crc;
+    }
+
+}
@@ -0,0 +1,82 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for loading telegrams with TelegramFile from a folder with synthetic day files: a closed day, the last telegram,
+ * and the first telegrams of the last 30 days. The folder is target/jmh-meter, and is filled with 62 days up to today on the
+ * first run. Run with <code>-prof gc</code> to see the allocation rate next to the number of operations per second.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsmartmeter.folder=target/jmh-meter")
+public class TelegramFileBenchmark
+{
+    /** a closed day in the middle of the synthetic data. */
+    private LocalDate closedDay;
+
+    /**
+     * Write the synthetic day files when they are not there yet.
+     * @throws IOException on write error
+     */
+    @Setup
+    public void setup() throws IOException
+    {
+        SyntheticData.prepareFolder(62);
+        this.closedDay = LocalDate.now().minusDays(10);
+    }
+
+    /**
+     * Load all telegrams of a closed day, with the deprecated map API, to compare with the series.
+     * @return SortedMap&lt;String, Telegram&gt;; the telegrams of the day
+     */
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public SortedMap<String, Telegram> getDayTelegrams()
+    {
+        return TelegramFile.getDayTelegrams(this.closedDay);
+    }
+
+    /**
+     * Get the last telegram of today.
+     * @return Telegram; the last telegram
+     */
+    @Benchmark
+    public Telegram getLastTelegram()
+    {
+        return TelegramFile.getLastTelegram();
+    }
+
+    /**
+     * Get the first telegrams of the last 30 days, as the overview page does.
+     * @return SortedMap&lt;String, Telegram&gt;; the first telegram of each day
+     */
+    @Benchmark
+    public SortedMap<String, Telegram> getStartOfDaysTelegrams()
+    {
+        return TelegramFile.getStartOfDaysTelegrams(LocalDate.now(), 30);
+    }
+
+}
@@ -0,0 +1,97 @@
+package nl.verbraeck.smartmeter;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for parsing one telegram: with the original parser and its startsWith() chain as the baseline, from a list of
+ * lines (each line is converted to bytes first), and directly from the bytes as the TelegramReader does. The last two look up
+ * the packed OBIS code in the ObisRegistry. Run with <code>-prof gc</code> to compare the allocation rates. The CRC check of
+ * the telegram is measured separately.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TelegramParserBenchmark
+{
+    /** the telegram as lines, as the line-based parser gets them. */
+    private List<String> lines;
+
+    /** the telegram as bytes, as the TelegramReader gets them. */
+    private byte[] bytes;
+
+    /**
+     * Make one synthetic telegram.
+     */
+    @Setup
+    public void setup()
+    {
+        String telegram = SyntheticData.telegram(LocalDateTime.of(2023, 5, 5, 12, 34, 2));
+        this.lines = Arrays.asList(telegram.split("\r\n"));
+        this.bytes = telegram.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Parse the telegram with the original parser, which compares every line with the OBIS codes using startsWith().
+     * @return Telegram; the parsed telegram
+     */
+    @Benchmark
+    public Telegram parseStartsWith()
+    {
+        return StartsWithTelegramParser.parseTelegram(this.lines);
+    }
+
+    /**
+     * Parse the telegram with the line-based parser.
+     * @return Telegram; the parsed telegram
+     */
+    @Benchmark
+    public Telegram parseLines()
+    {
+        return TelegramParser.parseTelegram(this.lines);
+    }
+
+    /**
+     * Parse the telegram with the byte-level parser.
+     * @return Telegram; the parsed telegram
+     */
+    @Benchmark
+    public Telegram parseBytes()
+    {
+        return TelegramParser.parseTelegram(this.bytes, 0, this.bytes.length);
+    }
+
+    /**
+     * Check the CRC16 of the telegram, as the TelegramReader does before parsing it; divide by the length of the telegram
+     * (about 800 bytes) for the time per byte.
+     * @return TelegramParser.CrcStatus; the result of the check
+     */
+    @Benchmark
+    public TelegramParser.CrcStatus checkCrc()
+    {
+        return TelegramParser.checkCrc(this.bytes, 0, this.bytes.length);
+    }
+
+}
@@ -0,0 +1,138 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Before/after benchmark for reading a full day file (1441 telegrams): the original readAllLines + lines.remove(0) loop, and the
+ * single-pass TelegramReader.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TelegramReaderBenchmark
+{
+    /** the synthetic full day file. */
+    private Path dayFile;
+
+    /**
+     * Write a full day file to a temporary folder.
+     * @throws IOException on write error
+     */
+    @Setup
+    public void setup() throws IOException
+    {
+        this.dayFile = Files.createTempFile("meter_", Constants.FILE_SUFFIX);
+        SyntheticData.writeDay(this.dayFile, LocalDate.of(2023, 5, 5), true);
+    }
+
+    /**
+     * Remove the day file.
+     * @throws IOException on delete error
+     */
+    @TearDown
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(this.dayFile);
+    }
+
+    /**
+     * The original way of reading a day file.
+     * @return SortedMap&lt;String, Telegram&gt;; the telegrams of the day
+     * @throws IOException on read error
+     */
+    @Benchmark
+    public SortedMap<String, Telegram> readAllLinesRemoveFirst() throws IOException
+    {
+        SortedMap<String, Telegram> telegramMap = new TreeMap<>();
+        List<String> lines = Files.readAllLines(this.dayFile);
+        String line = "";
+        List<String> telegramLines = new ArrayList<>();
+        while (!lines.isEmpty())
+        {
+            telegramLines.clear();
+            do
+            {
+                line = lines.remove(0);
+            }
+            while (!line.startsWith("/") && !lines.isEmpty());
+            if (!lines.isEmpty())
+            {
+                do
+                {
+                    telegramLines.add(line);
+                    line = lines.remove(0);
+                }
+                while (!line.startsWith("!") && !lines.isEmpty());
+            }
+            if (line.startsWith("!")) // full telegram
+            {
+                Telegram telegram = TelegramParser.parseTelegram(telegramLines);
+                telegramMap.put(telegram.getDateTime(), telegram);
+            }
+        }
+        return telegramMap;
+    }
+
+    /**
+     * Reading a day file with the single-pass TelegramReader.
+     * @return SortedMap&lt;String, Telegram&gt;; the telegrams of the day
+     * @throws IOException on read error
+     */
+    @Benchmark
+    public SortedMap<String, Telegram> telegramReader() throws IOException
+    {
+        SortedMap<String, Telegram> telegramMap = new TreeMap<>();
+        try (TelegramReader reader = TelegramReader.open(this.dayFile))
+        {
+            while (reader.hasNext())
+            {
+                Telegram telegram = reader.next();
+                telegramMap.put(telegram.getDateTime(), telegram);
+            }
+        }
+        return telegramMap;
+    }
+
+    /**
+     * Reading only the first telegram of a day file, stopping early.
+     * @return Telegram; the first telegram of the day file
+     * @throws IOException on read error
+     */
+    @Benchmark
+    public Telegram telegramReaderFirst() throws IOException
+    {
+        try (TelegramReader reader = TelegramReader.open(this.dayFile))
+        {
+            return reader.next();
+        }
+    }
+
+}
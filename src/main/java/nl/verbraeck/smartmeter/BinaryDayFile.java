@@ -0,0 +1,607 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BinaryDayFile stores the telegrams of one day in a compact, columnar binary file (meter_yyyy-MM-dd.bin) next to the text file.
+ * The file has a header, followed by one column of 4-byte ints per Telegram field. Each column has a fixed number of rows: row 0
+ * holds the telegram from just before midnight with which most day files start, and row 1 + m holds the telegram of minute m of
+ * the day. Decimal values are stored in thousandths (e.g., Wh instead of kWh), which is exact for the 3-decimal values in the
+ * telegrams. Times are stored in seconds relative to the start of the day; Integer.MIN_VALUE in the time column marks an empty
+ * row. The meter ids and the text message are stored once in a table of strings in the header, and the columns of a row hold
+ * the index of the strings of that telegram.
+ * <p>
+ * The file is read into a buffer with one read of the FileChannel, so opening a day does not parse any text. The file is not
+ * mapped into memory, because a mapped file cannot be replaced on Windows until the mapping is garbage collected. Only closed
+ * days are converted, on a background thread with convertLater(); today's file is still growing and is read by the
+ * TodayTailer.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class BinaryDayFile
+{
+    /** magic number at the start of the file: "SMDF". */
+    private static final int MAGIC = 0x534D4446;
+
+    /** version of the file format; version 2 added the table of strings and the string columns. */
+    private static final int VERSION = 2;
+
+    /** number of rows: one row for the telegram before midnight, and one row per minute. */
+    public static final int ROWS = 1 + 1440;
+
+    /** value in the time column for an empty row. */
+    public static final int EMPTY = Integer.MIN_VALUE;
+
+    /** column: time of the telegram in seconds since the start of the day (negative for the day before). */
+    public static final int TIME = 0;
+
+    /** column: version. */
+    public static final int P1_VERSION = 1;
+
+    /** column: electricity delivered tariff 1 [Wh]. */
+    public static final int TARIFF1 = 2;
+
+    /** column: electricity delivered tariff 2 [Wh]. */
+    public static final int TARIFF2 = 3;
+
+    /** column: electricity delivered back tariff 1 [Wh]. */
+    public static final int BACK_TARIFF1 = 4;
+
+    /** column: electricity delivered back tariff 2 [Wh]. */
+    public static final int BACK_TARIFF2 = 5;
+
+    /** column: current tariff. */
+    public static final int TARIFF = 6;
+
+    /** column: power delivered [W]. */
+    public static final int POWER_DELIVERED = 7;
+
+    /** column: power received [W]. */
+    public static final int POWER_RECEIVED = 8;
+
+    /** column: number of power failures in any phase. */
+    public static final int POWER_FAILURES = 9;
+
+    /** column: number of long power failures in any phase. */
+    public static final int LONG_POWER_FAILURES = 10;
+
+    /** column: number of voltage sags in phase L1; L2 and L3 follow. */
+    public static final int VOLTAGE_SAGS_L1 = 11;
+
+    /** column: number of voltage swells in phase L1; L2 and L3 follow. */
+    public static final int VOLTAGE_SWELLS_L1 = 14;
+
+    /** column: voltage L1 [mV]; L2 and L3 follow. */
+    public static final int VOLTAGE_L1 = 17;
+
+    /** column: current L1 [mA]; L2 and L3 follow. */
+    public static final int CURRENT_L1 = 20;
+
+    /** column: power delivered L1 [W]; L2 and L3 follow. */
+    public static final int POWER_DELIVERED_L1 = 23;
+
+    /** column: power received L1 [W]; L2 and L3 follow. */
+    public static final int POWER_RECEIVED_L1 = 26;
+
+    /** column: gas device type. */
+    public static final int GAS_DEVICE_TYPE = 29;
+
+    /** column: gas capture time in seconds since the start of the day (negative for the day before). */
+    public static final int GAS_CAPTURE_TIME = 30;
+
+    /** column: gas delivered [dm3]. */
+    public static final int GAS_DELIVERED = 31;
+
+    /** column: index of the electricity meter id in the table of strings. */
+    public static final int ELECTRICITY_METER_ID = 32;
+
+    /** column: index of the gas meter id in the table of strings. */
+    public static final int GAS_METER_ID = 33;
+
+    /** column: index of the text message in the table of strings. */
+    public static final int TEXT_MESSAGE = 34;
+
+    /** number of columns. */
+    public static final int COLUMNS = 35;
+
+    /** the thread that converts the day files in the background. */
+    private static final ThreadPoolExecutor CONVERTER = new ThreadPoolExecutor(0, 1, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable ->
+            {
+                Thread thread = new Thread(runnable, "BinaryDayFile-converter");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+
+    /** the text day files that wait to be converted. */
+    private static final Set<Path> PENDING = ConcurrentHashMap.newKeySet();
+
+    /** the results of the CRC checks of the telegrams in the converted day files; every conversion counts its telegrams. */
+    private static final CrcCounts CRC_COUNTS = new CrcCounts();
+
+    /** the columns of the file. */
+    private final IntBuffer columns;
+
+    /** the date of the file. */
+    private final LocalDate date;
+
+    /** the table of strings: meter ids and text messages. */
+    private final String[] strings;
+
+    /**
+     * Open a binary day file by reading it into memory.
+     * @param path Path; the binary day file
+     * @throws IOException when the file cannot be read or has the wrong format
+     */
+    private BinaryDayFile(final Path path) throws IOException
+    {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0)
+                continue;
+        }
+        buffer.flip();
+        if (buffer.limit() < 30 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.getInt(16) != ROWS || buffer.getInt(20) != COLUMNS)
+            throw new IOException("not a binary day file: " + path);
+        this.date = LocalDate.ofEpochDay(buffer.getLong(8));
+        int dataOffset = buffer.getInt(24);
+        buffer.position(28);
+        this.strings = new String[buffer.getShort() & 0xFFFF];
+        for (int i = 0; i < this.strings.length; i++)
+            this.strings[i] = getString(buffer);
+        buffer.position(dataOffset);
+        this.columns = buffer.slice().asIntBuffer();
+        if (this.columns.capacity() < ROWS * COLUMNS)
+            throw new IOException("binary day file too short: " + path);
+    }
+
+    /**
+     * Open a binary day file.
+     * @param path Path; the binary day file
+     * @return BinaryDayFile; the mapped day file
+     * @throws IOException when the file cannot be read or has the wrong format
+     */
+    public static BinaryDayFile open(final Path path) throws IOException
+    {
+        return new BinaryDayFile(path);
+    }
+
+    /**
+     * Return the path of the binary day file that belongs to a text day file.
+     * @param textPath Path; the text day file (meter_yyyy-MM-dd.txt)
+     * @return Path; the binary day file (meter_yyyy-MM-dd.bin)
+     */
+    public static Path binaryPath(final Path textPath)
+    {
+        String name = textPath.getFileName().toString();
+        return textPath.resolveSibling(
+                name.substring(0, name.length() - Constants.FILE_SUFFIX.length()) + Constants.BINARY_FILE_SUFFIX);
+    }
+
+    /**
+     * Return whether an up-to-date binary day file exists for the text day file, i.e., a binary file that is not older than
+     * the text file.
+     * @param textPath Path; the text day file
+     * @return boolean; whether an up-to-date binary day file exists
+     */
+    public static boolean isCurrent(final Path textPath)
+    {
+        try
+        {
+            Path binaryPath = binaryPath(textPath);
+            return Files.exists(binaryPath)
+                    && Files.getLastModifiedTime(binaryPath).compareTo(Files.getLastModifiedTime(textPath)) >= 0;
+        }
+        catch (IOException exception)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Convert a text day file to a binary day file on the background thread, unless it is already waiting to be converted.
+     * Errors are logged.
+     * @param date LocalDate; the date of the day file
+     * @param textPath Path; the text day file
+     */
+    public static void convertLater(final LocalDate date, final Path textPath)
+    {
+        if (!PENDING.add(textPath))
+            return;
+        CONVERTER.execute(() ->
+        {
+            try
+            {
+                convert(date, textPath);
+            }
+            catch (IOException | RuntimeException exception)
+            {
+                System.err.println("error in BinaryDayFile.convert(): " + textPath + ": " + exception.getMessage());
+            }
+            finally
+            {
+                PENDING.remove(textPath);
+            }
+        });
+    }
+
+    /**
+     * Convert a text day file to a binary day file. The binary file is written to a temporary file first, and then moved in
+     * place, so readers never see a partially written file. The file has one row per minute: when several telegrams fall in
+     * the same row (e.g., when the P1 recorder stores a telegram every few seconds), the first one is kept, and telegrams after
+     * the day are left out, as in DaySeries; both are logged.
+     * @param date LocalDate; the date of the day file
+     * @param textPath Path; the text day file
+     * @return SortedMap&lt;String, Telegram&gt;; the telegrams that were read from the text file
+     * @throws IOException on read or write error
+     */
+    public static SortedMap<String, Telegram> convert(final LocalDate date, final Path textPath) throws IOException
+    {
+        SortedMap<String, Telegram> telegrams = new TreeMap<>();
+        int skipped = 0;
+        try (TelegramReader reader = TelegramReader.open(textPath))
+        {
+            while (reader.hasNext())
+            {
+                Telegram telegram = reader.next();
+                if (telegrams.putIfAbsent(telegram.getDateTime(), telegram) != null)
+                    skipped++;
+            }
+            CRC_COUNTS.add(reader);
+        }
+        int[] lost = write(date, telegrams, binaryPath(textPath));
+        skipped += lost[0];
+        if (skipped > 0 || lost[1] > 0)
+            System.err.println("BinaryDayFile: " + textPath + ": " + skipped + " telegrams after the first telegram of the "
+                    + "same minute left out, " + lost[1] + " telegrams after the end of the day left out");
+        return telegrams;
+    }
+
+    /**
+     * Write the telegrams of a day to a binary day file.
+     * @param date LocalDate; the date of the day file
+     * @param telegrams SortedMap&lt;String, Telegram&gt;; the telegrams of the day, keyed by "yyyyMMdd HH:mm"
+     * @param binaryPath Path; the binary day file to write
+     * @return int[]; the number of telegrams that were left out after the first telegram of the same row, and the number of
+     *         telegrams after the end of the day that were left out; of the telegrams before the day, the last one is kept
+     * @throws IOException on write error
+     */
+    public static int[] write(final LocalDate date, final SortedMap<String, Telegram> telegrams, final Path binaryPath)
+            throws IOException
+    {
+        int[] data = new int[ROWS * COLUMNS];
+        Arrays.fill(data, 0, ROWS, EMPTY);
+        Map<String, Integer> stringIndex = new LinkedHashMap<>();
+        int skipped = 0;
+        int after = 0;
+        LocalDateTime midnight = date.atStartOfDay();
+        for (Telegram t : telegrams.values())
+        {
+            int time = seconds(midnight, t.date.atTime(t.time));
+            int row = time < 0 ? 0 : 1 + time / 60;
+            if (row >= ROWS)
+            {
+                after++;
+                continue;
+            }
+            if (data[TIME * ROWS + row] != EMPTY && row > 0)
+            {
+                skipped++;
+                continue;
+            }
+            data[TIME * ROWS + row] = time;
+            data[P1_VERSION * ROWS + row] = t.version;
+            data[TARIFF1 * ROWS + row] = milli(t.electricityTariff1kWh);
+            data[TARIFF2 * ROWS + row] = milli(t.electricityTariff2kWh);
+            data[BACK_TARIFF1 * ROWS + row] = milli(t.electrBackTariff1kWh);
+            data[BACK_TARIFF2 * ROWS + row] = milli(t.electrBackTariff2kWh);
+            data[TARIFF * ROWS + row] = t.tariff;
+            data[POWER_DELIVERED * ROWS + row] = milli(t.powerDeliveredkW);
+            data[POWER_RECEIVED * ROWS + row] = milli(t.powerReceivedkW);
+            data[POWER_FAILURES * ROWS + row] = t.powerFailuresAnyPhase;
+            data[LONG_POWER_FAILURES * ROWS + row] = t.longPowerFailuresAnyPhase;
+            data[VOLTAGE_SAGS_L1 * ROWS + row] = t.voltageSagsL1;
+            data[(VOLTAGE_SAGS_L1 + 1) * ROWS + row] = t.voltageSagsL2;
+            data[(VOLTAGE_SAGS_L1 + 2) * ROWS + row] = t.voltageSagsL3;
+            data[VOLTAGE_SWELLS_L1 * ROWS + row] = t.voltageSwellsL1;
+            data[(VOLTAGE_SWELLS_L1 + 1) * ROWS + row] = t.voltageSwellsL2;
+            data[(VOLTAGE_SWELLS_L1 + 2) * ROWS + row] = t.voltageSwellsL3;
+            data[VOLTAGE_L1 * ROWS + row] = milli(t.voltageL1);
+            data[(VOLTAGE_L1 + 1) * ROWS + row] = milli(t.voltageL2);
+            data[(VOLTAGE_L1 + 2) * ROWS + row] = milli(t.voltageL3);
+            data[CURRENT_L1 * ROWS + row] = milli(t.currentL1);
+            data[(CURRENT_L1 + 1) * ROWS + row] = milli(t.currentL2);
+            data[(CURRENT_L1 + 2) * ROWS + row] = milli(t.currentL3);
+            data[POWER_DELIVERED_L1 * ROWS + row] = milli(t.powerDeliveredL1kW);
+            data[(POWER_DELIVERED_L1 + 1) * ROWS + row] = milli(t.powerDeliveredL2kW);
+            data[(POWER_DELIVERED_L1 + 2) * ROWS + row] = milli(t.powerDeliveredL3kW);
+            data[POWER_RECEIVED_L1 * ROWS + row] = milli(t.powerReceivedL1kW);
+            data[(POWER_RECEIVED_L1 + 1) * ROWS + row] = milli(t.powerReceivedL2kW);
+            data[(POWER_RECEIVED_L1 + 2) * ROWS + row] = milli(t.powerReceivedL3kW);
+            data[GAS_DEVICE_TYPE * ROWS + row] = t.gasDeviceTypeId;
+            data[GAS_CAPTURE_TIME * ROWS + row] =
+                    t.gasCaptureDate == null ? EMPTY : seconds(midnight, t.gasCaptureDate.atTime(t.gasCaptureTime));
+            data[GAS_DELIVERED * ROWS + row] = milli(t.gasDeliveredM3);
+            data[ELECTRICITY_METER_ID * ROWS + row] = stringIndex.computeIfAbsent(t.electricityMeterId, k -> stringIndex.size());
+            data[GAS_METER_ID * ROWS + row] = stringIndex.computeIfAbsent(t.gasMeterId, k -> stringIndex.size());
+            data[TEXT_MESSAGE * ROWS + row] = stringIndex.computeIfAbsent(t.textMessage, k -> stringIndex.size());
+        }
+
+        List<byte[]> strings = new ArrayList<>();
+        int dataOffset = 28 + 2;
+        for (String string : stringIndex.keySet())
+        {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            strings.add(bytes);
+            dataOffset += 2 + bytes.length;
+        }
+        dataOffset = (dataOffset + 7) & ~7;
+        ByteBuffer buffer = ByteBuffer.allocate(dataOffset + 4 * ROWS * COLUMNS);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(date.toEpochDay()).putInt(ROWS).putInt(COLUMNS).putInt(dataOffset);
+        buffer.putShort((short) strings.size());
+        for (byte[] bytes : strings)
+            putString(buffer, bytes);
+        buffer.position(dataOffset);
+        buffer.asIntBuffer().put(data);
+
+        Path tempPath = binaryPath.resolveSibling(binaryPath.getFileName() + ".tmp");
+        Files.write(tempPath, buffer.array());
+        Files.move(tempPath, binaryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new int[] {skipped, after};
+    }
+
+    /**
+     * Return the date of the day file.
+     * @return LocalDate; the date of the day file
+     */
+    public LocalDate getDate()
+    {
+        return this.date;
+    }
+
+    /**
+     * Return whether a row contains a telegram.
+     * @param row int; the row (0 for the telegram before midnight, 1 + minute for the other telegrams)
+     * @return boolean; whether the row contains a telegram
+     */
+    public boolean hasRow(final int row)
+    {
+        return this.columns.get(TIME * ROWS + row) != EMPTY;
+    }
+
+    /**
+     * Return the raw int value of a column in a row.
+     * @param column int; the column, e.g. TARIFF1
+     * @param row int; the row (0 for the telegram before midnight, 1 + minute for the other telegrams)
+     * @return int; the value as stored (thousandths for decimal values)
+     */
+    public int getInt(final int column, final int row)
+    {
+        return this.columns.get(column * ROWS + row);
+    }
+
+    /**
+     * Return the value of a decimal column in a row.
+     * @param column int; the column, e.g. TARIFF1
+     * @param row int; the row (0 for the telegram before midnight, 1 + minute for the other telegrams)
+     * @return double; the value in the unit of the telegram (e.g., kWh)
+     */
+    public double getDouble(final int column, final int row)
+    {
+        return this.columns.get(column * ROWS + row) / 1000.0;
+    }
+
+    /**
+     * Make a Telegram of a row.
+     * @param row int; the row (0 for the telegram before midnight, 1 + minute for the other telegrams)
+     * @return Telegram; the telegram in the row, or null when the row is empty
+     */
+    public Telegram getTelegram(final int row)
+    {
+        if (!hasRow(row))
+            return null;
+        LocalDateTime midnight = this.date.atStartOfDay();
+        Telegram t = new Telegram();
+        LocalDateTime time = midnight.plusSeconds(getInt(TIME, row));
+        t.date = time.toLocalDate();
+        t.time = time.toLocalTime();
+        t.version = getInt(P1_VERSION, row);
+        t.electricityMeterId = this.strings[getInt(ELECTRICITY_METER_ID, row)];
+        t.electricityTariff1kWh = getDouble(TARIFF1, row);
+        t.electricityTariff2kWh = getDouble(TARIFF2, row);
+        t.electrBackTariff1kWh = getDouble(BACK_TARIFF1, row);
+        t.electrBackTariff2kWh = getDouble(BACK_TARIFF2, row);
+        t.tariff = getInt(TARIFF, row);
+        t.powerDeliveredkW = getDouble(POWER_DELIVERED, row);
+        t.powerReceivedkW = getDouble(POWER_RECEIVED, row);
+        t.powerFailuresAnyPhase = getInt(POWER_FAILURES, row);
+        t.longPowerFailuresAnyPhase = getInt(LONG_POWER_FAILURES, row);
+        t.voltageSagsL1 = getInt(VOLTAGE_SAGS_L1, row);
+        t.voltageSagsL2 = getInt(VOLTAGE_SAGS_L1 + 1, row);
+        t.voltageSagsL3 = getInt(VOLTAGE_SAGS_L1 + 2, row);
+        t.voltageSwellsL1 = getInt(VOLTAGE_SWELLS_L1, row);
+        t.voltageSwellsL2 = getInt(VOLTAGE_SWELLS_L1 + 1, row);
+        t.voltageSwellsL3 = getInt(VOLTAGE_SWELLS_L1 + 2, row);
+        t.textMessage = this.strings[getInt(TEXT_MESSAGE, row)];
+        t.voltageL1 = getDouble(VOLTAGE_L1, row);
+        t.voltageL2 = getDouble(VOLTAGE_L1 + 1, row);
+        t.voltageL3 = getDouble(VOLTAGE_L1 + 2, row);
+        t.currentL1 = getDouble(CURRENT_L1, row);
+        t.currentL2 = getDouble(CURRENT_L1 + 1, row);
+        t.currentL3 = getDouble(CURRENT_L1 + 2, row);
+        t.powerDeliveredL1kW = getDouble(POWER_DELIVERED_L1, row);
+        t.powerDeliveredL2kW = getDouble(POWER_DELIVERED_L1 + 1, row);
+        t.powerDeliveredL3kW = getDouble(POWER_DELIVERED_L1 + 2, row);
+        t.powerReceivedL1kW = getDouble(POWER_RECEIVED_L1, row);
+        t.powerReceivedL2kW = getDouble(POWER_RECEIVED_L1 + 1, row);
+        t.powerReceivedL3kW = getDouble(POWER_RECEIVED_L1 + 2, row);
+        t.gasDeviceTypeId = getInt(GAS_DEVICE_TYPE, row);
+        t.gasMeterId = this.strings[getInt(GAS_METER_ID, row)];
+        int gasCapture = getInt(GAS_CAPTURE_TIME, row);
+        if (gasCapture != EMPTY)
+        {
+            LocalDateTime gasTime = midnight.plusSeconds(gasCapture);
+            t.gasCaptureDate = gasTime.toLocalDate();
+            t.gasCaptureTime = gasTime.toLocalTime();
+        }
+        t.gasDeliveredM3 = getDouble(GAS_DELIVERED, row);
+        return t;
+    }
+
+    /**
+     * Make Telegrams of all rows, in the same form as the telegrams that are read from the text file.
+     * @return SortedMap&lt;String, Telegram&gt;; the sorted map with the date and time as the key (formatted as "yyyyMMdd
+     *         HH:mm") to the corresponding Telegram
+     */
+    public SortedMap<String, Telegram> getTelegrams()
+    {
+        SortedMap<String, Telegram> telegrams = new TreeMap<>();
+        for (int row = 0; row < ROWS; row++)
+        {
+            Telegram telegram = getTelegram(row);
+            if (telegram != null)
+                telegrams.put(telegram.getDateTime(), telegram);
+        }
+        return telegrams;
+    }
+
+    /**
+     * Make a DaySeries directly from the columns, without making Telegram objects.
+     * @return DaySeries; the series of the day
+     */
+    public DaySeries getDaySeries()
+    {
+        DaySeries series = new DaySeries(this.date, ROWS);
+        for (int row = 0; row < ROWS; row++)
+        {
+            if (!hasRow(row))
+                continue;
+            int time = getInt(TIME, row);
+            int i = series.slot(time < 0 ? DaySeries.BEFORE_DAY : (int) Math.rint(time / 60.0));
+            if (i < 0)
+                continue;
+            series.tariff1[i] = getDouble(TARIFF1, row);
+            series.tariff2[i] = getDouble(TARIFF2, row);
+            series.backTariff1[i] = getDouble(BACK_TARIFF1, row);
+            series.backTariff2[i] = getDouble(BACK_TARIFF2, row);
+            series.powerDelivered[i] = getDouble(POWER_DELIVERED, row);
+            series.powerReceived[i] = getDouble(POWER_RECEIVED, row);
+            series.voltageL1[i] = getDouble(VOLTAGE_L1, row);
+            series.currentL1[i] = getDouble(CURRENT_L1, row);
+            series.gasDelivered[i] = getDouble(GAS_DELIVERED, row);
+            int gasCapture = getInt(GAS_CAPTURE_TIME, row);
+            series.gasCapture[i] = gasCapture == EMPTY ? DaySeries.NO_CAPTURE : gasCapture;
+        }
+        return series;
+    }
+
+    /**
+     * Convert a value to thousandths.
+     * @param value double; the value
+     * @return int; the value in thousandths, rounded
+     */
+    private static int milli(final double value)
+    {
+        return (int) Math.round(value * 1000.0);
+    }
+
+    /**
+     * Return the number of seconds between midnight and a time.
+     * @param midnight LocalDateTime; the start of the day
+     * @param time LocalDateTime; the time
+     * @return int; the number of seconds, negative when the time is before midnight
+     */
+    private static int seconds(final LocalDateTime midnight, final LocalDateTime time)
+    {
+        return (int) Duration.between(midnight, time).getSeconds();
+    }
+
+    /**
+     * Write a length-prefixed string to the buffer.
+     * @param buffer ByteBuffer; the buffer to write to
+     * @param bytes byte[]; the UTF-8 bytes of the string
+     */
+    private static void putString(final ByteBuffer buffer, final byte[] bytes)
+    {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Read a length-prefixed string from the buffer.
+     * @param buffer ByteBuffer; the buffer to read from
+     * @return String; the string
+     */
+    private static String getString(final ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Return the results of the CRC checks of the telegrams in the day files that were converted.
+     * @return CrcCounts; the results of the CRC checks of the converted telegrams
+     */
+    public static CrcCounts getCrcCounts()
+    {
+        return CRC_COUNTS;
+    }
+
+    /**
+     * Convert all closed day files (all files except the newest one) in Constants.LOCAL_FOLDER that do not have an up-to-date
+     * binary day file yet.
+     * @param args String[]; not used
+     */
+    public static void main(final String[] args)
+    {
+        Map.Entry<LocalDate, Path> newest = DayFileIndex.getInstance().last();
+        if (newest == null)
+            return;
+        for (Map.Entry<LocalDate, Path> entry : DayFileIndex.getInstance().range(null, newest.getKey().minusDays(1)).entrySet())
+        {
+            if (isCurrent(entry.getValue()))
+                continue;
+            try
+            {
+                convert(entry.getKey(), entry.getValue());
+            }
+            catch (IOException exception)
+            {
+                System.err.println("error converting " + entry.getValue() + ": " + exception.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,296 @@
+package nl.verbraeck.smartmeter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * BoundedAsyncRunner runs the connections of the web server on a bounded pool of worker threads with a bounded queue, instead
+ * of the default runner of NanoHTTPD that starts a new thread for every connection without a limit. When all workers are busy
+ * and the queue is full, the connection is handed to a single extra thread that answers every request on it with 503 (Service
+ * Unavailable) and closes it; when that thread has too much work as well, the connection is closed right away.
+ * <p>
+ * On JDK 21 and later, the runner can use virtual threads instead of the worker pool. A virtual thread is cheap, also when it
+ * waits for the event stream, so the number of connections is then only limited by a semaphore with the same total (workers
+ * plus queue). The virtual thread executor is created with reflection, so the code still compiles for Java 11.
+ * </p>
+ * <p>
+ * Note that NanoHTTPD keeps a connection on its thread as long as the browser keeps it alive, so the workers are bounded per
+ * connection rather than per request.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public class BoundedAsyncRunner implements NanoHTTPD.AsyncRunner
+{
+    /** the number of connections that can wait for the thread that rejects them. */
+    private static final int REJECT_QUEUE_SIZE = 16;
+
+    /** whether the current thread answers requests with 503. */
+    private static final ThreadLocal<Boolean> REJECTING = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    /** the executor of the connections. */
+    private final ExecutorService executor;
+
+    /** the pool of worker threads, or null when virtual threads are used. */
+    private final ThreadPoolExecutor pool;
+
+    /** the limit of the number of connections with virtual threads, or null when the worker pool is used. */
+    private final Semaphore permits;
+
+    /** the single thread that answers the connections that do not fit with 503. */
+    private final ThreadPoolExecutor rejecter;
+
+    /** the connections that are running or waiting. */
+    private final List<NanoHTTPD.ClientHandler> running = Collections.synchronizedList(new ArrayList<>());
+
+    /** the number of connections that are being handled. */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /** the highest number of connections that waited in the queue. */
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    /** the number of connections that were accepted. */
+    private final AtomicLong accepted = new AtomicLong();
+
+    /** the number of connections that were rejected. */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** the number of the next thread, for the thread name. */
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    /**
+     * Create a runner with a bounded pool of workers and a bounded queue, or with virtual threads.
+     * @param workers int; the number of worker threads
+     * @param queueSize int; the number of connections that can wait for a worker
+     * @param virtualThreads boolean; whether to use virtual threads; ignored when the JDK does not offer virtual threads
+     */
+    public BoundedAsyncRunner(final int workers, final int queueSize, final boolean virtualThreads)
+    {
+        ExecutorService virtualExecutor = virtualThreads ? virtualThreadExecutor() : null;
+        if (virtualExecutor != null)
+        {
+            this.executor = virtualExecutor;
+            this.pool = null;
+            this.permits = new Semaphore(workers + queueSize);
+        }
+        else
+        {
+            this.pool = new ThreadPoolExecutor(workers, workers, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueSize),
+                    runnable -> daemon(runnable, "SmartMeterWeb-" + this.threadNumber.incrementAndGet()),
+                    new ThreadPoolExecutor.AbortPolicy());
+            this.pool.allowCoreThreadTimeOut(true);
+            this.executor = this.pool;
+            this.permits = null;
+        }
+        this.rejecter = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(REJECT_QUEUE_SIZE),
+                runnable -> daemon(runnable, "SmartMeterWeb-reject"), new ThreadPoolExecutor.AbortPolicy());
+        this.rejecter.allowCoreThreadTimeOut(true);
+        System.out.println("web server uses " + (isVirtual() ? "virtual threads" : workers + " worker threads") + ", max "
+                + (workers + queueSize) + " connections");
+    }
+
+    /**
+     * Create a daemon thread.
+     * @param runnable Runnable; the code of the thread
+     * @param name String; the name of the thread
+     * @return Thread; the (not started) thread
+     */
+    private static Thread daemon(final Runnable runnable, final String name)
+    {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Create an executor with a new virtual thread per task, when the JDK offers virtual threads (JDK 21 and later).
+     * @return ExecutorService; the executor, or null when the JDK does not offer virtual threads
+     */
+    private static ExecutorService virtualThreadExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            System.err.println("virtual threads are not available in Java " + Runtime.version() + "; using worker threads");
+            return null;
+        }
+    }
+
+    /**
+     * Return whether the current thread answers the requests of a connection that did not fit with 503 (Service Unavailable).
+     * The serve() method of the web server checks this first.
+     * @return boolean; whether the current request has to be rejected
+     */
+    public static boolean isRejecting()
+    {
+        return REJECTING.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void exec(final NanoHTTPD.ClientHandler clientHandler)
+    {
+        this.running.add(clientHandler);
+        try
+        {
+            if (this.permits != null && !this.permits.tryAcquire())
+                throw new RejectedExecutionException("too many connections");
+            try
+            {
+                this.executor.execute(() -> handle(clientHandler));
+            }
+            catch (RuntimeException | Error e)
+            {
+                // handle() does not run, so it cannot release the permit
+                if (this.permits != null)
+                    this.permits.release();
+                throw e;
+            }
+            this.accepted.incrementAndGet();
+            if (this.pool != null)
+                this.maxQueueDepth.accumulateAndGet(this.pool.getQueue().size(), Math::max);
+        }
+        catch (RejectedExecutionException e)
+        {
+            this.rejected.incrementAndGet();
+            try
+            {
+                this.rejecter.execute(() -> reject(clientHandler));
+            }
+            catch (RejectedExecutionException e2)
+            {
+                clientHandler.close();
+                this.running.remove(clientHandler);
+            }
+        }
+    }
+
+    /**
+     * Handle a connection on a worker thread or a virtual thread.
+     * @param clientHandler NanoHTTPD.ClientHandler; the connection
+     */
+    private void handle(final NanoHTTPD.ClientHandler clientHandler)
+    {
+        this.active.incrementAndGet();
+        try
+        {
+            clientHandler.run();
+        }
+        finally
+        {
+            this.active.decrementAndGet();
+            if (this.permits != null)
+                this.permits.release();
+        }
+    }
+
+    /**
+     * Answer the requests of a connection that did not fit with 503 (Service Unavailable).
+     * @param clientHandler NanoHTTPD.ClientHandler; the connection
+     */
+    private void reject(final NanoHTTPD.ClientHandler clientHandler)
+    {
+        REJECTING.set(Boolean.TRUE);
+        try
+        {
+            clientHandler.run();
+        }
+        finally
+        {
+            REJECTING.set(Boolean.FALSE);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void closed(final NanoHTTPD.ClientHandler clientHandler)
+    {
+        this.running.remove(clientHandler);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void closeAll()
+    {
+        List<NanoHTTPD.ClientHandler> handlers;
+        synchronized (this.running)
+        {
+            handlers = new ArrayList<>(this.running);
+        }
+        for (NanoHTTPD.ClientHandler clientHandler : handlers)
+            clientHandler.close();
+    }
+
+    /**
+     * Return whether the runner uses virtual threads.
+     * @return boolean; whether the runner uses virtual threads
+     */
+    public boolean isVirtual()
+    {
+        return this.pool == null;
+    }
+
+    /**
+     * Return the number of connections that are being handled.
+     * @return int; the number of active connections
+     */
+    public int getActive()
+    {
+        return this.active.get();
+    }
+
+    /**
+     * Return the number of connections that wait for a worker thread; always 0 with virtual threads.
+     * @return int; the number of waiting connections
+     */
+    public int getQueueDepth()
+    {
+        return this.pool == null ? 0 : this.pool.getQueue().size();
+    }
+
+    /**
+     * Return the highest number of connections that waited for a worker thread at the same time.
+     * @return int; the highest queue depth
+     */
+    public int getMaxQueueDepth()
+    {
+        return this.maxQueueDepth.get();
+    }
+
+    /**
+     * Return the number of connections that were accepted.
+     * @return long; the number of accepted connections
+     */
+    public long getAccepted()
+    {
+        return this.accepted.get();
+    }
+
+    /**
+     * Return the number of connections that were rejected because all workers were busy and the queue was full.
+     * @return long; the number of rejected connections
+     */
+    public long getRejected()
+    {
+        return this.rejected.get();
+    }
+
+}
@@ -16,8 +16,8 @@ public class Constants
     /** the port of the server. */
     public static final int SERVER_PORT = 3000;
 
-    /** the local folder of the daily files with the telegrams. */
-    public static final String LOCAL_FOLDER = "E:/jar/meter";
+    /** the local folder of the daily files with the telegrams; can be overridden with -Dsmartmeter.folder=... */
+    public static final String LOCAL_FOLDER = System.getProperty("smartmeter.folder", "E:/jar/meter");
     // public static final String LOCAL_FOLDER = "/home/alexandv/meter";
 
     /** the prefix of the telegram files. */
@@ -26,7 +26,43 @@ public class Constants
     /** the suffix of the telegram files. */
     public static final String FILE_SUFFIX = ".txt";
 
+    /** the suffix of the binary (columnar) versions of the telegram files of closed days. */
+    public static final String BINARY_FILE_SUFFIX = ".bin";
+
+    /** the name of the file in the local folder with the first and last readings of the closed days and months. */
+    public static final String ROLLUP_FILE = "rollup.bin";
+
+    /** the P1 device to record the telegrams from (null: the cron job records them); set with -Dsmartmeter.p1.device=... */
+    public static final String P1_DEVICE = System.getProperty("smartmeter.p1.device");
+
+    /** the interval in seconds (1-60) at which a P1 telegram is recorded; set with -Dsmartmeter.p1.interval=... */
+    public static final int P1_INTERVAL = Integer.getInteger("smartmeter.p1.interval", 60);
+
+    /** whether to keep telegrams with an invalid CRC (flagged) instead of skipping them; -Dsmartmeter.crc.keepInvalid=true */
+    public static final boolean CRC_KEEP_INVALID = Boolean.getBoolean("smartmeter.crc.keepInvalid");
+
     /** whether to use caching or not. */
     public static final boolean DATA_CACHING = true;
 
+    /** the maximum number of bytes of the rendered pages in the page cache. */
+    public static final long PAGE_CACHE_BYTES = 8L * 1024L * 1024L;
+
+    /** the maximum time in milliseconds that a request waits for the same page or file that another request is loading. */
+    public static final long SINGLE_FLIGHT_TIMEOUT_MS = 30_000L;
+
+    /** the number of worker threads of the web server. */
+    public static final int HTTP_WORKERS = 16;
+
+    /** the number of connections that can wait for a worker thread; more connections get 503 (Service Unavailable). */
+    public static final int HTTP_QUEUE_SIZE = 32;
+
+    /** whether to use virtual threads (JDK 21+) for the web server; set with -Dsmartmeter.virtualThreads=true */
+    public static final boolean VIRTUAL_THREADS = Boolean.getBoolean("smartmeter.virtualThreads");
+
+    /** the gzip level (1-9) of dynamic responses; can be overridden with -Dsmartmeter.gzip.level=..., and is limited to 1-9 */
+    public static final int GZIP_LEVEL = Math.max(1, Math.min(9, Integer.getInteger("smartmeter.gzip.level", 4)));
+
+    /** the minimum size in bytes of a dynamic response to compress; can be overridden with -Dsmartmeter.gzip.min=... */
+    public static final int GZIP_MIN_BYTES = Integer.getInteger("smartmeter.gzip.min", 1024);
+
 }
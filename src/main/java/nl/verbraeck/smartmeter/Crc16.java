@@ -0,0 +1,63 @@
+package nl.verbraeck.smartmeter;
+
+/**
+ * Crc16 calculates the CRC16/ARC checksum (polynomial 0x8005, reflected as 0xA001, initial value 0) that a DSMR meter puts after
+ * the "!" of every telegram, over the bytes from the "/" up to and including the "!". The calculation uses a table of 256
+ * entries, so every byte costs one table lookup, a shift and two xors instead of a loop over its 8 bits.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class Crc16
+{
+    /** the CRC of every byte value. */
+    private static final char[] TABLE = new char[256];
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++)
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+            TABLE[i] = (char) crc;
+        }
+    }
+
+    /**
+     * Utility class; do not instantiate.
+     */
+    private Crc16()
+    {
+        // Do not instantiate
+    }
+
+    /**
+     * Add one byte to a CRC.
+     * @param crc int; the CRC of the bytes before, 0 at the start
+     * @param b int; the byte to add
+     * @return int; the CRC including the byte
+     */
+    public static int update(final int crc, final int b)
+    {
+        return (crc >>> 8) ^ TABLE[(crc ^ b) & 0xFF];
+    }
+
+    /**
+     * Calculate the CRC of a range of bytes.
+     * @param bytes byte[]; the array with the bytes
+     * @param start int; the index of the first byte
+     * @param end int; the index after the last byte
+     * @return int; the 16-bit CRC of the bytes
+     */
+    public static int compute(final byte[] bytes, final int start, final int end)
+    {
+        int crc = 0;
+        for (int i = start; i < end; i++)
+            crc = (crc >>> 8) ^ TABLE[(crc ^ bytes[i]) & 0xFF];
+        return crc;
+    }
+
+}
@@ -0,0 +1,78 @@
+package nl.verbraeck.smartmeter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CrcCounts counts the results of the CRC checks of the telegrams where the telegrams enter the system: the P1 recorder, the
+ * tailer of today's file, and the conversion of a day file to a binary day file. The telegrams are counted once there, and not
+ * again every time a day file is read for a page.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class CrcCounts
+{
+    /** the number of telegrams with a valid CRC. */
+    private final AtomicLong valid = new AtomicLong();
+
+    /** the number of telegrams with an invalid CRC. */
+    private final AtomicLong invalid = new AtomicLong();
+
+    /** the number of telegrams without a CRC. */
+    private final AtomicLong missing = new AtomicLong();
+
+    /**
+     * Count the result of the CRC check of one telegram.
+     * @param status TelegramParser.CrcStatus; the result of the CRC check
+     */
+    public void add(final TelegramParser.CrcStatus status)
+    {
+        if (status == TelegramParser.CrcStatus.VALID)
+            this.valid.incrementAndGet();
+        else if (status == TelegramParser.CrcStatus.INVALID)
+            this.invalid.incrementAndGet();
+        else
+            this.missing.incrementAndGet();
+    }
+
+    /**
+     * Count the results of the CRC checks of the telegrams that a reader has read.
+     * @param reader TelegramReader; the reader
+     */
+    public void add(final TelegramReader reader)
+    {
+        this.valid.addAndGet(reader.getCrcValid());
+        this.invalid.addAndGet(reader.getCrcInvalid());
+        this.missing.addAndGet(reader.getCrcMissing());
+    }
+
+    /**
+     * Return the number of telegrams with a valid CRC.
+     * @return long; the number of telegrams with a valid CRC
+     */
+    public long getValid()
+    {
+        return this.valid.get();
+    }
+
+    /**
+     * Return the number of telegrams with an invalid CRC.
+     * @return long; the number of telegrams with an invalid CRC
+     */
+    public long getInvalid()
+    {
+        return this.invalid.get();
+    }
+
+    /**
+     * Return the number of telegrams without a CRC (e.g., of a DSMR 2 or 3 meter).
+     * @return long; the number of telegrams without a CRC
+     */
+    public long getMissing()
+    {
+        return this.missing.get();
+    }
+
+}
@@ -0,0 +1,216 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DataApi produces the JSON for the data endpoints of the web server, so the browser can fetch (and cache) the data instead of
+ * getting it inside generated script blocks:
+ * <ul>
+ * <li><code>/api/last</code>: the latest telegram;</li>
+ * <li><code>/api/day?date=yyyy-MM-dd</code>: the series of a day, as parallel arrays;</li>
+ * <li><code>/api/days?from=yyyy-MM-dd&amp;to=yyyy-MM-dd</code>: the totals per day (both dates inclusive);</li>
+ * <li><code>/api/months?from=yyyy-MM&amp;to=yyyy-MM</code>: the totals per month (both months inclusive).</li>
+ * </ul>
+ * The data comes from the same loaders as the HTML pages: TelegramFile.getLastTelegram(), TelegramFile.getDaySeries(), and
+ * TelegramFile.query() with the DAY and MONTH resolution. A total is the difference of the registers at the start of the
+ * period and at the start of the next period, or the latest telegram for the current period. When the next period has no data,
+ * the total of the period is not known, and is null; it is not charged with the usage of the gap.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class DataApi
+{
+    /**
+     * Utility class; do not instantiate.
+     */
+    private DataApi()
+    {
+        // Do not instantiate
+    }
+
+    /**
+     * Return whether a period that ends on the given day is fully in the past: there is a day file of a later date, so the data
+     * of the period will not change anymore, and the response can be cached as immutable.
+     * @param lastDay LocalDate; the last day of the period
+     * @return boolean; whether the period is closed
+     */
+    public static boolean isClosed(final LocalDate lastDay)
+    {
+        Map.Entry<LocalDate, ?> newest = DayFileIndex.getInstance().last();
+        return newest != null && lastDay.isBefore(newest.getKey());
+    }
+
+    /**
+     * Return the latest telegram as JSON.
+     * @return String; the JSON object with the latest telegram
+     * @throws IOException cannot happen when writing to a StringBuilder
+     */
+    public static String last() throws IOException
+    {
+        Telegram telegram = TelegramFile.getLastTelegram();
+        StringBuilder s = new StringBuilder(1024);
+        JsonWriter json = new JsonWriter(s);
+        json.beginObject();
+        json.name("date").value(telegram.date == null ? null : telegram.date.toString());
+        json.name("time").value(telegram.time == null ? null : telegram.time.toString());
+        json.name("tariff").value(telegram.tariff);
+        json.name("tariff1").value(telegram.electricityTariff1kWh);
+        json.name("tariff2").value(telegram.electricityTariff2kWh);
+        json.name("backTariff1").value(telegram.electrBackTariff1kWh);
+        json.name("backTariff2").value(telegram.electrBackTariff2kWh);
+        json.name("powerDelivered").value(telegram.powerDeliveredkW);
+        json.name("powerReceived").value(telegram.powerReceivedkW);
+        json.name("voltageL1").value(telegram.voltageL1);
+        json.name("voltageL2").value(telegram.voltageL2);
+        json.name("voltageL3").value(telegram.voltageL3);
+        json.name("currentL1").value(telegram.currentL1);
+        json.name("currentL2").value(telegram.currentL2);
+        json.name("currentL3").value(telegram.currentL3);
+        json.name("powerFailures").value(telegram.powerFailuresAnyPhase);
+        json.name("longPowerFailures").value(telegram.longPowerFailuresAnyPhase);
+        json.name("gasDelivered").value(telegram.gasDeliveredM3);
+        json.name("gasCapture").value(telegram.gasCaptureDate == null || telegram.gasCaptureTime == null ? null
+                : telegram.gasCaptureDate.atTime(telegram.gasCaptureTime).toString());
+        json.endObject();
+        return s.toString();
+    }
+
+    /**
+     * Return the series of a day as JSON, with one array per field. The minute is -1 for the reading from before midnight at
+     * the start of the file. When there is no file for the date, the series of the last day with data is returned, as for the
+     * HTML pages; the date in the JSON tells which day it is.
+     * @param date LocalDate; the date
+     * @return String; the JSON object with the series of the day
+     * @throws IOException cannot happen when writing to a StringBuilder
+     */
+    public static String day(final LocalDate date) throws IOException
+    {
+        DaySeries series = TelegramFile.getDaySeries(date);
+        int n = series.size();
+        StringBuilder s = new StringBuilder(256 + 80 * n);
+        JsonWriter json = new JsonWriter(s);
+        json.beginObject();
+        json.name("date").value(series.getDate() == null ? null : series.getDate().toString());
+        json.name("minute").value(series.minuteOfDay, n);
+        json.name("tariff1").value(series.tariff1, n);
+        json.name("tariff2").value(series.tariff2, n);
+        json.name("backTariff1").value(series.backTariff1, n);
+        json.name("backTariff2").value(series.backTariff2, n);
+        json.name("powerDelivered").value(series.powerDelivered, n);
+        json.name("powerReceived").value(series.powerReceived, n);
+        json.name("voltageL1").value(series.voltageL1, n);
+        json.name("currentL1").value(series.currentL1, n);
+        json.name("gasDelivered").value(series.gasDelivered, n);
+        json.endObject();
+        return s.toString();
+    }
+
+    /**
+     * Return the totals per day for a range of days as JSON.
+     * @param from LocalDate; the first day
+     * @param to LocalDate; the last day (inclusive)
+     * @return String; the JSON object with the totals per day
+     * @throws IOException cannot happen when writing to a StringBuilder
+     */
+    public static String days(final LocalDate from, final LocalDate to) throws IOException
+    {
+        return totals(from.atStartOfDay(), to.plusDays(1).atStartOfDay(), Resolution.DAY);
+    }
+
+    /**
+     * Return the totals per month for a range of months as JSON.
+     * @param from YearMonth; the first month
+     * @param to YearMonth; the last month (inclusive)
+     * @return String; the JSON object with the totals per month
+     * @throws IOException cannot happen when writing to a StringBuilder
+     */
+    public static String months(final YearMonth from, final YearMonth to) throws IOException
+    {
+        return totals(from.atDay(1).atStartOfDay(), to.plusMonths(1).atDay(1).atStartOfDay(), Resolution.MONTH);
+    }
+
+    /**
+     * Return the totals per period for the periods in [from, to) as JSON, with one array per field. Periods without data are
+     * left out; the totals of a period that is followed by a gap, and is not the current period, are NaN (null in the JSON).
+     * @param from LocalDateTime; the start of the first period
+     * @param to LocalDateTime; the end of the last period (exclusive)
+     * @param step Resolution; the length of the periods, DAY or MONTH
+     * @return String; the JSON object with the totals per period
+     * @throws IOException cannot happen when writing to a StringBuilder
+     */
+    private static String totals(final LocalDateTime from, final LocalDateTime to, final Resolution step) throws IOException
+    {
+        // one period extra, for the registers at the end of the last period
+        List<Reading> readings = new ArrayList<>();
+        TelegramFile.query(from, step.next(to), step, readings::add);
+        int n = 0;
+        while (n < readings.size() && readings.get(n).getStart().isBefore(to))
+            n++;
+
+        double[] tariff1 = new double[n];
+        double[] tariff2 = new double[n];
+        double[] back = new double[n];
+        double[] gas = new double[n];
+        Telegram last = null;
+        for (int i = 0; i < n; i++)
+        {
+            Reading start = readings.get(i);
+            LocalDateTime next = step.next(start.getStart());
+            if (i + 1 < readings.size() && readings.get(i + 1).getStart().equals(next)
+                    && readings.get(i + 1).isRegistersAtStart())
+            {
+                Reading end = readings.get(i + 1);
+                tariff1[i] = end.getTariff1() - start.getTariff1();
+                tariff2[i] = end.getTariff2() - start.getTariff2();
+                back[i] = end.getBackTariff1() + end.getBackTariff2() - start.getBackTariff1() - start.getBackTariff2();
+                gas[i] = end.getGasDelivered() - start.getGasDelivered();
+            }
+            else
+            {
+                if (last == null)
+                    last = TelegramFile.getLastTelegram();
+                if (last == null || i + 1 < readings.size() || !last.date.atTime(last.time).isBefore(next))
+                {
+                    // a gap after the period: the registers at the end of the period are not known
+                    tariff1[i] = Double.NaN;
+                    tariff2[i] = Double.NaN;
+                    back[i] = Double.NaN;
+                    gas[i] = Double.NaN;
+                    continue;
+                }
+                tariff1[i] = last.electricityTariff1kWh - start.getTariff1();
+                tariff2[i] = last.electricityTariff2kWh - start.getTariff2();
+                back[i] = last.electrBackTariff1kWh + last.electrBackTariff2kWh - start.getBackTariff1()
+                        - start.getBackTariff2();
+                gas[i] = last.gasDeliveredM3 - start.getGasDelivered();
+            }
+        }
+
+        StringBuilder s = new StringBuilder(256 + 64 * n);
+        JsonWriter json = new JsonWriter(s);
+        json.beginObject();
+        json.name("start").beginArray();
+        for (int i = 0; i < n; i++)
+        {
+            LocalDate date = readings.get(i).getStart().toLocalDate();
+            json.value(step == Resolution.MONTH ? YearMonth.from(date).toString() : date.toString());
+        }
+        json.endArray();
+        json.name("tariff1").value(tariff1, n);
+        json.name("tariff2").value(tariff2, n);
+        json.name("back").value(back, n);
+        json.name("gas").value(gas, n);
+        json.endObject();
+        return s.toString();
+    }
+
+}
@@ -0,0 +1,285 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * DayFileIndex keeps an index of the day files (meter_yyyy-MM-dd.txt) in the data folder, sorted on date. The folder is listed
+ * once; after that, the index is kept up to date by a WatchService, so lookups never touch the folder (which can contain
+ * thousands of files on an SD card). When the watch service reports an overflow, the folder is listed again. When the folder
+ * cannot be watched (anymore), the lookups list the folder again, at most once per second, until the folder can be watched
+ * again.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class DayFileIndex
+{
+    /** the minimum time in milliseconds between two listings of the folder for lookups when the folder is not watched. */
+    private static final long RESCAN_MS = 1_000L;
+
+    /** the time in milliseconds between two attempts to watch the folder again. */
+    private static final long REWATCH_MS = 10_000L;
+
+    /** the index for the folder in Constants.LOCAL_FOLDER; created on first use. */
+    private static DayFileIndex instance = null;
+
+    /** the folder with the day files. */
+    private final Path folder;
+
+    /** the day files, sorted on date. */
+    private final NavigableMap<LocalDate, Path> files = new ConcurrentSkipListMap<>();
+
+    /** read-only view of the day files. */
+    private final NavigableMap<LocalDate, Path> filesView = Collections.unmodifiableNavigableMap(this.files);
+
+    /** whether the folder is watched; when it is not, the lookups list the folder again. */
+    private volatile boolean watching = false;
+
+    /** the time of the last listing of the folder, in milliseconds since the epoch. */
+    private long lastScan = 0L;
+
+    /**
+     * Create an index for the given folder, list the folder, and start watching it.
+     * @param folder Path; the folder with the day files
+     */
+    private DayFileIndex(final Path folder)
+    {
+        this.folder = folder;
+        WatchService watchService = null;
+        try
+        {
+            watchService = folder.getFileSystem().newWatchService();
+            register(watchService);
+            this.watching = true;
+        }
+        catch (IOException exception)
+        {
+            System.err.println("DayFileIndex: cannot watch folder " + folder + ": " + exception.getMessage());
+        }
+        scan();
+        if (watchService != null)
+        {
+            WatchService service = watchService;
+            Thread watcher = new Thread(() -> watch(service), "DayFileIndex-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    /**
+     * Return the index of the day files in Constants.LOCAL_FOLDER. The index is built on the first call.
+     * @return DayFileIndex; the index of the day files
+     */
+    public static synchronized DayFileIndex getInstance()
+    {
+        if (instance == null)
+            instance = new DayFileIndex(Path.of(Constants.LOCAL_FOLDER));
+        return instance;
+    }
+
+    /**
+     * Register the folder with the watch service for the creation and deletion of files.
+     * @param watchService WatchService; the watch service for the folder
+     * @throws IOException when the folder cannot be watched
+     */
+    private void register(final WatchService watchService) throws IOException
+    {
+        this.folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    /**
+     * List the folder, and replace the contents of the index.
+     */
+    private synchronized void scan()
+    {
+        this.lastScan = System.currentTimeMillis();
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(this.folder, Constants.FILE_PREFIX + "*" + Constants.FILE_SUFFIX))
+        {
+            Map<LocalDate, Path> found = new TreeMap<>();
+            for (Path path : stream)
+            {
+                LocalDate date = parseDate(path.getFileName().toString());
+                if (date != null && Files.isRegularFile(path))
+                    found.put(date, path);
+            }
+            this.files.keySet().retainAll(found.keySet());
+            this.files.putAll(found);
+        }
+        catch (IOException exception)
+        {
+            System.err.println("DayFileIndex: cannot list folder " + this.folder + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Return the day files, after listing the folder again when the folder is not watched and the last listing is older than
+     * RESCAN_MS.
+     * @return NavigableMap&lt;LocalDate, Path&gt;; the day files, sorted on date
+     */
+    private NavigableMap<LocalDate, Path> files()
+    {
+        if (!this.watching)
+        {
+            synchronized (this)
+            {
+                if (System.currentTimeMillis() - this.lastScan >= RESCAN_MS)
+                    scan();
+            }
+        }
+        return this.files;
+    }
+
+    /**
+     * Process the events of the watch service until it is closed. When the folder cannot be watched anymore, the folder is
+     * registered again every REWATCH_MS, and listed once it is watched again.
+     * @param watchService WatchService; the watch service for the folder
+     */
+    private void watch(final WatchService watchService)
+    {
+        try
+        {
+            while (true)
+            {
+                if (!this.watching)
+                {
+                    Thread.sleep(REWATCH_MS);
+                    try
+                    {
+                        register(watchService);
+                    }
+                    catch (IOException exception)
+                    {
+                        continue;
+                    }
+                    scan();
+                    this.watching = true;
+                    System.err.println("DayFileIndex: folder " + this.folder + " is watched again");
+                    continue;
+                }
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents())
+                {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                    {
+                        scan();
+                        continue;
+                    }
+                    Path name = (Path) event.context();
+                    LocalDate date = parseDate(name.toString());
+                    if (date == null)
+                        continue;
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE)
+                        this.files.put(date, this.folder.resolve(name));
+                    else
+                        this.files.remove(date);
+                }
+                if (!key.reset())
+                {
+                    System.err.println("DayFileIndex: folder " + this.folder + " cannot be watched anymore");
+                    this.watching = false;
+                }
+            }
+        }
+        catch (InterruptedException | ClosedWatchServiceException exception)
+        {
+            // stop watching
+            this.watching = false;
+        }
+    }
+
+    /**
+     * Parse the date from a file name of the form meter_yyyy-MM-dd.txt.
+     * @param name String; the file name
+     * @return LocalDate; the date of the file, or null when the name is not the name of a day file
+     */
+    static LocalDate parseDate(final String name)
+    {
+        if (!name.startsWith(Constants.FILE_PREFIX) || !name.endsWith(Constants.FILE_SUFFIX)
+                || name.length() != Constants.FILE_PREFIX.length() + 10 + Constants.FILE_SUFFIX.length())
+            return null;
+        try
+        {
+            return LocalDate.parse(name.substring(Constants.FILE_PREFIX.length(), Constants.FILE_PREFIX.length() + 10));
+        }
+        catch (DateTimeParseException exception)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Return the day file for the given date.
+     * @param date LocalDate; the date to look up
+     * @return Path; the day file for the date, or null when there is no file for the date
+     */
+    public Path get(final LocalDate date)
+    {
+        return files().get(date);
+    }
+
+    /**
+     * Return the newest day file.
+     * @return Map.Entry&lt;LocalDate, Path&gt;; the date and path of the newest day file, or null when there are no files
+     */
+    public Map.Entry<LocalDate, Path> last()
+    {
+        return files().lastEntry();
+    }
+
+    /**
+     * Return the day file for the given date, or the last day file before the given date.
+     * @param date LocalDate; the date to look up
+     * @return Map.Entry&lt;LocalDate, Path&gt;; the date and path of the day file, or null when there is no such file
+     */
+    public Map.Entry<LocalDate, Path> floor(final LocalDate date)
+    {
+        return files().floorEntry(date);
+    }
+
+    /**
+     * Return the day file for the given date, or the first day file after the given date.
+     * @param date LocalDate; the date to look up
+     * @return Map.Entry&lt;LocalDate, Path&gt;; the date and path of the day file, or null when there is no such file
+     */
+    public Map.Entry<LocalDate, Path> ceiling(final LocalDate date)
+    {
+        return files().ceilingEntry(date);
+    }
+
+    /**
+     * Return the day files in a range of dates, sorted on date. The returned map is a read-only live view on the index.
+     * @param from LocalDate; the first date of the range (inclusive), or null for no lower bound
+     * @param to LocalDate; the last date of the range (inclusive), or null for no upper bound
+     * @return NavigableMap&lt;LocalDate, Path&gt;; the day files in the range
+     */
+    public NavigableMap<LocalDate, Path> range(final LocalDate from, final LocalDate to)
+    {
+        files();
+        if (from == null && to == null)
+            return this.filesView;
+        if (from == null)
+            return this.filesView.headMap(to, true);
+        if (to == null)
+            return this.filesView.tailMap(from, true);
+        return this.filesView.subMap(from, true, to, true);
+    }
+
+}
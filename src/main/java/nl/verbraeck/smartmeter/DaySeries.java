@@ -0,0 +1,398 @@
+package nl.verbraeck.smartmeter;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * DaySeries holds the readings of one day as primitive columns: one int array with the minute of the day, and one array per
+ * field, instead of up to 1440 Telegram objects in a map keyed by formatted strings. A day takes about 100 kB instead of several
+ * megabytes. Entry i of every column belongs to the same telegram; the entries are sorted on time.
+ * <p>
+ * Most day files start with a telegram from just before midnight of the day before. That telegram is kept as the first entry,
+ * with minute -1, since it is the start value for the cumulative charts; it is not a point of the day itself.
+ * </p>
+ * <p>
+ * A series that is filled with append() can be shared with readers through snapshot(): the snapshot shares the arrays, but
+ * only sees the entries that were appended before the snapshot was taken. An entry is never changed once it is appended: of the
+ * telegrams for the same minute (e.g., when the P1 recorder stores a telegram every few seconds), only the first one is kept.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public class DaySeries
+{
+    /** minute value of a telegram before the start of the day. */
+    public static final int BEFORE_DAY = -1;
+
+    /** gas capture value of a telegram without gas capture time. */
+    public static final int NO_CAPTURE = Integer.MIN_VALUE;
+
+    /** the date of the day, or null when the series is empty and the date is not known yet. */
+    LocalDate date;
+
+    /** the number of entries. */
+    int size;
+
+    /** the minute of the clock (not rounded) of the last telegram of the day that was appended, to keep the first one. */
+    private int lastClockMinute = Integer.MIN_VALUE;
+
+    /** minute of the day, rounded to the nearest minute, or BEFORE_DAY. */
+    int[] minuteOfDay;
+
+    /** electricity delivered tariff 1 [kWh]. */
+    double[] tariff1;
+
+    /** electricity delivered tariff 2 [kWh]. */
+    double[] tariff2;
+
+    /** electricity delivered back tariff 1 [kWh]. */
+    double[] backTariff1;
+
+    /** electricity delivered back tariff 2 [kWh]. */
+    double[] backTariff2;
+
+    /** power delivered [kW]. */
+    double[] powerDelivered;
+
+    /** power received [kW]. */
+    double[] powerReceived;
+
+    /** voltage L1 [V]. */
+    double[] voltageL1;
+
+    /** current L1 [A]. */
+    double[] currentL1;
+
+    /** gas delivered [m3]. */
+    double[] gasDelivered;
+
+    /** gas capture time in seconds relative to the start of the day, or NO_CAPTURE. */
+    int[] gasCapture;
+
+    /**
+     * Create an empty series with room for the given number of entries.
+     * @param date LocalDate; the date of the day, or null when it is determined by the first appended telegram
+     * @param capacity int; the initial number of entries
+     */
+    public DaySeries(final LocalDate date, final int capacity)
+    {
+        this.date = date;
+        this.size = 0;
+        this.minuteOfDay = new int[capacity];
+        this.tariff1 = new double[capacity];
+        this.tariff2 = new double[capacity];
+        this.backTariff1 = new double[capacity];
+        this.backTariff2 = new double[capacity];
+        this.powerDelivered = new double[capacity];
+        this.powerReceived = new double[capacity];
+        this.voltageL1 = new double[capacity];
+        this.currentL1 = new double[capacity];
+        this.gasDelivered = new double[capacity];
+        this.gasCapture = new int[capacity];
+    }
+
+    /**
+     * Make a series from telegrams that are sorted on time. The date of the series is the date of the first telegram, or the
+     * day after when the first telegram is from after 23:00.
+     * @param telegrams Map&lt;String, Telegram&gt;; the telegrams, sorted on time
+     * @return DaySeries; the series
+     */
+    public static DaySeries of(final Map<String, Telegram> telegrams)
+    {
+        DaySeries series = new DaySeries(null, telegrams.size());
+        for (Telegram telegram : telegrams.values())
+            series.append(telegram);
+        return series;
+    }
+
+    /**
+     * Append a telegram to the series. Telegrams from before the day get minute BEFORE_DAY, telegrams from after the day are
+     * ignored. Of the telegrams in the same minute of the clock, only the first one is appended, as in the binary day files;
+     * a telegram that is rounded to the minute of the last entry is ignored as well.
+     * @param telegram Telegram; the telegram to append; telegrams have to be appended in the order of time
+     */
+    public void append(final Telegram telegram)
+    {
+        if (this.date == null)
+            this.date = telegram.time.isAfter(LocalTime.of(23, 0)) ? telegram.date.plus(1, ChronoUnit.DAYS) : telegram.date;
+        int minute;
+        if (telegram.date.equals(this.date))
+        {
+            int clockMinute = telegram.time.toSecondOfDay() / 60;
+            if (clockMinute == this.lastClockMinute)
+                return;
+            this.lastClockMinute = clockMinute;
+            minute = roundMinute(telegram.time);
+        }
+        else if (telegram.date.isBefore(this.date))
+            minute = BEFORE_DAY;
+        else
+            return;
+
+        int i = slot(minute);
+        if (i < 0)
+            return;
+        this.tariff1[i] = telegram.electricityTariff1kWh;
+        this.tariff2[i] = telegram.electricityTariff2kWh;
+        this.backTariff1[i] = telegram.electrBackTariff1kWh;
+        this.backTariff2[i] = telegram.electrBackTariff2kWh;
+        this.powerDelivered[i] = telegram.powerDeliveredkW;
+        this.powerReceived[i] = telegram.powerReceivedkW;
+        this.voltageL1[i] = telegram.voltageL1;
+        this.currentL1[i] = telegram.currentL1;
+        this.gasDelivered[i] = telegram.gasDeliveredM3;
+        this.gasCapture[i] = telegram.gasCaptureDate == null ? NO_CAPTURE : (int) ChronoUnit.SECONDS
+                .between(this.date.atStartOfDay(), telegram.gasCaptureDate.atTime(telegram.gasCaptureTime));
+    }
+
+    /**
+     * Return the minute of the day of a time, rounded to the nearest minute, as the minutes of the entries.
+     * @param time LocalTime; the time of a telegram
+     * @return int; the minute of the day (0-1440)
+     */
+    public static int roundMinute(final LocalTime time)
+    {
+        return (int) Math.rint(time.toSecondOfDay() / 60.0);
+    }
+
+    /**
+     * Return the index at which the values for the given minute have to be stored, and store the minute. A new entry is added
+     * at the end, unless the minute is the same as the minute of the last entry, which is kept.
+     * @param minute int; the minute of the day, or BEFORE_DAY
+     * @return int; the index of the entry to fill, or -1 when the minute already has an entry
+     */
+    int slot(final int minute)
+    {
+        if (this.size > 0 && minute != BEFORE_DAY && this.minuteOfDay[this.size - 1] == minute)
+            return -1;
+        if (this.size == this.minuteOfDay.length)
+            copy(Math.max(16, 2 * this.minuteOfDay.length));
+        this.minuteOfDay[this.size] = minute;
+        return this.size++;
+    }
+
+    /**
+     * Replace the arrays by copies with the given capacity, so snapshots that share the old arrays are not affected.
+     * @param capacity int; the capacity of the new arrays
+     */
+    private void copy(final int capacity)
+    {
+        this.minuteOfDay = Arrays.copyOf(this.minuteOfDay, capacity);
+        this.tariff1 = Arrays.copyOf(this.tariff1, capacity);
+        this.tariff2 = Arrays.copyOf(this.tariff2, capacity);
+        this.backTariff1 = Arrays.copyOf(this.backTariff1, capacity);
+        this.backTariff2 = Arrays.copyOf(this.backTariff2, capacity);
+        this.powerDelivered = Arrays.copyOf(this.powerDelivered, capacity);
+        this.powerReceived = Arrays.copyOf(this.powerReceived, capacity);
+        this.voltageL1 = Arrays.copyOf(this.voltageL1, capacity);
+        this.currentL1 = Arrays.copyOf(this.currentL1, capacity);
+        this.gasDelivered = Arrays.copyOf(this.gasDelivered, capacity);
+        this.gasCapture = Arrays.copyOf(this.gasCapture, capacity);
+    }
+
+    /**
+     * Return a read-only view of the current entries. The view shares the arrays with this series, and does not see entries
+     * that are appended later.
+     * @return DaySeries; a view of the current entries
+     */
+    public DaySeries snapshot()
+    {
+        DaySeries view = new DaySeries(this.date, 0);
+        view.size = this.size;
+        view.minuteOfDay = this.minuteOfDay;
+        view.tariff1 = this.tariff1;
+        view.tariff2 = this.tariff2;
+        view.backTariff1 = this.backTariff1;
+        view.backTariff2 = this.backTariff2;
+        view.powerDelivered = this.powerDelivered;
+        view.powerReceived = this.powerReceived;
+        view.voltageL1 = this.voltageL1;
+        view.currentL1 = this.currentL1;
+        view.gasDelivered = this.gasDelivered;
+        view.gasCapture = this.gasCapture;
+        return view;
+    }
+
+    /**
+     * Return the date of the day.
+     * @return LocalDate; the date of the day, or null when the series is empty
+     */
+    public LocalDate getDate()
+    {
+        return this.date;
+    }
+
+    /**
+     * Return the number of entries.
+     * @return int; the number of entries, including a telegram from before the day
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * Return whether the series is empty.
+     * @return boolean; whether the series has no entries
+     */
+    public boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    /**
+     * Return the minute of the day of entry i.
+     * @param i int; the index of the entry
+     * @return int; the minute of the day (0-1440), or BEFORE_DAY for a telegram from before the day
+     */
+    public int getMinuteOfDay(final int i)
+    {
+        return this.minuteOfDay[i];
+    }
+
+    /**
+     * Return the electricity delivered with tariff 1 of entry i.
+     * @param i int; the index of the entry
+     * @return double; electricity delivered tariff 1 [kWh]
+     */
+    public double getTariff1(final int i)
+    {
+        return this.tariff1[i];
+    }
+
+    /**
+     * Return the electricity delivered with tariff 2 of entry i.
+     * @param i int; the index of the entry
+     * @return double; electricity delivered tariff 2 [kWh]
+     */
+    public double getTariff2(final int i)
+    {
+        return this.tariff2[i];
+    }
+
+    /**
+     * Return the electricity delivered back with tariff 1 of entry i.
+     * @param i int; the index of the entry
+     * @return double; electricity delivered back tariff 1 [kWh]
+     */
+    public double getBackTariff1(final int i)
+    {
+        return this.backTariff1[i];
+    }
+
+    /**
+     * Return the electricity delivered back with tariff 2 of entry i.
+     * @param i int; the index of the entry
+     * @return double; electricity delivered back tariff 2 [kWh]
+     */
+    public double getBackTariff2(final int i)
+    {
+        return this.backTariff2[i];
+    }
+
+    /**
+     * Return the power delivered of entry i.
+     * @param i int; the index of the entry
+     * @return double; power delivered [kW]
+     */
+    public double getPowerDelivered(final int i)
+    {
+        return this.powerDelivered[i];
+    }
+
+    /**
+     * Return the power received of entry i.
+     * @param i int; the index of the entry
+     * @return double; power received [kW]
+     */
+    public double getPowerReceived(final int i)
+    {
+        return this.powerReceived[i];
+    }
+
+    /**
+     * Return the voltage L1 of entry i.
+     * @param i int; the index of the entry
+     * @return double; voltage L1 [V]
+     */
+    public double getVoltageL1(final int i)
+    {
+        return this.voltageL1[i];
+    }
+
+    /**
+     * Return the current L1 of entry i.
+     * @param i int; the index of the entry
+     * @return double; current L1 [A]
+     */
+    public double getCurrentL1(final int i)
+    {
+        return this.currentL1[i];
+    }
+
+    /**
+     * Return the gas delivered of entry i.
+     * @param i int; the index of the entry
+     * @return double; gas delivered [m3]
+     */
+    public double getGasDelivered(final int i)
+    {
+        return this.gasDelivered[i];
+    }
+
+    /**
+     * Return the gas capture time of entry i.
+     * @param i int; the index of the entry
+     * @return int; the gas capture time in seconds relative to the start of the day, or NO_CAPTURE
+     */
+    public int getGasCapture(final int i)
+    {
+        return this.gasCapture[i];
+    }
+
+    /**
+     * Make a Telegram of entry i. Only the fields that the series holds are filled; the time is the minute of the entry, and
+     * 23:59 of the day before for a telegram from before the day.
+     * @param i int; the index of the entry
+     * @return Telegram; a telegram with the values of the entry
+     */
+    public Telegram getTelegram(final int i)
+    {
+        LocalDateTime midnight = this.date.atStartOfDay();
+        LocalDateTime time = midnight.plusMinutes(this.minuteOfDay[i] == BEFORE_DAY ? -1 : this.minuteOfDay[i]);
+        Telegram telegram = new Telegram();
+        telegram.date = time.toLocalDate();
+        telegram.time = time.toLocalTime();
+        telegram.electricityTariff1kWh = this.tariff1[i];
+        telegram.electricityTariff2kWh = this.tariff2[i];
+        telegram.electrBackTariff1kWh = this.backTariff1[i];
+        telegram.electrBackTariff2kWh = this.backTariff2[i];
+        telegram.powerDeliveredkW = this.powerDelivered[i];
+        telegram.powerReceivedkW = this.powerReceived[i];
+        telegram.voltageL1 = this.voltageL1[i];
+        telegram.currentL1 = this.currentL1[i];
+        telegram.gasDeliveredM3 = this.gasDelivered[i];
+        if (this.gasCapture[i] != NO_CAPTURE)
+        {
+            LocalDateTime gasTime = midnight.plusSeconds(this.gasCapture[i]);
+            telegram.gasCaptureDate = gasTime.toLocalDate();
+            telegram.gasCaptureTime = gasTime.toLocalTime();
+        }
+        return telegram;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+        return "DaySeries [date=" + this.date + ", size=" + this.size + "]";
+    }
+
+}
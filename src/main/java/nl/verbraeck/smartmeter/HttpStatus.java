@@ -0,0 +1,49 @@
+package nl.verbraeck.smartmeter;
+
+import fi.iki.elonen.NanoHTTPD;
+
+/**
+ * HTTP status codes that the web server needs, but that are not in the Status enum of NanoHTTPD 2.2.0.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public enum HttpStatus implements NanoHTTPD.Response.IStatus
+{
+    /** the server cannot handle the request now, e.g., because there are too many connections. */
+    SERVICE_UNAVAILABLE(503, "Service Unavailable");
+
+    /** the numeric status code. */
+    private final int requestStatus;
+
+    /** the reason phrase. */
+    private final String description;
+
+    /**
+     * Create a status.
+     * @param requestStatus int; the numeric status code
+     * @param description String; the reason phrase
+     */
+    HttpStatus(final int requestStatus, final String description)
+    {
+        this.requestStatus = requestStatus;
+        this.description = description;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getDescription()
+    {
+        return this.requestStatus + " " + this.description;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getRequestStatus()
+    {
+        return this.requestStatus;
+    }
+
+}
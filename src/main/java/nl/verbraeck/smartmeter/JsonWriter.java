@@ -0,0 +1,277 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+
+import nl.verbraeck.smartmeter.chart.NumberFormatter;
+
+/**
+ * JsonWriter writes JSON text to an Appendable, e.g., the StringBuilder of a response, without building a tree of objects
+ * first. The writer keeps track of the commas between the members of objects and arrays; numbers are written with the
+ * fixed-precision NumberFormatter. NaN and infinite values are written as null, since JSON has no notation for them. Arrays of
+ * doubles are written in one call, so a day series does not need an object per value.
+ * <p>
+ * Example: <code>json.beginObject().name("date").value("2023-05-05").name("power").value(power, size).endObject()</code>.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class JsonWriter
+{
+    /** the maximum nesting depth of objects and arrays. */
+    private static final int MAX_DEPTH = 32;
+
+    /** the destination of the JSON text. */
+    private final Appendable out;
+
+    /** the number of decimals of the numbers. */
+    private final int decimals;
+
+    /** per nesting level, whether the object or array already has a member, so the next member needs a comma. */
+    private final boolean[] hasMember = new boolean[MAX_DEPTH];
+
+    /** the current nesting depth; 0 is the top level. */
+    private int depth = 0;
+
+    /** whether a name was just written, so the value does not need a comma. */
+    private boolean afterName = false;
+
+    /**
+     * Create a writer that writes to the given destination, with at most 3 decimals for numbers.
+     * @param out Appendable; the destination of the JSON text
+     */
+    public JsonWriter(final Appendable out)
+    {
+        this(out, 3);
+    }
+
+    /**
+     * Create a writer that writes to the given destination.
+     * @param out Appendable; the destination of the JSON text
+     * @param decimals int; the maximum number of decimals of the numbers (0-9)
+     * @throws IllegalArgumentException when the number of decimals is not in the range 0-9
+     */
+    public JsonWriter(final Appendable out, final int decimals)
+    {
+        this.out = out;
+        this.decimals = NumberFormatter.checkDecimals(decimals);
+    }
+
+    /**
+     * Write the comma before a value or a name, when needed.
+     * @throws IOException on write error of the destination
+     */
+    private void separator() throws IOException
+    {
+        if (this.afterName)
+        {
+            this.afterName = false;
+            return;
+        }
+        if (this.hasMember[this.depth])
+            this.out.append(',');
+        this.hasMember[this.depth] = true;
+    }
+
+    /**
+     * Start an object.
+     * @return JsonWriter; this writer for chaining
+     * @throws IOException on write error of the destination
+     */
+    public JsonWriter beginObject() throws IOException
+    {
+        separator();
+        this.out.append('{');
+        this.hasMember[++this.depth] = false;
+        return this;
+    }
+
+    /**
+     * End the current object.
+     * @return JsonWriter; this writer for chaining
+     * @throws IOException on write error of the destination
+     */
+    public JsonWriter endObject() throws IOException
+    {
+        this.depth--;
+        this.out.append('}');
+        return this;
+    }
+
+    /**
+     * Start an array.
+     * @return JsonWriter; this writer for chaining
+     * @throws IOException on write error of the destination
+     */
+    public JsonWriter beginArray() throws IOException
+    {
+        separator();
+        this.out.append('[');
+        this.hasMember[++this.depth] = false;
+        return this;
+    }
+
+    /**
+     * End the current array.
+     * @return JsonWriter; this writer for chaining
+     * @throws IOException on write error of the destination
+     */
+    public JsonWriter endArray() throws IOException
+    {
+        this.depth--;
+        this.out.append(']');
+        return this;
+    }
+
+    /**
+     * Write the name of the next member of an object.
+     * @param name String; the name
+     * @return JsonWriter; this writer for chaining
+     * @throws IOException on write error of the destination
+     */
+    public JsonWriter name(final String name) throws IOException
+    {
+        separator();
+        string(name);
+        this.out.append(':');
+        this.afterName = true;
+        return this;
+    }
+
+    /**
+     * Write a string value, or null.
+     * @param value String; the value, may be null
+     * @return JsonWriter; this writer for chaining
+     * @throws IOException on write error of the destination
+     */
+    public JsonWriter value(final String value) throws IOException
+    {
+        separator();
+        if (value == null)
+            this.out.append("null");
+        else
+            string(value);
+        return this;
+    }
+
+    /**
+     * Write a number value; NaN and infinite values are written as null.
+     * @param value double; the value
+     * @return JsonWriter; this writer for chaining
+     * @throws IOException on write error of the destination
+     */
+    public JsonWriter value(final double value) throws IOException
+    {
+        separator();
+        number(value);
+        return this;
+    }
+
+    /**
+     * Write an integer value.
+     * @param value long; the value
+     * @return JsonWriter; this writer for chaining
+     * @throws IOException on write error of the destination
+     */
+    public JsonWriter value(final long value) throws IOException
+    {
+        separator();
+        this.out.append(Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Write a boolean value.
+     * @param value boolean; the value
+     * @return JsonWriter; this writer for chaining
+     * @throws IOException on write error of the destination
+     */
+    public JsonWriter value(final boolean value) throws IOException
+    {
+        separator();
+        this.out.append(value ? "true" : "false");
+        return this;
+    }
+
+    /**
+     * Write an array with the first values of an array of doubles; NaN and infinite values are written as null.
+     * @param values double[]; the values
+     * @param length int; the number of values to write
+     * @return JsonWriter; this writer for chaining
+     * @throws IOException on write error of the destination
+     */
+    public JsonWriter value(final double[] values, final int length) throws IOException
+    {
+        separator();
+        this.out.append('[');
+        for (int i = 0; i < length; i++)
+        {
+            if (i > 0)
+                this.out.append(',');
+            number(values[i]);
+        }
+        this.out.append(']');
+        return this;
+    }
+
+    /**
+     * Write an array with the first values of an array of ints.
+     * @param values int[]; the values
+     * @param length int; the number of values to write
+     * @return JsonWriter; this writer for chaining
+     * @throws IOException on write error of the destination
+     */
+    public JsonWriter value(final int[] values, final int length) throws IOException
+    {
+        separator();
+        this.out.append('[');
+        for (int i = 0; i < length; i++)
+        {
+            if (i > 0)
+                this.out.append(',');
+            this.out.append(Integer.toString(values[i]));
+        }
+        this.out.append(']');
+        return this;
+    }
+
+    /**
+     * Write a number, or null for NaN and infinite values.
+     * @param value double; the value
+     * @throws IOException on write error of the destination
+     */
+    private void number(final double value) throws IOException
+    {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            this.out.append("null");
+        else
+            NumberFormatter.append(this.out, value, this.decimals);
+    }
+
+    /**
+     * Write a quoted string, with the characters escaped that JSON requires to be escaped.
+     * @param s String; the string
+     * @throws IOException on write error of the destination
+     */
+    private void string(final String s) throws IOException
+    {
+        this.out.append('"');
+        for (int i = 0; i < s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                this.out.append('\\').append(c);
+            else if (c < 0x20)
+            {
+                this.out.append("\\u00");
+                this.out.append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+            }
+            else
+                this.out.append(c);
+        }
+        this.out.append('"');
+    }
+
+}
@@ -0,0 +1,68 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A GZIPOutputStream with a configurable compression level. The standard GZIPOutputStream always uses the default level 6;
+ * static files are compressed once with the best level, and dynamic pages may use a faster level to save CPU time.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public class LevelGzipOutputStream extends GZIPOutputStream
+{
+    /**
+     * Create a gzip stream with the given compression level.
+     * @param out OutputStream; the stream to write the compressed data to
+     * @param level int; the compression level, 1 (fastest) to 9 (best compression)
+     * @param bufferSize int; the size of the output buffer
+     * @throws IOException on write error of the header to the stream
+     */
+    public LevelGzipOutputStream(final OutputStream out, final int level, final int bufferSize) throws IOException
+    {
+        this(out, level, bufferSize, false);
+    }
+
+    /**
+     * Create a gzip stream with the given compression level, where flush() can also flush the compressor, so the data that is
+     * written so far can be decompressed by the receiver, e.g., the head of a page that is sent while the rest is rendered.
+     * @param out OutputStream; the stream to write the compressed data to
+     * @param level int; the compression level, 1 (fastest) to 9 (best compression)
+     * @param bufferSize int; the size of the output buffer
+     * @param syncFlush boolean; whether flush() flushes the compressor before it flushes the stream
+     * @throws IOException on write error of the header to the stream
+     */
+    public LevelGzipOutputStream(final OutputStream out, final int level, final int bufferSize, final boolean syncFlush)
+            throws IOException
+    {
+        super(out, bufferSize, syncFlush);
+        this.def.setLevel(level);
+    }
+
+    /**
+     * Compress a byte array in gzip format.
+     * @param data byte[]; the data to compress
+     * @param level int; the compression level, 1 (fastest) to 9 (best compression)
+     * @return byte[]; the gzip-compressed data
+     */
+    public static byte[] compress(final byte[] data, final int level)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (LevelGzipOutputStream gz = new LevelGzipOutputStream(out, level, 8192))
+        {
+            gz.write(data);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e); // cannot happen when writing to a ByteArrayOutputStream
+        }
+        return out.toByteArray();
+    }
+
+}
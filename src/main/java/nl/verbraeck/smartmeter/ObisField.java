@@ -0,0 +1,212 @@
+package nl.verbraeck.smartmeter;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.function.BiConsumer;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * ObisField describes one OBIS code in a telegram: the code, the unit of the value, and how the value is decoded from the bytes
+ * of the line and stored in the Telegram. Fields are made with the typed factory methods, e.g.,
+ * <code>ObisField.ofDecimal("1-0:1.8.1", "kWh", (t, v) -&gt; t.electricityTariff1kWh = v)</code>, so the setters work on
+ * primitive values without boxing.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class ObisField
+{
+    /** the OBIS code as text, e.g., 1-0:1.8.1. */
+    private final String obis;
+
+    /** the OBIS code packed into an int, as computed by TelegramParser.obisCode(). */
+    private final int code;
+
+    /** the unit of the value, e.g., kWh, or an empty string when the value has no unit. */
+    private final String unit;
+
+    /** the decoder that decodes the value and stores it in the telegram. */
+    private final Decoder decoder;
+
+    /**
+     * Create an OBIS field.
+     * @param obis String; the OBIS code as text, e.g., 1-0:1.8.1
+     * @param unit String; the unit of the value, or an empty string when the value has no unit
+     * @param decoder Decoder; the decoder that decodes the value and stores it in the telegram
+     */
+    private ObisField(final String obis, final String unit, final Decoder decoder)
+    {
+        this.obis = obis;
+        this.code = pack(obis);
+        this.unit = unit;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Make a field with an integer value, e.g., 0-0:96.14.0(0001).
+     * @param obis String; the OBIS code as text
+     * @param setter ObjIntConsumer&lt;Telegram&gt;; the setter for the value in the telegram
+     * @return ObisField; the field
+     */
+    public static ObisField ofInt(final String obis, final ObjIntConsumer<Telegram> setter)
+    {
+        return new ObisField(obis, "", (t, b, open, end) -> setter.accept(t, TelegramParser.decodeInt(b, open, end)));
+    }
+
+    /**
+     * Make a field with a decimal value and a unit, e.g., 1-0:1.8.1(001234.567*kWh).
+     * @param obis String; the OBIS code as text
+     * @param unit String; the unit of the value
+     * @param setter ObjDoubleConsumer&lt;Telegram&gt;; the setter for the value in the telegram
+     * @return ObisField; the field
+     */
+    public static ObisField ofDecimal(final String obis, final String unit, final ObjDoubleConsumer<Telegram> setter)
+    {
+        return new ObisField(obis, unit, (t, b, open, end) -> setter.accept(t, TelegramParser.decodeDecimal(b, open, end)));
+    }
+
+    /**
+     * Make a field with a hex-encoded string value, e.g., 0-0:96.1.1(4530303435).
+     * @param obis String; the OBIS code as text
+     * @param setter BiConsumer&lt;Telegram, String&gt;; the setter for the value in the telegram
+     * @return ObisField; the field
+     */
+    public static ObisField ofHex(final String obis, final BiConsumer<Telegram, String> setter)
+    {
+        return new ObisField(obis, "", (t, b, open, end) -> setter.accept(t, TelegramParser.decodeHex(b, open, end)));
+    }
+
+    /**
+     * Make a field with a timestamp value, e.g., 0-0:1.0.0(230505000259S).
+     * @param obis String; the OBIS code as text
+     * @param setter TimestampSetter; the setter for the date and time in the telegram
+     * @return ObisField; the field
+     */
+    public static ObisField ofTimestamp(final String obis, final TimestampSetter setter)
+    {
+        return new ObisField(obis, "", (t, b, open, end) -> setter.accept(t, TelegramParser.decodeDate(b, open, end),
+                TelegramParser.decodeTime(b, open, end)));
+    }
+
+    /**
+     * Make a field with a timestamp and a decimal value with a unit, e.g., 0-1:24.2.1(230505000003S)(05125.733*m3).
+     * @param obis String; the OBIS code as text
+     * @param unit String; the unit of the value
+     * @param timestampSetter TimestampSetter; the setter for the date and time in the telegram, or null when the timestamp is
+     *            not stored
+     * @param setter ObjDoubleConsumer&lt;Telegram&gt;; the setter for the value in the telegram
+     * @return ObisField; the field
+     */
+    public static ObisField ofTimestampedDecimal(final String obis, final String unit, final TimestampSetter timestampSetter,
+            final ObjDoubleConsumer<Telegram> setter)
+    {
+        return new ObisField(obis, unit, (t, b, open, end) ->
+        {
+            if (timestampSetter != null)
+                timestampSetter.accept(t, TelegramParser.decodeDate(b, open, end), TelegramParser.decodeTime(b, open, end));
+            setter.accept(t, TelegramParser.decodeDecimal(b, TelegramParser.indexOf(b, open + 1, end, '('), end));
+        });
+    }
+
+    /**
+     * Pack an OBIS code A-B:C.D.E into an int, with A and B in 4 bits, and C, D and E in 8 bits each.
+     * @param obis String; the OBIS code as text, e.g., 1-0:1.8.1
+     * @return int; the packed OBIS code
+     * @throws IllegalArgumentException when the text is not an OBIS code
+     */
+    static int pack(final String obis)
+    {
+        String[] groups = obis.split("[-:.]");
+        if (groups.length != 5 || !obis.matches("\\d{1,2}-\\d{1,2}:\\d{1,3}\\.\\d{1,3}\\.\\d{1,3}"))
+            throw new IllegalArgumentException("not an OBIS code: " + obis);
+        int a = Integer.parseInt(groups[0]);
+        int b = Integer.parseInt(groups[1]);
+        int c = Integer.parseInt(groups[2]);
+        int d = Integer.parseInt(groups[3]);
+        int e = Integer.parseInt(groups[4]);
+        if (a > 15 || b > 15 || c > 255 || d > 255 || e > 255)
+            throw new IllegalArgumentException("OBIS code out of range: " + obis);
+        return a << 28 | b << 24 | c << 16 | d << 8 | e;
+    }
+
+    /**
+     * Decode the value of the line and store it in the telegram.
+     * @param telegram Telegram; the telegram to store the value in
+     * @param bytes byte[]; the array with the telegram
+     * @param open int; the index of the first opening bracket of the line
+     * @param end int; the index after the last byte of the line, without line terminator
+     */
+    public void decode(final Telegram telegram, final byte[] bytes, final int open, final int end)
+    {
+        this.decoder.decode(telegram, bytes, open, end);
+    }
+
+    /**
+     * Return the OBIS code as text.
+     * @return String; the OBIS code, e.g., 1-0:1.8.1
+     */
+    public String getObis()
+    {
+        return this.obis;
+    }
+
+    /**
+     * Return the packed OBIS code.
+     * @return int; the OBIS code packed into an int
+     */
+    public int getCode()
+    {
+        return this.code;
+    }
+
+    /**
+     * Return the unit of the value.
+     * @return String; the unit, e.g., kWh, or an empty string when the value has no unit
+     */
+    public String getUnit()
+    {
+        return this.unit;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+        return "ObisField [obis=" + this.obis + ", unit=" + this.unit + "]";
+    }
+
+    /**
+     * Decoder of the value of an OBIS line.
+     */
+    @FunctionalInterface
+    interface Decoder
+    {
+        /**
+         * Decode the value of the line and store it in the telegram.
+         * @param telegram Telegram; the telegram to store the value in
+         * @param bytes byte[]; the array with the telegram
+         * @param open int; the index of the first opening bracket of the line
+         * @param end int; the index after the last byte of the line, without line terminator
+         */
+        void decode(Telegram telegram, byte[] bytes, int open, int end);
+    }
+
+    /**
+     * Setter for a date and time in a telegram.
+     */
+    @FunctionalInterface
+    public interface TimestampSetter
+    {
+        /**
+         * Store the date and time in the telegram.
+         * @param telegram Telegram; the telegram
+         * @param date LocalDate; the date
+         * @param time LocalTime; the time
+         */
+        void accept(Telegram telegram, LocalDate date, LocalTime time);
+    }
+
+}
@@ -0,0 +1,161 @@
+package nl.verbraeck.smartmeter;
+
+import java.util.List;
+
+/**
+ * ObisProfile groups the OBIS codes of one kind of meter. DSMR5 contains the codes of the Dutch DSMR 5 electricity meter with a
+ * gas meter on M-Bus channel 1, and is always part of the registry. The other profiles add codes for a water or heat meter on
+ * M-Bus channel 2 or 3, or for the Belgian e-MUCS meters. A code that is registered by a later profile replaces the code of an
+ * earlier profile.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public enum ObisProfile
+{
+    /** Dutch DSMR 5 electricity meter, with a gas meter on M-Bus channel 1. */
+    DSMR5
+    {
+        @Override
+        public List<ObisField> fields()
+        {
+            return List.of(ObisField.ofInt("1-3:0.2.8", (t, v) -> t.version = v),
+                    ObisField.ofTimestamp("0-0:1.0.0", (t, d, tm) ->
+                    {
+                        t.date = d;
+                        t.time = tm;
+                    }),
+                    ObisField.ofHex("0-0:96.1.1", (t, v) -> t.electricityMeterId = v),
+
+                    ObisField.ofDecimal("1-0:1.8.1", "kWh", (t, v) -> t.electricityTariff1kWh = v),
+                    ObisField.ofDecimal("1-0:1.8.2", "kWh", (t, v) -> t.electricityTariff2kWh = v),
+                    ObisField.ofDecimal("1-0:2.8.1", "kWh", (t, v) -> t.electrBackTariff1kWh = v),
+                    ObisField.ofDecimal("1-0:2.8.2", "kWh", (t, v) -> t.electrBackTariff2kWh = v),
+                    ObisField.ofInt("0-0:96.14.0", (t, v) -> t.tariff = v),
+                    ObisField.ofDecimal("1-0:1.7.0", "kW", (t, v) -> t.powerDeliveredkW = v),
+                    ObisField.ofDecimal("1-0:2.7.0", "kW", (t, v) -> t.powerReceivedkW = v),
+
+                    ObisField.ofInt("0-0:96.7.21", (t, v) -> t.powerFailuresAnyPhase = v),
+                    ObisField.ofInt("0-0:96.7.9", (t, v) -> t.longPowerFailuresAnyPhase = v),
+                    ObisField.ofInt("1-0:32.32.0", (t, v) -> t.voltageSagsL1 = v),
+                    ObisField.ofInt("1-0:52.32.0", (t, v) -> t.voltageSagsL2 = v),
+                    ObisField.ofInt("1-0:72.32.0", (t, v) -> t.voltageSagsL3 = v),
+                    ObisField.ofInt("1-0:32.36.0", (t, v) -> t.voltageSwellsL1 = v),
+                    ObisField.ofInt("1-0:52.36.0", (t, v) -> t.voltageSwellsL2 = v),
+                    ObisField.ofInt("1-0:72.36.0", (t, v) -> t.voltageSwellsL3 = v),
+                    ObisField.ofHex("0-0:96.13.0", (t, v) -> t.textMessage = v),
+
+                    ObisField.ofDecimal("1-0:32.7.0", "V", (t, v) -> t.voltageL1 = v),
+                    ObisField.ofDecimal("1-0:52.7.0", "V", (t, v) -> t.voltageL2 = v),
+                    ObisField.ofDecimal("1-0:72.7.0", "V", (t, v) -> t.voltageL3 = v),
+                    ObisField.ofDecimal("1-0:31.7.0", "A", (t, v) -> t.currentL1 = v),
+                    ObisField.ofDecimal("1-0:51.7.0", "A", (t, v) -> t.currentL2 = v),
+                    ObisField.ofDecimal("1-0:71.7.0", "A", (t, v) -> t.currentL3 = v),
+                    ObisField.ofDecimal("1-0:21.7.0", "kW", (t, v) -> t.powerDeliveredL1kW = v),
+                    ObisField.ofDecimal("1-0:41.7.0", "kW", (t, v) -> t.powerDeliveredL2kW = v),
+                    ObisField.ofDecimal("1-0:61.7.0", "kW", (t, v) -> t.powerDeliveredL3kW = v),
+                    ObisField.ofDecimal("1-0:22.7.0", "kW", (t, v) -> t.powerReceivedL1kW = v),
+                    ObisField.ofDecimal("1-0:42.7.0", "kW", (t, v) -> t.powerReceivedL2kW = v),
+                    ObisField.ofDecimal("1-0:62.7.0", "kW", (t, v) -> t.powerReceivedL3kW = v),
+
+                    ObisField.ofInt("0-1:24.1.0", (t, v) -> t.gasDeviceTypeId = v),
+                    ObisField.ofHex("0-1:96.1.0", (t, v) -> t.gasMeterId = v),
+                    ObisField.ofTimestampedDecimal("0-1:24.2.1", "m3", (t, d, tm) ->
+                    {
+                        t.gasCaptureDate = d;
+                        t.gasCaptureTime = tm;
+                    }, (t, v) -> t.gasDeliveredM3 = v));
+        }
+    },
+
+    /** water meter on M-Bus channel 2. */
+    MBUS_WATER_2
+    {
+        @Override
+        public List<ObisField> fields()
+        {
+            return water(2);
+        }
+    },
+
+    /** water meter on M-Bus channel 3. */
+    MBUS_WATER_3
+    {
+        @Override
+        public List<ObisField> fields()
+        {
+            return water(3);
+        }
+    },
+
+    /** heat meter on M-Bus channel 2. */
+    MBUS_HEAT_2
+    {
+        @Override
+        public List<ObisField> fields()
+        {
+            return heat(2);
+        }
+    },
+
+    /** heat meter on M-Bus channel 3. */
+    MBUS_HEAT_3
+    {
+        @Override
+        public List<ObisField> fields()
+        {
+            return heat(3);
+        }
+    },
+
+    /** Belgian e-MUCS meter: demand registers, breaker and limiter, and the gas reading in 0-1:24.2.3. */
+    EMUCS
+    {
+        @Override
+        public List<ObisField> fields()
+        {
+            return List.of(ObisField.ofDecimal("1-0:1.4.0", "kW", (t, v) -> t.averageDemandkW = v),
+                    ObisField.ofTimestampedDecimal("1-0:1.6.0", "kW", null, (t, v) -> t.maxDemandMonthkW = v),
+                    ObisField.ofInt("0-0:96.3.10", (t, v) -> t.breakerState = v),
+                    ObisField.ofDecimal("0-0:17.0.0", "kW", (t, v) -> t.limiterThresholdkW = v),
+                    ObisField.ofDecimal("1-0:31.4.0", "A", (t, v) -> t.fuseSupervisionL1A = v),
+                    ObisField.ofHex("0-1:96.1.1", (t, v) -> t.gasMeterId = v),
+                    ObisField.ofTimestampedDecimal("0-1:24.2.3", "m3", (t, d, tm) ->
+                    {
+                        t.gasCaptureDate = d;
+                        t.gasCaptureTime = tm;
+                    }, (t, v) -> t.gasDeliveredM3 = v));
+        }
+    };
+
+    /**
+     * Return the OBIS fields of the profile.
+     * @return List&lt;ObisField&gt;; the fields of the profile
+     */
+    public abstract List<ObisField> fields();
+
+    /**
+     * Return the fields of a water meter on the given M-Bus channel.
+     * @param channel int; the M-Bus channel
+     * @return List&lt;ObisField&gt;; the fields of the water meter
+     */
+    static List<ObisField> water(final int channel)
+    {
+        return List.of(ObisField.ofHex("0-" + channel + ":96.1.0", (t, v) -> t.waterMeterId = v),
+                ObisField.ofTimestampedDecimal("0-" + channel + ":24.2.1", "m3", null, (t, v) -> t.waterDeliveredM3 = v));
+    }
+
+    /**
+     * Return the fields of a heat meter on the given M-Bus channel.
+     * @param channel int; the M-Bus channel
+     * @return List&lt;ObisField&gt;; the fields of the heat meter
+     */
+    static List<ObisField> heat(final int channel)
+    {
+        return List.of(ObisField.ofHex("0-" + channel + ":96.1.0", (t, v) -> t.heatMeterId = v),
+                ObisField.ofTimestampedDecimal("0-" + channel + ":24.2.1", "GJ", null, (t, v) -> t.heatDeliveredGJ = v));
+    }
+
+}
@@ -0,0 +1,150 @@
+package nl.verbraeck.smartmeter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ObisRegistry is the table from OBIS code to the field in the Telegram that the code is stored in. The table is built once from
+ * a number of profiles, and is read-only after that. Lookups use the packed OBIS code in an open-addressing hash table with
+ * linear probing, so a lookup costs one multiplication and (almost always) one comparison, independent of the number of
+ * profiles.
+ * <p>
+ * The default registry contains the DSMR5 profile, plus the profiles in the system property <code>smartmeter.obis</code>, as a
+ * comma-separated list of ObisProfile names, e.g., <code>-Dsmartmeter.obis=MBUS_WATER_2,EMUCS</code>.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class ObisRegistry
+{
+    /** the system property with the additional profiles. */
+    public static final String PROFILES_PROPERTY = "smartmeter.obis";
+
+    /** the default registry; created on first use. */
+    private static ObisRegistry defaultRegistry = null;
+
+    /** the packed OBIS codes in the hash table; an empty slot has key 0 and a null field. */
+    private final int[] keys;
+
+    /** the fields in the hash table. */
+    private final ObisField[] fields;
+
+    /** the number of bits of the hash that index the table. */
+    private final int shift;
+
+    /** the registered fields, in order of registration. */
+    private final List<ObisField> fieldList;
+
+    /**
+     * Build a registry from the DSMR5 profile and the given additional profiles.
+     * @param profiles ObisProfile...; the additional profiles; DSMR5 is always included
+     */
+    public ObisRegistry(final ObisProfile... profiles)
+    {
+        Map<Integer, ObisField> fieldMap = new LinkedHashMap<>();
+        for (ObisField field : ObisProfile.DSMR5.fields())
+            fieldMap.put(field.getCode(), field);
+        for (ObisProfile profile : profiles)
+        {
+            for (ObisField field : profile.fields())
+                fieldMap.put(field.getCode(), field);
+        }
+        this.fieldList = Collections.unmodifiableList(new ArrayList<>(fieldMap.values()));
+
+        int bits = 4;
+        while ((1 << bits) < 2 * fieldMap.size())
+            bits++;
+        this.shift = 32 - bits;
+        this.keys = new int[1 << bits];
+        this.fields = new ObisField[1 << bits];
+        for (ObisField field : this.fieldList)
+        {
+            int slot = slot(field.getCode());
+            while (this.fields[slot] != null)
+                slot = (slot + 1) & (this.keys.length - 1);
+            this.keys[slot] = field.getCode();
+            this.fields[slot] = field;
+        }
+    }
+
+    /**
+     * Return the default registry, with DSMR5 and the profiles in the system property <code>smartmeter.obis</code>.
+     * @return ObisRegistry; the default registry
+     */
+    public static synchronized ObisRegistry getDefault()
+    {
+        if (defaultRegistry == null)
+        {
+            List<ObisProfile> profiles = new ArrayList<>();
+            for (String name : System.getProperty(PROFILES_PROPERTY, "").split(","))
+            {
+                if (name.isBlank())
+                    continue;
+                try
+                {
+                    profiles.add(ObisProfile.valueOf(name.trim()));
+                }
+                catch (IllegalArgumentException exception)
+                {
+                    System.err.println("ObisRegistry: unknown profile " + name);
+                }
+            }
+            defaultRegistry = new ObisRegistry(profiles.toArray(new ObisProfile[0]));
+        }
+        return defaultRegistry;
+    }
+
+    /**
+     * Return the slot in the hash table for a packed OBIS code (Fibonacci hashing).
+     * @param code int; the packed OBIS code
+     * @return int; the first slot to probe
+     */
+    private int slot(final int code)
+    {
+        return (code * 0x9E3779B9) >>> this.shift;
+    }
+
+    /**
+     * Look up the field for a packed OBIS code.
+     * @param code int; the packed OBIS code, or -1 for a line that is not an OBIS line
+     * @return ObisField; the field for the code, or null when the code is not registered
+     */
+    public ObisField get(final int code)
+    {
+        int slot = slot(code);
+        ObisField field;
+        while ((field = this.fields[slot]) != null)
+        {
+            if (this.keys[slot] == code)
+                return field;
+            slot = (slot + 1) & (this.keys.length - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Look up the field for an OBIS code.
+     * @param obis String; the OBIS code as text, e.g., 1-0:1.8.1
+     * @return ObisField; the field for the code, or null when the code is not registered
+     */
+    public ObisField get(final String obis)
+    {
+        return get(ObisField.pack(obis));
+    }
+
+    /**
+     * Return the registered fields.
+     * @return List&lt;ObisField&gt;; the registered fields, in order of registration
+     */
+    public List<ObisField> getFields()
+    {
+        return this.fieldList;
+    }
+
+}
@@ -0,0 +1,357 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * P1Recorder reads the P1 port of the smart meter continuously in the web server, and appends the telegrams to the day files,
+ * instead of the cron job (doc/meter.sh) that starts bash, stty and head every minute, and writes a telegram with some 30
+ * separate appends. The recorder frames the telegrams in the stream (from the line that starts with "/" up to and including the
+ * line that starts with "!"), and writes the first telegram of every interval as one record with the date and time lines that
+ * the cron job writes, in a single write. The interval can be set from 1 second (a DSMR 5 meter sends a telegram every second)
+ * to 60 seconds, which gives the same files as the cron job. The day series, the binary day files and the charts keep the
+ * first telegram of every minute.
+ * <p>
+ * The device can be any file: the serial device of the P1 cable (e.g., /dev/ttyUSB0, which is configured with stty at the
+ * start), a named pipe, or a regular file to which another program appends, which is read as with tail -f. When a device or
+ * named pipe reaches the end of the stream, or cannot be read, it is opened again after a pause. When a regular file is
+ * truncated or replaced (e.g., by logrotate), it is opened again right away, and read from the start.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public class P1Recorder
+{
+    /** the maximum size of a telegram; longer frames are discarded. */
+    private static final int MAX_TELEGRAM_SIZE = 4096;
+
+    /** the time in milliseconds before the device is opened again. */
+    private static final long REOPEN_MS = 5_000L;
+
+    /** the time in milliseconds to wait for new data at the end of a regular file. */
+    private static final long TAIL_MS = 200L;
+
+    /** the format of the time line before every telegram. */
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    /** the device, named pipe, or file to read the telegrams from. */
+    private final Path device;
+
+    /** the interval in seconds at which a telegram is written to the day file. */
+    private final int intervalSeconds;
+
+    /** the bytes of the telegram that is being framed. */
+    private final byte[] frame = new byte[MAX_TELEGRAM_SIZE];
+
+    /** the number of bytes in the frame. */
+    private int length = 0;
+
+    /** whether a telegram is being framed. */
+    private boolean inFrame = false;
+
+    /** whether the frame is in the last line of the telegram, which starts with "!". */
+    private boolean lastLine = false;
+
+    /** whether the next byte is the first byte of a line. */
+    private boolean atLineStart = true;
+
+    /** the interval of the last telegram that was written, in intervals since the epoch. */
+    private long lastInterval = Long.MIN_VALUE;
+
+    /** the date of the day file that is open, or null when no day file is open. */
+    private LocalDate fileDate = null;
+
+    /** the day file that is open for appending, or null when no day file is open. */
+    private OutputStream out = null;
+
+    /** the number of telegrams that were read from the device. */
+    private volatile long telegramsRead = 0L;
+
+    /** the number of telegrams that were written to the day files. */
+    private volatile long telegramsWritten = 0L;
+
+    /** the number of frames that were discarded because they were too long. */
+    private volatile long framesDiscarded = 0L;
+
+    /** the results of the CRC checks of the telegrams that were read from the device. */
+    private final CrcCounts crcCounts = new CrcCounts();
+
+    /**
+     * Create a recorder for a device.
+     * @param device String; the device, named pipe, or file to read the telegrams from, e.g., /dev/ttyUSB0
+     * @param intervalSeconds int; the interval in seconds at which a telegram is written to the day file, limited to 1-60
+     */
+    public P1Recorder(final String device, final int intervalSeconds)
+    {
+        this.device = Paths.get(device);
+        this.intervalSeconds = Math.max(1, Math.min(60, intervalSeconds));
+    }
+
+    /**
+     * Start reading the device on a daemon thread.
+     */
+    public void start()
+    {
+        Thread thread = new Thread(this::run, "P1Recorder");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("recording telegrams from " + this.device + " every " + this.intervalSeconds + " s");
+    }
+
+    /**
+     * Read the device, and open it again at the end of the stream or after an error. A regular file that was truncated or
+     * replaced is opened again right away, and read from the start.
+     */
+    private void run()
+    {
+        configureSerial();
+        boolean fromStart = false;
+        while (true)
+        {
+            boolean regular = Files.isRegularFile(this.device);
+            try (InputStream in = new FileInputStream(this.device.toFile()))
+            {
+                long position = 0L;
+                Object fileKey = null;
+                if (regular)
+                {
+                    fileKey = Files.readAttributes(this.device, BasicFileAttributes.class).fileKey();
+                    if (!fromStart)
+                        position = in.skip(Files.size(this.device)); // only the telegrams that are appended from now on
+                }
+                fromStart = read(in, regular, position, fileKey);
+            }
+            catch (IOException e)
+            {
+                fromStart = false;
+                System.err.println("error in P1Recorder.run(): " + e.getMessage());
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            this.inFrame = false;
+            this.atLineStart = true;
+            if (fromStart)
+                continue;
+            try
+            {
+                Thread.sleep(REOPEN_MS);
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Configure the serial port of a tty device with stty, with the settings of the P1 port of a DSMR 5 meter: 115200 baud,
+     * 8 data bits, 1 stop bit, no parity. The port is put in raw mode without echo, so the recorder gets the exact bytes of the
+     * meter: with the default settings (as in doc/meter.sh), icrnl turns every "\r\n" into "\n\n", and the CRC of every
+     * telegram would fail.
+     */
+    private void configureSerial()
+    {
+        if (!this.device.toString().startsWith("/dev/tty"))
+            return;
+        try
+        {
+            Process stty = new ProcessBuilder("stty", "-F", this.device.toString(), "raw", "-echo", "speed", "115200", "cs8",
+                    "-cstopb", "-parenb").redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            if (!stty.waitFor(10, TimeUnit.SECONDS) || stty.exitValue() != 0)
+                System.err.println("error in P1Recorder.configureSerial(): stty failed for " + this.device);
+        }
+        catch (IOException | InterruptedException e)
+        {
+            System.err.println("error in P1Recorder.configureSerial(): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read the stream and frame the telegrams, until the end of the stream. At the end of a regular file, the recorder waits
+     * for new data instead, until the file is truncated (it becomes shorter than the part that was read) or replaced by
+     * another file.
+     * @param in InputStream; the stream of the device
+     * @param regular boolean; whether the device is a regular file
+     * @param start long; the position in the file at which the stream starts
+     * @param fileKey Object; the key of the regular file that was opened, or null when it is unknown
+     * @return boolean; true when the regular file was truncated or replaced, false at the end of the stream of a device
+     * @throws IOException on read error
+     * @throws InterruptedException when the thread is interrupted while waiting for new data
+     */
+    private boolean read(final InputStream in, final boolean regular, final long start, final Object fileKey)
+            throws IOException, InterruptedException
+    {
+        byte[] buffer = new byte[8192];
+        long position = start;
+        while (true)
+        {
+            int n = in.read(buffer);
+            if (n < 0)
+            {
+                if (!regular)
+                    return false;
+                if (Files.exists(this.device)) // wait for the new file when it was moved away
+                {
+                    BasicFileAttributes attributes = Files.readAttributes(this.device, BasicFileAttributes.class);
+                    if (attributes.size() < position || (fileKey != null && !fileKey.equals(attributes.fileKey())))
+                        return true;
+                }
+                Thread.sleep(TAIL_MS);
+                continue;
+            }
+            position += n;
+            for (int i = 0; i < n; i++)
+                accept(buffer[i]);
+        }
+    }
+
+    /**
+     * Add a byte to the frame. A line that starts with "/" starts a new telegram; the end of a line that starts with "!" ends
+     * the telegram. Bytes outside a telegram are skipped.
+     * @param b byte; the next byte of the stream
+     */
+    private void accept(final byte b)
+    {
+        boolean lineStart = this.atLineStart;
+        this.atLineStart = b == '\n';
+        if (lineStart && b == '/')
+        {
+            // (re)start the telegram; a previous telegram without "!" is discarded
+            this.inFrame = true;
+            this.lastLine = false;
+            this.length = 0;
+        }
+        if (!this.inFrame)
+            return;
+        if (this.length == this.frame.length)
+        {
+            this.inFrame = false;
+            this.framesDiscarded++;
+            return;
+        }
+        this.frame[this.length++] = b;
+        if (lineStart && b == '!')
+            this.lastLine = true;
+        else if (b == '\n' && this.lastLine)
+        {
+            this.inFrame = false;
+            telegram();
+        }
+    }
+
+    /**
+     * Handle a complete telegram in the frame: write it when it is the first telegram of its interval. A telegram with an
+     * invalid CRC is not written, unless Constants.CRC_KEEP_INVALID is set, so the next telegram of the interval is used.
+     */
+    private void telegram()
+    {
+        this.telegramsRead++;
+        TelegramParser.CrcStatus crc = TelegramParser.checkCrc(this.frame, 0, this.length);
+        this.crcCounts.add(crc);
+        if (crc == TelegramParser.CrcStatus.INVALID && !Constants.CRC_KEEP_INVALID)
+            return;
+        LocalDateTime now = LocalDateTime.now();
+        long interval = now.toEpochSecond(ZoneOffset.UTC) / this.intervalSeconds;
+        if (interval == this.lastInterval)
+            return;
+        this.lastInterval = interval;
+        try
+        {
+            write(now);
+        }
+        catch (IOException e)
+        {
+            this.fileDate = null; // open the day file again for the next telegram
+            System.err.println("error in P1Recorder.write(): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Append the telegram in the frame to the day file, after a line with the date and a line with the time, in one write.
+     * @param now LocalDateTime; the time at which the telegram was read
+     * @throws IOException on write error of the day file
+     */
+    private void write(final LocalDateTime now) throws IOException
+    {
+        LocalDate date = now.toLocalDate();
+        if (!date.equals(this.fileDate))
+        {
+            if (this.out != null)
+            {
+                try
+                {
+                    this.out.close();
+                }
+                catch (IOException e)
+                {
+                    System.err.println("error in P1Recorder.write(): " + e.getMessage());
+                }
+                this.out = null;
+            }
+            Path path = Paths.get(Constants.LOCAL_FOLDER, Constants.FILE_PREFIX + date + Constants.FILE_SUFFIX);
+            this.out = new FileOutputStream(path.toFile(), true);
+            this.fileDate = date;
+        }
+        byte[] header = (date + "\n" + TIME_FORMATTER.format(now) + "\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] record = new byte[header.length + this.length];
+        System.arraycopy(header, 0, record, 0, header.length);
+        System.arraycopy(this.frame, 0, record, header.length, this.length);
+        this.out.write(record);
+        this.telegramsWritten++;
+    }
+
+    /**
+     * Return the number of telegrams that were read from the device.
+     * @return long; the number of telegrams that were read
+     */
+    public long getTelegramsRead()
+    {
+        return this.telegramsRead;
+    }
+
+    /**
+     * Return the number of telegrams that were written to the day files.
+     * @return long; the number of telegrams that were written
+     */
+    public long getTelegramsWritten()
+    {
+        return this.telegramsWritten;
+    }
+
+    /**
+     * Return the results of the CRC checks of the telegrams that were read from the device.
+     * @return CrcCounts; the results of the CRC checks of the telegrams that were read
+     */
+    public CrcCounts getCrcCounts()
+    {
+        return this.crcCounts;
+    }
+
+    /**
+     * Return the number of frames that were discarded because they were longer than a telegram can be.
+     * @return long; the number of discarded frames
+     */
+    public long getFramesDiscarded()
+    {
+        return this.framesDiscarded;
+    }
+
+}
@@ -0,0 +1,546 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * PageCache keeps the rendered HTML of the pages, keyed on the route and the date of the page, so a page for a day in the past
+ * is not rendered again from 30+ day files at every request. The cache is an LRU cache that is bounded by the number of bytes
+ * of the pages. Every page has a strong ETag (the CRC32 and the length of the body) and a last-modified time, so the browser
+ * can ask with If-None-Match whether its copy is still valid. Pages of at least Constants.GZIP_MIN_BYTES are also compressed
+ * once, with Constants.GZIP_LEVEL, so a page from the cache is not compressed again at every request.
+ * <p>
+ * A page is valid as long as:
+ * </p>
+ * <ul>
+ * <li>it was rendered today, since all pages contain links and labels that depend on today's date;</li>
+ * <li>for a day in the past: the modification time of the day file did not change;</li>
+ * <li>for today (or a later date): no new telegram arrived in today's file since the page was rendered. The TodayTailer tells
+ * the cache about new telegrams; today's file is checked before a page for today is looked up;</li>
+ * <li>for a day in the past in the month of the newest day file: both, since the last bar of the 12-month charts of such a day
+ * is the usage of the month up to the last telegram.</li>
+ * </ul>
+ * Pages for a day in the past without a day file are not cached.
+ * <p>
+ * A page can also be rendered by the caller with startRender(), e.g., while it is sent to the browser; requests for the same
+ * version of the page wait for that rendering, as they do for a rendering by get().
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class PageCache
+{
+    /** the maximum total number of bytes of the cached pages. */
+    private final long maxBytes;
+
+    /** the cached pages in LRU order; the key is route?date. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** the total number of bytes of the cached pages, including their gzip variants. */
+    private long bytes = 0L;
+
+    /** the version of today's data; increased at every new telegram. */
+    private final AtomicLong todayVersion = new AtomicLong();
+
+    /** the renderings in flight, keyed on route?date#fileTime#version. */
+    private final SingleFlight<String, Page> flights = new SingleFlight<>(Constants.SINGLE_FLIGHT_TIMEOUT_MS);
+
+    /** the number of requests that were answered from the cache. */
+    private long hits = 0L;
+
+    /** the number of requests for which the page was rendered. */
+    private long misses = 0L;
+
+    /**
+     * Create a page cache, and register it for the new telegrams of today.
+     * @param maxBytes long; the maximum total number of bytes of the cached pages
+     */
+    public PageCache(final long maxBytes)
+    {
+        this.maxBytes = maxBytes;
+        TelegramFile.addTelegramListener(telegram -> this.todayVersion.incrementAndGet());
+    }
+
+    /**
+     * Return the page for the route and the date from the cache when it is still valid, or render it (outside the lock), and
+     * store it in the cache. When another request is rendering the same version of the page, the result of that rendering is
+     * used.
+     * @param route String; the route of the page, e.g., /electricity
+     * @param date LocalDate; the date of the page
+     * @param renderer Supplier&lt;String&gt;; the renderer of the HTML of the page
+     * @return Page; the page
+     * @throws ExecutionException when the rendering failed; the cause is the exception of the renderer
+     * @throws TimeoutException when the rendering by another request did not finish in time
+     * @throws InterruptedException when the thread was interrupted while waiting for the rendering by another request
+     */
+    public Page get(final String route, final LocalDate date, final Supplier<String> renderer)
+            throws ExecutionException, TimeoutException, InterruptedException
+    {
+        Version version = version(route, date);
+        if (!version.cacheable)
+            return new Page(renderer.get(), System.currentTimeMillis());
+        Page cached = lookup(version);
+        if (cached != null)
+            return cached;
+        synchronized (this)
+        {
+            this.misses++;
+        }
+
+        // concurrent requests for the same version of the page share one rendering
+        return this.flights.run(version.flightKey(), () ->
+        {
+            Page page = new Page(renderer.get(), version.lastModified());
+            put(version.key, new Entry(page, version.today, version.fileTime, version.version));
+            return page;
+        });
+    }
+
+    /**
+     * Return the page for the route and the date from the cache when it is still valid, without rendering it.
+     * @param route String; the route of the page, e.g., /electricity
+     * @param date LocalDate; the date of the page
+     * @return Page; the valid cached page, or null when the page has to be rendered
+     */
+    public Page getCached(final String route, final LocalDate date)
+    {
+        Version version = version(route, date);
+        return version.cacheable ? lookup(version) : null;
+    }
+
+    /**
+     * Start the rendering of the page for the route and the date by the caller, e.g., while the page is sent to the browser.
+     * The caller has to end the rendering with Render.finish() or Render.fail(). Until then, requests for the same version of
+     * the page through get() wait for this rendering.
+     * @param route String; the route of the page, e.g., /electricity
+     * @param date LocalDate; the date of the page
+     * @return Render; the rendering, or null when another request is already rendering the same version of the page
+     */
+    public Render startRender(final String route, final LocalDate date)
+    {
+        Version version = version(route, date);
+        if (!version.cacheable)
+            return new Render(version, null);
+        CompletableFuture<Page> flight = this.flights.begin(version.flightKey());
+        if (flight == null)
+            return null;
+        synchronized (this)
+        {
+            this.misses++;
+        }
+        return new Render(version, flight);
+    }
+
+    /**
+     * Determine the version of the data of the page for the route and the date.
+     * @param route String; the route of the page
+     * @param date LocalDate; the date of the page
+     * @return Version; the version of the data of the page
+     */
+    private Version version(final String route, final LocalDate date)
+    {
+        LocalDate today = LocalDate.now();
+        long fileTime = 0L;
+        long version = 0L;
+        if (date.isBefore(today))
+            fileTime = fileTime(date);
+        Map.Entry<LocalDate, Path> newest = DayFileIndex.getInstance().last();
+        boolean live =
+                !date.isBefore(today) || newest == null || !YearMonth.from(date).isBefore(YearMonth.from(newest.getKey()));
+        if (live)
+        {
+            TelegramFile.getLastTelegram(); // reads new telegrams of today's file, which increases the version
+            version = this.todayVersion.get();
+        }
+        return new Version(route + "?" + date, today, fileTime, version, live);
+    }
+
+    /**
+     * Return the cached page for a version when it is still valid.
+     * @param version Version; the version of the data of the page
+     * @return Page; the valid cached page, or null when there is none
+     */
+    private synchronized Page lookup(final Version version)
+    {
+        Entry entry = this.entries.get(version.key);
+        if (entry != null && entry.renderedOn.equals(version.today) && entry.fileTime == version.fileTime
+                && entry.version == version.version)
+        {
+            this.hits++;
+            return entry.page;
+        }
+        return null;
+    }
+
+    /**
+     * Store an entry, and remove the least recently used entries until the cache fits in the maximum number of bytes.
+     * @param key String; the key of the entry
+     * @param entry Entry; the entry
+     */
+    private synchronized void put(final String key, final Entry entry)
+    {
+        Entry old = this.entries.put(key, entry);
+        if (old != null)
+            this.bytes -= old.page.size();
+        this.bytes += entry.page.size();
+        Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+        while (this.bytes > this.maxBytes && it.hasNext())
+        {
+            this.bytes -= it.next().getValue().page.size();
+            it.remove();
+        }
+    }
+
+    /**
+     * Return the modification time of the day file of a date.
+     * @param date LocalDate; the date
+     * @return long; the modification time of the day file in ms since the epoch, or -1 when there is no day file
+     */
+    private static long fileTime(final LocalDate date)
+    {
+        Path path = DayFileIndex.getInstance().get(date);
+        if (path == null)
+            return -1L;
+        try
+        {
+            return Files.getLastModifiedTime(path).toMillis();
+        }
+        catch (IOException e)
+        {
+            return -1L;
+        }
+    }
+
+    /**
+     * Return the number of cached pages.
+     * @return int; the number of cached pages
+     */
+    public synchronized int size()
+    {
+        return this.entries.size();
+    }
+
+    /**
+     * Return the total number of bytes of the cached pages, including their gzip variants.
+     * @return long; the total number of bytes of the cached pages
+     */
+    public synchronized long getBytes()
+    {
+        return this.bytes;
+    }
+
+    /**
+     * Return the number of requests that were answered from the cache.
+     * @return long; the number of cache hits
+     */
+    public synchronized long getHits()
+    {
+        return this.hits;
+    }
+
+    /**
+     * Return the number of requests that used the rendering of another request for the same page.
+     * @return long; the number of shared renderings
+     */
+    public long getShared()
+    {
+        return this.flights.getShared();
+    }
+
+    /**
+     * Return the number of requests for which the page had to be rendered.
+     * @return long; the number of cache misses
+     */
+    public synchronized long getMisses()
+    {
+        return this.misses;
+    }
+
+    /**
+     * A rendered page, with its validators.
+     */
+    public static final class Page
+    {
+        /** the UTF-8 bytes of the HTML of the page. */
+        private final byte[] body;
+
+        /** the gzip-compressed bytes of the page, or null when the page is too small to compress. */
+        private final byte[] gzip;
+
+        /** the strong ETag of the page, including the quotes. */
+        private final String etag;
+
+        /** the strong ETag of the gzip variant, including the quotes. */
+        private final String gzipEtag;
+
+        /** the last-modified time in ms since the epoch, rounded down to seconds as in the HTTP header. */
+        private final long lastModified;
+
+        /**
+         * Create a page.
+         * @param html String; the HTML of the page
+         * @param lastModified long; the last-modified time in ms since the epoch
+         */
+        Page(final String html, final long lastModified)
+        {
+            this(html.getBytes(StandardCharsets.UTF_8), lastModified);
+        }
+
+        /**
+         * Create a page from the UTF-8 bytes of its HTML.
+         * @param body byte[]; the UTF-8 bytes of the HTML of the page, which are not copied
+         * @param lastModified long; the last-modified time in ms since the epoch
+         */
+        Page(final byte[] body, final long lastModified)
+        {
+            this.body = body;
+            CRC32 crc = new CRC32();
+            crc.update(this.body);
+            String tag = Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(this.body.length);
+            this.etag = "\"" + tag + "\"";
+            this.gzipEtag = "\"" + tag + "-gz\"";
+            this.gzip = this.body.length < Constants.GZIP_MIN_BYTES ? null
+                    : LevelGzipOutputStream.compress(this.body, Constants.GZIP_LEVEL);
+            this.lastModified = lastModified / 1000L * 1000L;
+        }
+
+        /**
+         * Return whether the value of an If-None-Match header matches the ETag of a variant of the page.
+         * @param ifNoneMatch String; the value of the If-None-Match header, may be null
+         * @param gzipped boolean; whether to check the ETag of the gzip variant
+         * @return boolean; whether the browser already has this version of the page
+         */
+        public boolean matches(final String ifNoneMatch, final boolean gzipped)
+        {
+            if (ifNoneMatch == null)
+                return false;
+            String etag = getETag(gzipped);
+            for (String tag : ifNoneMatch.split(","))
+            {
+                String t = tag.trim();
+                if (t.startsWith("W/"))
+                    t = t.substring(2);
+                if (t.equals("*") || t.equals(etag))
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Return the UTF-8 bytes of the HTML of the page, or of the gzip variant. The array is shared and should not be changed.
+         * @param gzipped boolean; whether to return the gzip variant; the caller checks hasGzip() first
+         * @return byte[]; the UTF-8 bytes of the HTML of the page, or the gzip-compressed bytes
+         */
+        public byte[] getBody(final boolean gzipped)
+        {
+            return gzipped ? this.gzip : this.body;
+        }
+
+        /**
+         * Return whether the page has a gzip variant, i.e., whether the page is large enough to compress.
+         * @return boolean; whether the page has a gzip variant
+         */
+        public boolean hasGzip()
+        {
+            return this.gzip != null;
+        }
+
+        /**
+         * Return the strong ETag of the page or of the gzip variant, including the quotes.
+         * @param gzipped boolean; whether to return the ETag of the gzip variant
+         * @return String; the ETag
+         */
+        public String getETag(final boolean gzipped)
+        {
+            return gzipped ? this.gzipEtag : this.etag;
+        }
+
+        /**
+         * Return the number of bytes of the page, including the gzip variant.
+         * @return int; the number of bytes of the page
+         */
+        int size()
+        {
+            return this.body.length + (this.gzip == null ? 0 : this.gzip.length);
+        }
+
+        /**
+         * Return the last-modified time of the page.
+         * @return long; the last-modified time in ms since the epoch
+         */
+        public long getLastModified()
+        {
+            return this.lastModified;
+        }
+    }
+
+    /**
+     * A rendering of a page that was started with startRender(), and that is finished by the caller.
+     */
+    public final class Render
+    {
+        /** the version of the data of the page. */
+        private final Version version;
+
+        /** the flight of the rendering, or null when the page is not cached. */
+        private final CompletableFuture<Page> flight;
+
+        /**
+         * Create a rendering; use startRender().
+         * @param version Version; the version of the data of the page
+         * @param flight CompletableFuture&lt;Page&gt;; the flight of the rendering, or null when the page is not cached
+         */
+        private Render(final Version version, final CompletableFuture<Page> flight)
+        {
+            this.version = version;
+            this.flight = flight;
+        }
+
+        /**
+         * Return whether the page will be stored in the cache, i.e., whether finish() needs the HTML of the page.
+         * @return boolean; whether the page will be stored in the cache
+         */
+        public boolean isCached()
+        {
+            return this.flight != null;
+        }
+
+        /**
+         * Finish the rendering: store the page in the cache, and hand it to the requests that wait for it.
+         * @param body byte[]; the UTF-8 bytes of the HTML of the page, which are not copied
+         * @return Page; the page
+         */
+        public Page finish(final byte[] body)
+        {
+            Page page = new Page(body, this.version.lastModified());
+            if (this.flight != null)
+            {
+                put(this.version.key, new Entry(page, this.version.today, this.version.fileTime, this.version.version));
+                PageCache.this.flights.complete(this.version.flightKey(), this.flight, page);
+            }
+            return page;
+        }
+
+        /**
+         * End the rendering with a failure, which is passed to the requests that wait for it.
+         * @param failure Throwable; the exception of the rendering
+         */
+        public void fail(final Throwable failure)
+        {
+            if (this.flight != null)
+                PageCache.this.flights.fail(this.version.flightKey(), this.flight, failure);
+        }
+    }
+
+    /**
+     * The version of the data of a page: the date of today, and the modification time of the day file for a page in the past,
+     * or the version of today's data for a page of today.
+     */
+    private static final class Version
+    {
+        /** the key of the page, route?date. */
+        private final String key;
+
+        /** the date on which the version was determined. */
+        private final LocalDate today;
+
+        /** the modification time of the day file for a page in the past, 0 for today, or -1 when there is no day file. */
+        private final long fileTime;
+
+        /** the version of today's data for a page with today's data, or 0 for a page in the past. */
+        private final long version;
+
+        /** whether the page shows today's data, i.e., it is for today or for a day in the month of the newest day file. */
+        private final boolean live;
+
+        /** whether the page can be cached; pages for a day in the past without a day file are not cached. */
+        private final boolean cacheable;
+
+        /**
+         * Create a version of the data of a page.
+         * @param key String; the key of the page, route?date
+         * @param today LocalDate; the date on which the version was determined
+         * @param fileTime long; the modification time of the day file for a page in the past, 0 for today, or -1 when there
+         *            is no day file
+         * @param version long; the version of today's data for a page with today's data, or 0 for a page in the past
+         * @param live boolean; whether the page shows today's data
+         */
+        Version(final String key, final LocalDate today, final long fileTime, final long version, final boolean live)
+        {
+            this.key = key;
+            this.today = today;
+            this.fileTime = fileTime;
+            this.version = version;
+            this.live = live;
+            this.cacheable = fileTime >= 0L;
+        }
+
+        /**
+         * Return the key of the rendering of this version, route?date#fileTime#version.
+         * @return String; the key of the rendering of this version
+         */
+        String flightKey()
+        {
+            return this.key + "#" + this.fileTime + "#" + this.version;
+        }
+
+        /**
+         * Return the last-modified time of a page that is rendered for this version.
+         * @return long; the modification time of the day file, or the current time for a page with today's data
+         */
+        long lastModified()
+        {
+            return this.fileTime > 0L && !this.live ? this.fileTime : System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * A cached page with the information to check whether it is still valid.
+     */
+    private static final class Entry
+    {
+        /** the page. */
+        private final Page page;
+
+        /** the date on which the page was rendered. */
+        private final LocalDate renderedOn;
+
+        /** the modification time of the day file for a page in the past, or 0 for today. */
+        private final long fileTime;
+
+        /** the version of today's data for a page with today's data, or 0 for a page in the past. */
+        private final long version;
+
+        /**
+         * Create a cache entry.
+         * @param page Page; the page
+         * @param renderedOn LocalDate; the date on which the page was rendered
+         * @param fileTime long; the modification time of the day file for a page in the past, or 0 for today
+         * @param version long; the version of today's data for a page with today's data, or 0 for a page in the past
+         */
+        Entry(final Page page, final LocalDate renderedOn, final long fileTime, final long version)
+        {
+            this.page = page;
+            this.renderedOn = renderedOn;
+            this.fileTime = fileTime;
+            this.version = version;
+        }
+    }
+
+}
@@ -0,0 +1,409 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PageStream is the body of a page that is sent to the browser while it is rendered. The page is written on a render thread
+ * into a small bounded queue of chunks, and NanoHTTPD sends the chunks as a chunked response by reading this InputStream in
+ * the thread of the connection. The head of the page (the framework with the scripts and styles) is flushed before the
+ * content, so the browser can start loading the scripts and styles while the charts are read from the day files. A render
+ * thread that is ahead of the browser waits until the browser has read a chunk, so at most a few chunks of a page are kept per
+ * request.
+ * <p>
+ * When the page is stored in the page cache, a copy of the HTML is kept while the page is rendered, which becomes the cached
+ * page at the end. Other requests for the same page wait for that rendering, so the render thread then never waits for the
+ * browser: the chunks are queued without a limit, which costs at most the size of the page next to the copy. When the browser
+ * closes the connection before the end of the page, the page is still rendered for the cache, but the chunks are no longer
+ * queued.
+ * </p>
+ * <p>
+ * When the rendering fails, or the browser does not read the page in time, read() throws an IOException, so the response is
+ * aborted instead of ending as if the page were complete.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class PageStream extends InputStream
+{
+    /** The writer of the HTML of a page, e.g., SmartMeterWeb::writeOverview. */
+    @FunctionalInterface
+    public interface PageWriter
+    {
+        /**
+         * Write the HTML of the page.
+         * @param out Appendable; the destination of the HTML
+         * @throws IOException on write error of the destination
+         */
+        void write(Appendable out) throws IOException;
+    }
+
+    /** the number of bytes of a chunk. */
+    private static final int CHUNK_SIZE = 8192;
+
+    /** the number of chunks that can wait to be sent. */
+    private static final int MAX_CHUNKS = 4;
+
+    /** the end of the page in the queue of chunks. */
+    private static final byte[] END = new byte[0];
+
+    /** the failure of the rendering in the queue of chunks. */
+    private static final byte[] FAILED = new byte[0];
+
+    /** the number of the next render thread, for the thread name. */
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    /** the render threads; a page is only streamed when a render thread is free. */
+    private static final ThreadPoolExecutor RENDERERS = new ThreadPoolExecutor(0, Constants.HTTP_WORKERS, 60L,
+            TimeUnit.SECONDS, new SynchronousQueue<>(), runnable ->
+            {
+                Thread thread = new Thread(runnable, "PageStream-" + THREAD_NUMBER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+
+    /** the number of pages that were streamed. */
+    private static final AtomicLong STREAMED = new AtomicLong();
+
+    /** the chunks that wait to be sent; bounded when the page is not cached. */
+    private final BlockingQueue<byte[]> chunks;
+
+    /** the chunk that is being sent. */
+    private byte[] current = new byte[0];
+
+    /** the position in the current chunk. */
+    private int position = 0;
+
+    /** whether the end of the page has been read. */
+    private boolean ended = false;
+
+    /** whether the stream has been closed by the connection. */
+    private volatile boolean closed = false;
+
+    /** whether the rendering failed, or the browser did not read the page in time, so the page is incomplete. */
+    private volatile boolean failed = false;
+
+    /**
+     * Create a page stream; use start().
+     * @param cached boolean; whether the page is stored in the page cache, so the render thread may not wait for the browser
+     */
+    private PageStream(final boolean cached)
+    {
+        this.chunks = new LinkedBlockingQueue<>(cached ? Integer.MAX_VALUE : MAX_CHUNKS);
+    }
+
+    /**
+     * Start rendering a page on a render thread, and return the stream of its HTML. At the end of the rendering, the page is
+     * stored in the cache with render.finish(), or render.fail() is called when the rendering failed.
+     * @param writer PageWriter; the writer of the HTML of the page
+     * @param gzipped boolean; whether the stream is gzip-compressed
+     * @param render PageCache.Render; the rendering of the page in the page cache
+     * @return PageStream; the stream of the HTML of the page, or null when all render threads are busy; the caller then still
+     *         has to finish the rendering
+     */
+    public static PageStream start(final PageWriter writer, final boolean gzipped, final PageCache.Render render)
+    {
+        PageStream stream = new PageStream(render.isCached());
+        try
+        {
+            RENDERERS.execute(() -> stream.render(writer, gzipped, render));
+        }
+        catch (RejectedExecutionException e)
+        {
+            return null;
+        }
+        STREAMED.incrementAndGet();
+        return stream;
+    }
+
+    /**
+     * Render the page into the queue of chunks, and into a copy for the page cache when the page is cached.
+     * @param writer PageWriter; the writer of the HTML of the page
+     * @param gzipped boolean; whether the stream is gzip-compressed
+     * @param render PageCache.Render; the rendering of the page in the page cache
+     */
+    private void render(final PageWriter writer, final boolean gzipped, final PageCache.Render render)
+    {
+        Sink sink = new Sink();
+        try
+        {
+            OutputStream client =
+                    gzipped ? new LevelGzipOutputStream(sink, Constants.GZIP_LEVEL, CHUNK_SIZE, true) : sink;
+            ByteArrayOutputStream copy = render.isCached() ? new ByteArrayOutputStream(65536) : null;
+            Writer out = new OutputStreamWriter(copy == null ? client : new Tee(client, copy), StandardCharsets.UTF_8);
+            writer.write(out);
+            out.close(); // flushes the writer, and finishes the gzip stream and the page
+            if (copy != null)
+                render.finish(copy.toByteArray());
+        }
+        catch (IOException | RuntimeException | Error e)
+        {
+            System.err.println("error in PageStream.render(): " + e.getMessage());
+            sink.fail();
+            render.fail(e);
+        }
+    }
+
+    /**
+     * Make sure there are bytes of a chunk to send, and wait for the next chunk when needed.
+     * @return boolean; false at the end of the page, or when the stream is closed
+     * @throws IOException when the page is incomplete because the rendering failed or took too long, or when the thread is
+     *             interrupted
+     */
+    private boolean fill() throws IOException
+    {
+        if (this.position < this.current.length)
+            return true;
+        if (this.ended || this.closed)
+            return false;
+        if (this.failed)
+            throw new IOException("the page is incomplete");
+        try
+        {
+            byte[] chunk = this.chunks.poll(Constants.SINGLE_FLIGHT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (chunk == END)
+            {
+                this.ended = true;
+                return false;
+            }
+            if (chunk == null || chunk == FAILED)
+            {
+                this.failed = true;
+                throw new IOException(chunk == null ? "the page was not rendered in time" : "the rendering of the page failed");
+            }
+            this.current = chunk;
+            this.position = 0;
+            return true;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for the page");
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read() throws IOException
+    {
+        if (!fill())
+            return -1;
+        return this.current[this.position++] & 0xFF;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException
+    {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int n = Math.min(len, this.current.length - this.position);
+        System.arraycopy(this.current, this.position, b, off, n);
+        this.position += n;
+        return n;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close()
+    {
+        this.closed = true;
+        this.chunks.clear(); // a render thread that waits for space sees that the stream is closed
+    }
+
+    /**
+     * Return the number of pages that were streamed while they were rendered.
+     * @return long; the number of streamed pages
+     */
+    public static long getStreamed()
+    {
+        return STREAMED.get();
+    }
+
+    /**
+     * Sink is the end of the stream on the render thread, which cuts the page into chunks and queues them.
+     */
+    private final class Sink extends OutputStream
+    {
+        /** the chunk that is being filled. */
+        private byte[] chunk = new byte[CHUNK_SIZE];
+
+        /** the number of bytes in the chunk. */
+        private int count = 0;
+
+        /** whether the end of the page, or its failure, has been queued. */
+        private boolean ended = false;
+
+        /** {@inheritDoc} */
+        @Override
+        public void write(final int b) throws IOException
+        {
+            if (this.count == this.chunk.length)
+                send();
+            this.chunk[this.count++] = (byte) b;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException
+        {
+            int offset = off;
+            int length = len;
+            while (length > 0)
+            {
+                if (this.count == this.chunk.length)
+                    send();
+                int n = Math.min(length, this.chunk.length - this.count);
+                System.arraycopy(b, offset, this.chunk, this.count, n);
+                this.count += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void flush() throws IOException
+        {
+            if (this.count > 0)
+                send();
+        }
+
+        /**
+         * Queue the rest of the page and its end; called when the gzip stream or the writer is closed after the whole page has
+         * been written.
+         * @throws IOException when the thread is interrupted
+         */
+        @Override
+        public void close() throws IOException
+        {
+            if (this.ended)
+                return;
+            flush();
+            this.ended = true;
+            queue(END);
+        }
+
+        /**
+         * Mark the page as incomplete, so the browser gets an aborted response instead of a page that ends cleanly. The chunks
+         * that were not sent are dropped.
+         */
+        public void fail()
+        {
+            if (this.ended)
+                return;
+            this.ended = true;
+            PageStream.this.failed = true;
+            PageStream.this.chunks.offer(FAILED); // wakes up the connection; when the queue is full, it sees the failed flag
+        }
+
+        /**
+         * Queue the bytes of the chunk, and start a new chunk.
+         * @throws IOException when the thread is interrupted
+         */
+        private void send() throws IOException
+        {
+            byte[] full = this.chunk;
+            int n = this.count;
+            this.chunk = new byte[CHUNK_SIZE];
+            this.count = 0;
+            queue(n == full.length ? full : Arrays.copyOf(full, n));
+        }
+
+        /**
+         * Queue a chunk, and wait for space in the queue when the browser is behind; the queue of a cached page is never full.
+         * When the stream is closed or failed, the chunk is dropped; when the browser does not read the page in time, the
+         * stream fails.
+         * @param bytes byte[]; the chunk
+         * @throws IOException when the thread is interrupted
+         */
+        private void queue(final byte[] bytes) throws IOException
+        {
+            if (PageStream.this.closed || PageStream.this.failed)
+                return;
+            try
+            {
+                if (!PageStream.this.chunks.offer(bytes, Constants.SINGLE_FLIGHT_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                    PageStream.this.failed = true;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while sending the page");
+            }
+        }
+    }
+
+    /**
+     * Tee writes the bytes of the page to the browser, and to the copy for the page cache.
+     */
+    private static final class Tee extends OutputStream
+    {
+        /** the stream to the browser. */
+        private final OutputStream client;
+
+        /** the copy for the page cache. */
+        private final ByteArrayOutputStream copy;
+
+        /**
+         * Create a tee.
+         * @param client OutputStream; the stream to the browser
+         * @param copy ByteArrayOutputStream; the copy for the page cache
+         */
+        Tee(final OutputStream client, final ByteArrayOutputStream copy)
+        {
+            this.client = client;
+            this.copy = copy;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void write(final int b) throws IOException
+        {
+            this.copy.write(b);
+            this.client.write(b);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException
+        {
+            this.copy.write(b, off, len);
+            this.client.write(b, off, len);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void flush() throws IOException
+        {
+            this.client.flush();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close() throws IOException
+        {
+            this.client.close();
+        }
+    }
+
+}
@@ -0,0 +1,146 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * PageTemplate is the page framework (framework.html), compiled once into literal segments and slots. The slots #1 to #4 are the
+ * classes of the tabs of the navigation bar, where the tab of the page gets the class "active"; the marker
+ * <code>&lt;!-- #content --&gt;</code> is the place of the content of the page. Since there are only four tabs, the part before
+ * and the part after the content are rendered beforehand for every tab, so a page is written as the pre-rendered head of its
+ * tab, the content, and the tail, straight into the output, without copying the framework or the content.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class PageTemplate
+{
+    /** The tabs of the navigation bar, with the number of their slot in the framework. */
+    public enum Tab
+    {
+        /** the overview page. */
+        OVERVIEW(1),
+
+        /** the electricity page. */
+        ELECTRICITY(2),
+
+        /** the gas page. */
+        GAS(3),
+
+        /** the comparison page. */
+        COMPARISON(4);
+
+        /** the number of the slot of the tab, e.g., 1 for #1. */
+        private final int slot;
+
+        /**
+         * Create a tab.
+         * @param slot int; the number of the slot of the tab
+         */
+        Tab(final int slot)
+        {
+            this.slot = slot;
+        }
+    }
+
+    /** the marker of the place of the content. */
+    public static final String CONTENT_MARKER = "<!-- #content -->";
+
+    /** a slot for the class of a tab: # and one digit, not followed by a letter or digit (such as a color #1a2b3c). */
+    private static final Pattern SLOT = Pattern.compile("#([1-9])(?![0-9A-Za-z])");
+
+    /** the pre-rendered part before the content, per tab. */
+    private final String[] heads = new String[Tab.values().length];
+
+    /** the pre-rendered part after the content, per tab. */
+    private final String[] tails = new String[Tab.values().length];
+
+    /**
+     * Compile a page framework.
+     * @param html String; the HTML of the framework
+     */
+    public PageTemplate(final String html)
+    {
+        int marker = html.indexOf(CONTENT_MARKER);
+        String head = marker < 0 ? html : html.substring(0, marker);
+        String tail = marker < 0 ? "" : html.substring(marker + CONTENT_MARKER.length());
+        List<Object> headSegments = segments(head);
+        List<Object> tailSegments = segments(tail);
+        for (Tab tab : Tab.values())
+        {
+            this.heads[tab.ordinal()] = render(headSegments, tab);
+            this.tails[tab.ordinal()] = render(tailSegments, tab);
+        }
+    }
+
+    /**
+     * Split a part of the framework into literal segments (String) and slots (Integer).
+     * @param text String; the part of the framework
+     * @return List&lt;Object&gt;; the literal segments and the slots, in order
+     */
+    private static List<Object> segments(final String text)
+    {
+        List<Object> segments = new ArrayList<>();
+        Matcher matcher = SLOT.matcher(text);
+        int start = 0;
+        while (matcher.find())
+        {
+            segments.add(text.substring(start, matcher.start()));
+            segments.add(Integer.valueOf(matcher.group(1)));
+            start = matcher.end();
+        }
+        segments.add(text.substring(start));
+        return segments;
+    }
+
+    /**
+     * Render the segments for a tab: the slot of the tab becomes "active", the other slots become empty.
+     * @param segments List&lt;Object&gt;; the literal segments and the slots
+     * @param tab Tab; the active tab
+     * @return String; the rendered segments
+     */
+    private static String render(final List<Object> segments, final Tab tab)
+    {
+        StringBuilder s = new StringBuilder();
+        for (Object segment : segments)
+        {
+            if (segment instanceof Integer)
+                s.append(((Integer) segment).intValue() == tab.slot ? "active" : "");
+            else
+                s.append((String) segment);
+        }
+        return s.toString();
+    }
+
+    /**
+     * Write the part of the page before the content. When the destination is Flushable, e.g., the stream of a page that is
+     * sent while it is rendered, it is flushed, so the browser gets the head of the page before the content is rendered.
+     * @param out Appendable; the destination
+     * @param tab Tab; the active tab
+     * @throws IOException on write error of the destination
+     */
+    public void writeHead(final Appendable out, final Tab tab) throws IOException
+    {
+        out.append(this.heads[tab.ordinal()]);
+        if (out instanceof Flushable)
+            ((Flushable) out).flush();
+    }
+
+    /**
+     * Write the part of the page after the content.
+     * @param out Appendable; the destination
+     * @param tab Tab; the active tab
+     * @throws IOException on write error of the destination
+     */
+    public void writeTail(final Appendable out, final Tab tab) throws IOException
+    {
+        out.append(this.tails[tab.ordinal()]);
+    }
+
+}
@@ -0,0 +1,99 @@
+package nl.verbraeck.smartmeter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RangeLoader reads a range of day files concurrently, e.g., the first telegrams of the last 30 days, or of the last 12 months.
+ * Each read is a task that returns the telegram for one key; the results are merged into a sorted map. The tasks run on one
+ * shared executor with at most 4 threads (the number of cores of the Raspberry Pi), so a page does not wait for 30 sequential
+ * reads from the SD card, while concurrent pages cannot flood the card with requests. When the queue of the executor is full,
+ * the calling thread reads the file itself.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class RangeLoader
+{
+    /** the number of threads that read files. */
+    private static final int THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /** the number of tasks that can wait for a thread. */
+    private static final int QUEUE_SIZE = 64;
+
+    /** the number of the next thread, for the thread name. */
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    /** the shared executor; idle threads stop after 30 seconds. */
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 30L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_SIZE), runnable ->
+            {
+                Thread thread = new Thread(runnable, "RangeLoader-" + THREAD_NUMBER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+    static
+    {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Utility class; do not instantiate.
+     */
+    private RangeLoader()
+    {
+        // Do not instantiate
+    }
+
+    /**
+     * Run the tasks concurrently, and merge the results into a sorted map. A task that returns null or fails has no entry in
+     * the map; a failure is reported on System.err.
+     * @param tasks Map&lt;String, Callable&lt;Telegram&gt;&gt;; the tasks, with the key under which to store the result
+     * @return SortedMap&lt;String, Telegram&gt;; the non-null results of the tasks, sorted on key
+     */
+    public static SortedMap<String, Telegram> load(final Map<String, Callable<Telegram>> tasks)
+    {
+        List<String> keys = new ArrayList<>(tasks.size());
+        List<Future<Telegram>> futures = new ArrayList<>(tasks.size());
+        for (Map.Entry<String, Callable<Telegram>> entry : tasks.entrySet())
+        {
+            keys.add(entry.getKey());
+            futures.add(EXECUTOR.submit(entry.getValue()));
+        }
+        SortedMap<String, Telegram> telegramMap = new TreeMap<>();
+        for (int i = 0; i < futures.size(); i++)
+        {
+            try
+            {
+                Telegram telegram = futures.get(i).get();
+                if (telegram != null)
+                    telegramMap.put(keys.get(i), telegram);
+            }
+            catch (ExecutionException e)
+            {
+                System.err.println("error in RangeLoader.load() for " + keys.get(i) + ": " + e.getCause().getMessage());
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                System.err.println("error in RangeLoader.load(): interrupted");
+                break;
+            }
+        }
+        return telegramMap;
+    }
+
+}
@@ -0,0 +1,223 @@
+package nl.verbraeck.smartmeter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Reading is the result of a range query with TelegramFile.query() for one interval: the register values (cumulative energy
+ * and gas) at the start of the interval, and the average of the instantaneous values (power, voltage and current) over the
+ * interval. For intervals of a day or a month, the average power is derived from the difference of the energy registers at
+ * the start of this interval and the next one, so only the first telegram of a day file is read; the average voltage and
+ * current are not available (NaN) in that case.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class Reading
+{
+    /** the start of the interval. */
+    private final LocalDateTime start;
+
+    /** electricity delivered tariff 1 at the start of the interval [kWh]. */
+    double tariff1;
+
+    /** electricity delivered tariff 2 at the start of the interval [kWh]. */
+    double tariff2;
+
+    /** electricity delivered back tariff 1 at the start of the interval [kWh]. */
+    double backTariff1;
+
+    /** electricity delivered back tariff 2 at the start of the interval [kWh]. */
+    double backTariff2;
+
+    /** gas delivered at the start of the interval [m3]. */
+    double gasDelivered;
+
+    /** average power delivered over the interval [kW]. */
+    double powerDelivered = Double.NaN;
+
+    /** average power received over the interval [kW]. */
+    double powerReceived = Double.NaN;
+
+    /** average voltage L1 over the interval [V]. */
+    double voltageL1 = Double.NaN;
+
+    /** average current L1 over the interval [A]. */
+    double currentL1 = Double.NaN;
+
+    /** the number of telegrams that were averaged. */
+    int samples;
+
+    /** whether the register values are the values at the start of the interval, and not of a later telegram. */
+    private boolean registersAtStart = true;
+
+    /**
+     * Create a reading for an interval.
+     * @param start LocalDateTime; the start of the interval
+     */
+    Reading(final LocalDateTime start)
+    {
+        this.start = start;
+    }
+
+    /**
+     * Store the register values of a telegram as the values at the start of the interval.
+     * @param telegram Telegram; the first telegram at or after the start of the interval
+     * @param atStart boolean; whether the telegram is from the start of the interval, and not from after a gap in the data
+     */
+    void setRegisters(final Telegram telegram, final boolean atStart)
+    {
+        this.registersAtStart = atStart;
+        this.tariff1 = telegram.electricityTariff1kWh;
+        this.tariff2 = telegram.electricityTariff2kWh;
+        this.backTariff1 = telegram.electrBackTariff1kWh;
+        this.backTariff2 = telegram.electrBackTariff2kWh;
+        this.gasDelivered = telegram.gasDeliveredM3;
+    }
+
+    /**
+     * Add entry i of a day series to the interval. The first entry provides the register values; the instantaneous values of
+     * all entries are averaged.
+     * @param series DaySeries; the series of the day
+     * @param i int; the index of the entry
+     */
+    void add(final DaySeries series, final int i)
+    {
+        if (this.samples == 0)
+        {
+            this.tariff1 = series.getTariff1(i);
+            this.tariff2 = series.getTariff2(i);
+            this.backTariff1 = series.getBackTariff1(i);
+            this.backTariff2 = series.getBackTariff2(i);
+            this.gasDelivered = series.getGasDelivered(i);
+            this.powerDelivered = 0.0;
+            this.powerReceived = 0.0;
+            this.voltageL1 = 0.0;
+            this.currentL1 = 0.0;
+        }
+        this.samples++;
+        this.powerDelivered += (series.getPowerDelivered(i) - this.powerDelivered) / this.samples;
+        this.powerReceived += (series.getPowerReceived(i) - this.powerReceived) / this.samples;
+        this.voltageL1 += (series.getVoltageL1(i) - this.voltageL1) / this.samples;
+        this.currentL1 += (series.getCurrentL1(i) - this.currentL1) / this.samples;
+    }
+
+    /**
+     * Return the start of the interval.
+     * @return LocalDateTime; the start of the interval
+     */
+    public LocalDateTime getStart()
+    {
+        return this.start;
+    }
+
+    /**
+     * Return the electricity delivered with tariff 1 at the start of the interval.
+     * @return double; electricity delivered tariff 1 [kWh]
+     */
+    public double getTariff1()
+    {
+        return this.tariff1;
+    }
+
+    /**
+     * Return the electricity delivered with tariff 2 at the start of the interval.
+     * @return double; electricity delivered tariff 2 [kWh]
+     */
+    public double getTariff2()
+    {
+        return this.tariff2;
+    }
+
+    /**
+     * Return the electricity delivered back with tariff 1 at the start of the interval.
+     * @return double; electricity delivered back tariff 1 [kWh]
+     */
+    public double getBackTariff1()
+    {
+        return this.backTariff1;
+    }
+
+    /**
+     * Return the electricity delivered back with tariff 2 at the start of the interval.
+     * @return double; electricity delivered back tariff 2 [kWh]
+     */
+    public double getBackTariff2()
+    {
+        return this.backTariff2;
+    }
+
+    /**
+     * Return whether the register values are the values at the start of the interval. When the data of the interval starts
+     * after a gap, the registers are the values of the first telegram after the gap.
+     * @return boolean; whether the register values are the values at the start of the interval
+     */
+    public boolean isRegistersAtStart()
+    {
+        return this.registersAtStart;
+    }
+
+    /**
+     * Return the gas delivered at the start of the interval.
+     * @return double; gas delivered [m3]
+     */
+    public double getGasDelivered()
+    {
+        return this.gasDelivered;
+    }
+
+    /**
+     * Return the average power delivered over the interval.
+     * @return double; average power delivered [kW]
+     */
+    public double getPowerDelivered()
+    {
+        return this.powerDelivered;
+    }
+
+    /**
+     * Return the average power received over the interval.
+     * @return double; average power received [kW]
+     */
+    public double getPowerReceived()
+    {
+        return this.powerReceived;
+    }
+
+    /**
+     * Return the average voltage L1 over the interval.
+     * @return double; average voltage L1 [V], or NaN for intervals of a day or a month
+     */
+    public double getVoltageL1()
+    {
+        return this.voltageL1;
+    }
+
+    /**
+     * Return the average current L1 over the interval.
+     * @return double; average current L1 [A], or NaN for intervals of a day or a month
+     */
+    public double getCurrentL1()
+    {
+        return this.currentL1;
+    }
+
+    /**
+     * Return the number of telegrams that were averaged.
+     * @return int; the number of telegrams, or 0 for intervals of a day or a month
+     */
+    public int getSamples()
+    {
+        return this.samples;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString()
+    {
+        return "Reading [start=" + this.start + ", tariff1=" + this.tariff1 + ", tariff2=" + this.tariff2 + ", gasDelivered="
+                + this.gasDelivered + ", powerDelivered=" + this.powerDelivered + ", samples=" + this.samples + "]";
+    }
+
+}
@@ -0,0 +1,87 @@
+package nl.verbraeck.smartmeter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Resolution is the step of a range query with TelegramFile.query(): the readings are grouped in intervals of one minute, a
+ * quarter of an hour, an hour, a day, or a month. The intervals are aligned to the start of the minute, quarter, hour, day, or
+ * month.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public enum Resolution
+{
+    /** intervals of one minute. */
+    MINUTE(1),
+
+    /** intervals of 15 minutes, starting at the whole hour. */
+    QUARTER(15),
+
+    /** intervals of one hour. */
+    HOUR(60),
+
+    /** intervals of one day, starting at midnight. */
+    DAY(1440),
+
+    /** intervals of one month, starting at midnight of the first day of the month. */
+    MONTH(0);
+
+    /** the length of the interval in minutes, or 0 for a month. */
+    private final int minutes;
+
+    /**
+     * Create a resolution.
+     * @param minutes int; the length of the interval in minutes, or 0 for a month
+     */
+    Resolution(final int minutes)
+    {
+        this.minutes = minutes;
+    }
+
+    /**
+     * Return whether the intervals are shorter than a day, so the readings within a day have to be read.
+     * @return boolean; whether the intervals are shorter than a day
+     */
+    public boolean isSubDay()
+    {
+        return this.minutes > 0 && this.minutes < 1440;
+    }
+
+    /**
+     * Return the start of the interval within the day that contains the given minute of the day.
+     * @param minuteOfDay int; the minute of the day
+     * @return int; the minute of the day at which the interval starts
+     */
+    public int alignMinute(final int minuteOfDay)
+    {
+        if (this == MONTH)
+            return 0;
+        return minuteOfDay - minuteOfDay % this.minutes;
+    }
+
+    /**
+     * Return the start of the interval that contains the given time.
+     * @param time LocalDateTime; the time
+     * @return LocalDateTime; the start of the interval that contains the time
+     */
+    public LocalDateTime align(final LocalDateTime time)
+    {
+        if (this == MONTH)
+            return time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+        return time.toLocalDate().atStartOfDay().plusMinutes(alignMinute(time.getHour() * 60 + time.getMinute()));
+    }
+
+    /**
+     * Return the start of the next interval.
+     * @param start LocalDateTime; the start of an interval
+     * @return LocalDateTime; the start of the next interval
+     */
+    public LocalDateTime next(final LocalDateTime start)
+    {
+        return this == MONTH ? start.plusMonths(1) : start.plusMinutes(this.minutes);
+    }
+
+}
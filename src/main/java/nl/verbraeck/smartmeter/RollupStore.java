@@ -0,0 +1,272 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RollupStore keeps one compact record per closed day and per closed month in a file on disk, with the first and the last
+ * register readings (electricity tariff 1 and 2 delivered and returned, and gas) of the day or month. The file is memory-mapped
+ * at startup to fill SmartMeterWeb.FIRST_DAY_TELEGRAM_MAP and SmartMeterWeb.FIRST_MONTH_TELEGRAM_MAP, so the 30-day and
+ * 12-month charts and the comparison page do not have to read the day files again after a restart. New records are appended
+ * when a day or month is closed.
+ * <p>
+ * Each record has a fixed size of 64 bytes: type ('D' or 'M'), key (epoch day of the day, or of the first day of the month),
+ * and for the first and the last reading the timestamp in epoch seconds and the five registers in thousandths.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class RollupStore
+{
+    /** the size of a record in bytes. */
+    private static final int RECORD_SIZE = 64;
+
+    /** record type of a day record. */
+    private static final int DAY = 'D';
+
+    /** record type of a month record. */
+    private static final int MONTH = 'M';
+
+    /** the store for Constants.LOCAL_FOLDER; created on first use. */
+    private static RollupStore instance = null;
+
+    /** the rollup file. */
+    private final Path path;
+
+    /** the first and last reading per closed day. */
+    private final Map<LocalDate, Telegram[]> days = new ConcurrentHashMap<>();
+
+    /** the first and last reading per closed month, keyed by the first day of the month. */
+    private final Map<LocalDate, Telegram[]> months = new ConcurrentHashMap<>();
+
+    /**
+     * Create the store and load the existing records.
+     * @param path Path; the rollup file
+     */
+    private RollupStore(final Path path)
+    {
+        this.path = path;
+        load();
+    }
+
+    /**
+     * Return the rollup store in Constants.LOCAL_FOLDER. The store is loaded on the first call.
+     * @return RollupStore; the rollup store
+     */
+    public static synchronized RollupStore getInstance()
+    {
+        if (instance == null)
+            instance = new RollupStore(Path.of(Constants.LOCAL_FOLDER, Constants.ROLLUP_FILE));
+        return instance;
+    }
+
+    /**
+     * Map the rollup file and read all records into memory, and fill the first-telegram caches of SmartMeterWeb. A partially
+     * written record at the end of the file is ignored.
+     */
+    private void load()
+    {
+        if (!Files.exists(this.path))
+            return;
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ))
+        {
+            long size = channel.size() - channel.size() % RECORD_SIZE;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            while (buffer.remaining() >= RECORD_SIZE)
+            {
+                int type = buffer.getInt();
+                LocalDate key = LocalDate.ofEpochDay(buffer.getInt());
+                Telegram[] readings = new Telegram[] {getReading(buffer), getReading(buffer)};
+                if (type == DAY)
+                    putDay(key, readings);
+                else if (type == MONTH)
+                    putMonth(key, readings);
+            }
+            System.out.println("loaded " + this.days.size() + " day and " + this.months.size() + " month rollups");
+        }
+        catch (IOException exception)
+        {
+            System.err.println("RollupStore: cannot read " + this.path + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Store the readings of a closed day in memory and in the first-telegram cache.
+     * @param date LocalDate; the day
+     * @param readings Telegram[]; the first and the last reading of the day
+     */
+    private void putDay(final LocalDate date, final Telegram[] readings)
+    {
+        this.days.put(date, readings);
+        SmartMeterWeb.FIRST_DAY_TELEGRAM_MAP.put(date.toString(), readings[0]);
+    }
+
+    /**
+     * Store the readings of a closed month in memory and in the first-telegram cache. Note that the first-telegram cache uses
+     * the month before as the key: the first reading of a month is the end reading of the month before.
+     * @param firstDay LocalDate; the first day of the month
+     * @param readings Telegram[]; the first and the last reading of the month
+     */
+    private void putMonth(final LocalDate firstDay, final Telegram[] readings)
+    {
+        this.months.put(firstDay, readings);
+        SmartMeterWeb.FIRST_MONTH_TELEGRAM_MAP.put(firstDay.minusMonths(1).toString().substring(0, 7), readings[0]);
+    }
+
+    /**
+     * Add the record for a closed day, when it is not in the store yet.
+     * @param date LocalDate; the day
+     * @param first Telegram; the first telegram of the day file
+     * @param last Telegram; the last telegram of the day file
+     */
+    public synchronized void addDay(final LocalDate date, final Telegram first, final Telegram last)
+    {
+        if (this.days.containsKey(date) || first == null || last == null)
+            return;
+        Telegram[] readings = new Telegram[] {reading(first), reading(last)};
+        if (append(DAY, date, readings))
+            putDay(date, readings);
+    }
+
+    /**
+     * Add the record for a closed month, when it is not in the store yet.
+     * @param firstDay LocalDate; the first day of the month
+     * @param first Telegram; the first telegram of the month
+     * @param last Telegram; the last telegram of the month
+     */
+    public synchronized void addMonth(final LocalDate firstDay, final Telegram first, final Telegram last)
+    {
+        if (this.months.containsKey(firstDay) || first == null || last == null)
+            return;
+        Telegram[] readings = new Telegram[] {reading(first), reading(last)};
+        if (append(MONTH, firstDay, readings))
+            putMonth(firstDay, readings);
+    }
+
+    /**
+     * Return the first reading of a closed day.
+     * @param date LocalDate; the day
+     * @return Telegram; the first reading (registers and timestamp only), or null when the day is not in the store
+     */
+    public Telegram getFirstOfDay(final LocalDate date)
+    {
+        Telegram[] readings = this.days.get(date);
+        return readings == null ? null : readings[0];
+    }
+
+    /**
+     * Return the last reading of a closed day.
+     * @param date LocalDate; the day
+     * @return Telegram; the last reading (registers and timestamp only), or null when the day is not in the store
+     */
+    public Telegram getLastOfDay(final LocalDate date)
+    {
+        Telegram[] readings = this.days.get(date);
+        return readings == null ? null : readings[1];
+    }
+
+    /**
+     * Return the last reading of a closed month.
+     * @param firstDay LocalDate; the first day of the month
+     * @return Telegram; the last reading (registers and timestamp only), or null when the month is not in the store
+     */
+    public Telegram getLastOfMonth(final LocalDate firstDay)
+    {
+        Telegram[] readings = this.months.get(firstDay);
+        return readings == null ? null : readings[1];
+    }
+
+    /**
+     * Append a record to the rollup file.
+     * @param type int; DAY or MONTH
+     * @param key LocalDate; the day, or the first day of the month
+     * @param readings Telegram[]; the first and the last reading
+     * @return boolean; whether the record was written
+     */
+    private boolean append(final int type, final LocalDate key, final Telegram[] readings)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        buffer.putInt(type).putInt((int) key.toEpochDay());
+        putReading(buffer, readings[0]);
+        putReading(buffer, readings[1]);
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND))
+        {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            return true;
+        }
+        catch (IOException exception)
+        {
+            System.err.println("RollupStore: cannot write " + this.path + ": " + exception.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Make a reading with only the timestamp and the registers of a telegram.
+     * @param telegram Telegram; the telegram
+     * @return Telegram; the reading
+     */
+    private static Telegram reading(final Telegram telegram)
+    {
+        Telegram reading = new Telegram();
+        reading.date = telegram.date;
+        reading.time = telegram.time;
+        reading.electricityTariff1kWh = telegram.electricityTariff1kWh;
+        reading.electricityTariff2kWh = telegram.electricityTariff2kWh;
+        reading.electrBackTariff1kWh = telegram.electrBackTariff1kWh;
+        reading.electrBackTariff2kWh = telegram.electrBackTariff2kWh;
+        reading.gasDeliveredM3 = telegram.gasDeliveredM3;
+        return reading;
+    }
+
+    /**
+     * Write a reading (28 bytes) to the buffer.
+     * @param buffer ByteBuffer; the buffer
+     * @param reading Telegram; the reading
+     */
+    private static void putReading(final ByteBuffer buffer, final Telegram reading)
+    {
+        buffer.putLong(reading.date.atTime(reading.time).toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt((int) Math.round(reading.electricityTariff1kWh * 1000.0));
+        buffer.putInt((int) Math.round(reading.electricityTariff2kWh * 1000.0));
+        buffer.putInt((int) Math.round(reading.electrBackTariff1kWh * 1000.0));
+        buffer.putInt((int) Math.round(reading.electrBackTariff2kWh * 1000.0));
+        buffer.putInt((int) Math.round(reading.gasDeliveredM3 * 1000.0));
+    }
+
+    /**
+     * Read a reading (28 bytes) from the buffer.
+     * @param buffer ByteBuffer; the buffer
+     * @return Telegram; the reading
+     */
+    private static Telegram getReading(final ByteBuffer buffer)
+    {
+        Telegram reading = new Telegram();
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(buffer.getLong(), 0, ZoneOffset.UTC);
+        reading.date = timestamp.toLocalDate();
+        reading.time = timestamp.toLocalTime();
+        reading.electricityTariff1kWh = buffer.getInt() / 1000.0;
+        reading.electricityTariff2kWh = buffer.getInt() / 1000.0;
+        reading.electrBackTariff1kWh = buffer.getInt() / 1000.0;
+        reading.electrBackTariff2kWh = buffer.getInt() / 1000.0;
+        reading.gasDeliveredM3 = buffer.getInt() / 1000.0;
+        return reading;
+    }
+
+}
@@ -0,0 +1,160 @@
+package nl.verbraeck.smartmeter;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SingleFlight coalesces concurrent computations of the same key: the first caller for a key (the leader) runs the computation
+ * in its own thread, and callers that ask for the same key while the computation is in flight wait for the result of the
+ * leader instead of computing it again. When the wall tablet, two phones and a scraper ask for today's electricity page at the
+ * same moment, the page and the day files behind it are therefore read and rendered once, so the load grows with the number
+ * of distinct keys rather than with the number of requests.
+ * <p>
+ * The result is not kept after the computation is done; caching is left to the caller. A failure of the leader is passed to
+ * all waiting callers, as with Future.get(): the exception is the cause of an ExecutionException. A waiting caller gives up
+ * after the timeout; the leader itself is never interrupted.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public final class SingleFlight<K, V>
+{
+    /** the computations in flight. */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+    /** the maximum time in milliseconds that a caller waits for the result of the leader. */
+    private final long timeoutMs;
+
+    /** the number of computations that were run. */
+    private final AtomicLong computed = new AtomicLong();
+
+    /** the number of calls that shared the result of a computation in flight. */
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * Create a single-flight group.
+     * @param timeoutMs long; the maximum time in milliseconds that a caller waits for the result of the leader
+     */
+    public SingleFlight(final long timeoutMs)
+    {
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Return the result of the computation for the key: run the computation when it is not in flight, or wait for the result
+     * of the computation in flight.
+     * @param key K; the key of the computation
+     * @param computation Callable&lt;V&gt;; the computation, which is only called when there is no computation in flight
+     * @return V; the result of the computation
+     * @throws ExecutionException when the computation failed; the cause is the exception of the computation
+     * @throws TimeoutException when the computation in flight did not finish within the timeout
+     * @throws InterruptedException when the thread was interrupted while waiting for the computation in flight
+     */
+    public V run(final K key, final Callable<V> computation)
+            throws ExecutionException, TimeoutException, InterruptedException
+    {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = this.flights.putIfAbsent(key, flight);
+        if (inFlight != null)
+        {
+            this.shared.incrementAndGet();
+            return inFlight.get(this.timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        this.computed.incrementAndGet();
+        try
+        {
+            V result = computation.call();
+            flight.complete(result);
+            return result;
+        }
+        catch (Exception | Error e)
+        {
+            flight.completeExceptionally(e);
+            throw new ExecutionException(e);
+        }
+        finally
+        {
+            this.flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Start a computation that is finished later, e.g., on another thread: when there is no computation in flight for the key,
+     * the caller becomes the leader, and has to end the flight with complete() or fail(); callers of run() for the same key
+     * wait for that result in the meantime.
+     * @param key K; the key of the computation
+     * @return CompletableFuture&lt;V&gt;; the new flight when the caller is the leader, or null when a computation for the key
+     *         is already in flight
+     */
+    public CompletableFuture<V> begin(final K key)
+    {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        if (this.flights.putIfAbsent(key, flight) != null)
+            return null;
+        this.computed.incrementAndGet();
+        return flight;
+    }
+
+    /**
+     * End a flight that was started with begin() with its result, and pass the result to the waiting callers.
+     * @param key K; the key of the computation
+     * @param flight CompletableFuture&lt;V&gt;; the flight that was returned by begin()
+     * @param result V; the result of the computation
+     */
+    public void complete(final K key, final CompletableFuture<V> flight, final V result)
+    {
+        flight.complete(result);
+        this.flights.remove(key, flight);
+    }
+
+    /**
+     * End a flight that was started with begin() with a failure, and pass the failure to the waiting callers.
+     * @param key K; the key of the computation
+     * @param flight CompletableFuture&lt;V&gt;; the flight that was returned by begin()
+     * @param failure Throwable; the exception of the computation
+     */
+    public void fail(final K key, final CompletableFuture<V> flight, final Throwable failure)
+    {
+        flight.completeExceptionally(failure);
+        this.flights.remove(key, flight);
+    }
+
+    /**
+     * Return the number of computations in flight.
+     * @return int; the number of computations in flight
+     */
+    public int getInFlight()
+    {
+        return this.flights.size();
+    }
+
+    /**
+     * Return the number of computations that were run.
+     * @return long; the number of computations that were run
+     */
+    public long getComputed()
+    {
+        return this.computed.get();
+    }
+
+    /**
+     * Return the number of calls that shared the result of a computation in flight instead of running it again.
+     * @return long; the number of shared calls
+     */
+    public long getShared()
+    {
+        return this.shared.get();
+    }
+
+}
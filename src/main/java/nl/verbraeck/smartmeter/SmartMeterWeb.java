@@ -1,24 +1,22 @@
 package nl.verbraeck.smartmeter;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.URL;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
+import java.time.YearMonth;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.time.temporal.ChronoUnit;
 import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 import fi.iki.elonen.NanoHTTPD;
 import nl.verbraeck.smartmeter.chart.BarChart;
@@ -31,6 +29,7 @@ import nl.verbraeck.smartmeter.chart.LineChart;
  * <li><code>https://server.ip/electricity</code> to request the electricity overview.</li>
  * <li><code>https://server.ip/gas</code> to request the gas overview.</li>
  * <li><code>https://server.ip/comparison</code> to request the comparison of this period with previous periods.</li>
+ * <li><code>https://server.ip/events</code> for the Server-Sent Events stream with the new telegrams of today.</li>
  * <li>The suffix <code>?date=yyyy-mm-dd</code> indicates the date for which the page is shown. No date means today.</li>
  * </ul>
  * Most methods in this class are static, since we cannot keep state between re
@@ -49,8 +48,22 @@ public class SmartMeterWeb extends NanoHTTPD
     public static final SortedMap<String, Telegram> FIRST_MONTH_TELEGRAM_MAP =
             Collections.synchronizedSortedMap(new TreeMap<>());
 
-    /** the cached original for framework.html. */
-    public static String cachedFrameworkHtml = "";
+    /** the compiled page framework (framework.html); null until the first page or setFramework(). */
+    private static volatile PageTemplate framework = null;
+
+    /** the runner of the connections, with a bounded number of threads. */
+    private static final BoundedAsyncRunner RUNNER =
+            new BoundedAsyncRunner(Constants.HTTP_WORKERS, Constants.HTTP_QUEUE_SIZE, Constants.VIRTUAL_THREADS);
+
+    /** the cache of the rendered pages. */
+    private static final PageCache PAGE_CACHE = new PageCache(Constants.PAGE_CACHE_BYTES);
+
+    /** the recorder of the telegrams of the P1 device, or null when the cron job records the telegrams. */
+    private static P1Recorder recorder = null;
+
+    /** the format of dates in HTTP headers. */
+    private static final DateTimeFormatter HTTP_DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH).withZone(ZoneId.of("GMT"));
 
     /**
      * Create a Web server on localhost using the given TCP port in Constants.
@@ -59,6 +72,16 @@ public class SmartMeterWeb extends NanoHTTPD
     public SmartMeterWeb() throws IOException
     {
         super(Constants.SERVER_PORT);
+        setAsyncRunner(RUNNER);
+        StaticAssets.getInstance(); // read the static files into memory before the first request
+        framework(); // compile the page framework before the first request
+        if (Constants.P1_DEVICE != null)
+        {
+            recorder = new P1Recorder(Constants.P1_DEVICE, Constants.P1_INTERVAL);
+            recorder.start();
+        }
+        if (Constants.DATA_CACHING)
+            RollupStore.getInstance(); // fill the first-telegram caches from the rollups of earlier runs
         start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
         System.out.println("\nRunning! Point your browsers to " + Constants.SERVER_ADDRESS + "\n");
     }
@@ -67,13 +90,23 @@ public class SmartMeterWeb extends NanoHTTPD
     @Override
     public Response serve(final IHTTPSession session)
     {
+        if (BoundedAsyncRunner.isRejecting())
+        {
+            Response response = newFixedLengthResponse(HttpStatus.SERVICE_UNAVAILABLE, NanoHTTPD.MIME_PLAINTEXT,
+                    "server busy");
+            response.addHeader("Retry-After", "10");
+            response.addHeader("connection", "close");
+            return response;
+        }
+
         String uri = session.getUri();
+        StaticAssets.Asset asset = StaticAssets.getInstance().get(uri);
+        if (asset != null)
+            return asset(session, asset);
+
         Map<String, String> parms = session.getParms();
 
         LocalDate date = LocalDate.now();
-        if (cachedFrameworkHtml.length() == 0)
-            cachedFrameworkHtml = readTextFile("/framework.html");
-
         if (parms.containsKey("date"))
         {
             try
@@ -87,142 +120,377 @@ public class SmartMeterWeb extends NanoHTTPD
             }
         }
 
-        if (uri.endsWith(".js"))
-        {
-            Response response = newFixedLengthResponse(readTextFile(uri));
-            response.setMimeType("text/javascript");
-            DateTimeFormatter formatter =
-                    DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH).withZone(ZoneId.of("GMT"));
-            response.addHeader("Expires", LocalDateTime.now(ZoneId.of("GMT")).plusMonths(1).format(formatter));
-            response.addHeader("Cache-Control", "max-age=2592000, public");
-            return response;
-        }
-        else if (uri.endsWith(".css"))
-        {
-            Response response = newFixedLengthResponse(readTextFile(uri));
-            response.setMimeType("text/css");
-            DateTimeFormatter formatter =
-                    DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH).withZone(ZoneId.of("GMT"));
-            response.addHeader("Expires", LocalDateTime.now(ZoneId.of("GMT")).plusMonths(1).format(formatter));
-            response.addHeader("Cache-Control", "max-age=2592000, public");
-            return response;
-        }
-        else if (uri.endsWith(".map"))
-        {
-            Response response = newFixedLengthResponse(readTextFile(uri));
-            DateTimeFormatter formatter =
-                    DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH).withZone(ZoneId.of("GMT"));
-            response.addHeader("Expires", LocalDateTime.now(ZoneId.of("GMT")).plusMonths(1).format(formatter));
-            response.addHeader("Cache-Control", "max-age=2592000, public");
-            return response;
-        }
-        else if (uri.equals("/favicon.ico"))
+        if (uri.startsWith("/api/"))
+            return api(session, uri, parms);
+
+        if (uri.equals("/events"))
+            return events();
+
+        final LocalDate pageDate = date;
+        if (uri.startsWith("/electricity"))
+            return page(session, "/electricity", pageDate, out -> writeElectricity(out, pageDate));
+        if (uri.startsWith("/gas"))
+            return page(session, "/gas", pageDate, out -> writeGas(out, pageDate));
+        if (uri.startsWith("/comparison"))
+            return page(session, "/comparison", LocalDate.now(), SmartMeterWeb::writeComparison);
+        return page(session, "/", LocalDate.now(), SmartMeterWeb::writeOverview);
+    }
+
+    /**
+     * Send a page from the page cache. When the page has to be rendered, it is sent while it is rendered, as a chunked response
+     * without validators, and stored in the cache at the end. When another request is rendering the same page, its result is
+     * used; when that takes too long, the answer is 503 (Service Unavailable), so the browser can try again.
+     * @param session IHTTPSession; the request
+     * @param route String; the route of the page
+     * @param date LocalDate; the date of the page
+     * @param writer PageStream.PageWriter; the writer of the HTML of the page
+     * @return Response; the page, 304 (Not Modified), or an error
+     */
+    private Response page(final IHTTPSession session, final String route, final LocalDate date,
+            final PageStream.PageWriter writer)
+    {
+        try
         {
-            InputStream is = binaryStream("/favicon.ico");
-            if (is != null)
+            PageCache.Page cached = PAGE_CACHE.getCached(route, date);
+            if (cached != null)
+                return page(session, cached);
+
+            PageCache.Render render = PAGE_CACHE.startRender(route, date);
+            if (render != null)
             {
-                try
+                boolean gzipped = acceptsGzip(session);
+                PageStream stream = PageStream.start(writer, gzipped, render);
+                if (stream != null)
                 {
-                    Response response = newChunkedResponse(NanoHTTPD.Response.Status.OK, "image/x-icon", is);
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss z", Locale.ENGLISH)
-                            .withZone(ZoneId.of("GMT"));
-                    response.addHeader("Expires", LocalDateTime.now(ZoneId.of("GMT")).plusMonths(1).format(formatter));
-                    response.addHeader("Cache-Control", "max-age=2592000, public");
+                    Response response = newChunkedResponse(NanoHTTPD.Response.Status.OK, NanoHTTPD.MIME_HTML, stream);
+                    if (gzipped)
+                        response.addHeader("Content-Encoding", "gzip");
+                    response.addHeader("Cache-Control", "no-cache");
+                    response.addHeader("Vary", "Accept-Encoding");
                     return response;
                 }
-                catch (Exception e)
+
+                // all render threads are busy: render the page in this thread
+                try
+                {
+                    return page(session, render.finish(html(writer).getBytes(StandardCharsets.UTF_8)));
+                }
+                catch (RuntimeException e)
                 {
-                    System.err.println("Error reading /favicon.ico: " + e.getMessage());
+                    render.fail(e);
+                    throw e;
                 }
             }
+
+            return page(session, PAGE_CACHE.get(route, date, () -> html(writer)));
         }
-        if (uri.startsWith("/electricity"))
+        catch (TimeoutException | InterruptedException e)
         {
-            Response response = newFixedLengthResponse(electricity(date));
-            response.addHeader("Cache-Control", "no-store");
+            if (e instanceof InterruptedException)
+                Thread.currentThread().interrupt();
+            Response response =
+                    newFixedLengthResponse(HttpStatus.SERVICE_UNAVAILABLE, NanoHTTPD.MIME_PLAINTEXT, "page not ready");
+            response.addHeader("Retry-After", "5");
             return response;
         }
-        if (uri.startsWith("/gas"))
+        catch (ExecutionException e)
         {
-            Response response = newFixedLengthResponse(gas(date));
-            response.addHeader("Cache-Control", "no-store");
-            return response;
+            System.err.println("error in page(" + route + "): " + e.getCause());
+            return newFixedLengthResponse(NanoHTTPD.Response.Status.INTERNAL_ERROR, NanoHTTPD.MIME_PLAINTEXT,
+                    "internal error");
         }
-        if (uri.startsWith("/comparison"))
+    }
+
+    /**
+     * Send a static file from memory, gzip-encoded when the browser accepts that and the file has a gzip variant, or 304 (Not
+     * Modified) when the If-None-Match header of the request shows that the browser already has this variant.
+     * @param session IHTTPSession; the request
+     * @param asset StaticAssets.Asset; the static file
+     * @return Response; the static file, or 304 (Not Modified)
+     */
+    private Response asset(final IHTTPSession session, final StaticAssets.Asset asset)
+    {
+        boolean gzipped = asset.hasGzip() && acceptsGzip(session);
+        Response response;
+        if (asset.matches(session.getHeaders().get("if-none-match"), gzipped))
+            response = newFixedLengthResponse(NanoHTTPD.Response.Status.NOT_MODIFIED, asset.getMimeType(), "");
+        else
         {
-            Response response = newFixedLengthResponse(comparison());
-            response.addHeader("Cache-Control", "no-store");
-            return response;
+            byte[] body = asset.getBody(gzipped);
+            response = newFixedLengthResponse(NanoHTTPD.Response.Status.OK, asset.getMimeType(),
+                    new ByteArrayInputStream(body), body.length);
+            if (gzipped)
+                response.addHeader("Content-Encoding", "gzip");
         }
-
-        Response response = newFixedLengthResponse(overview());
-        response.addHeader("Cache-Control", "no-store");
+        response.addHeader("ETag", asset.getETag(gzipped));
+        response.addHeader("Cache-Control", "max-age=2592000, public");
+        if (asset.hasGzip())
+            response.addHeader("Vary", "Accept-Encoding");
         return response;
     }
 
     /**
-     * Return a binary InputStream for a file indicated by the URI.
-     * @param uri String; the location of the file (absolute or relative path; resource; or inside jar file)
-     * @return a binary InputStream for a file indicated by the URI
+     * Return whether the Accept-Encoding header of a request allows a gzip-encoded response.
+     * @param session IHTTPSession; the request
+     * @return boolean; whether the browser accepts gzip
      */
-    private static InputStream binaryStream(final String uri)
+    private static boolean acceptsGzip(final IHTTPSession session)
     {
-        System.out.println("loaded binary file " + uri);
-        try
+        String acceptEncoding = session.getHeaders().get("accept-encoding");
+        if (acceptEncoding == null)
+            return false;
+        for (String coding : acceptEncoding.split(","))
         {
-            URL url = URLResource.getResource(uri);
-            if (url == null)
+            String[] parts = coding.trim().split(";");
+            if (!parts[0].trim().equalsIgnoreCase("gzip") && !parts[0].trim().equals("*"))
+                continue;
+            for (int i = 1; i < parts.length; i++)
             {
-                url = URLResource.getResource("/resources" + uri);
-                if (url == null)
-                {
-                    System.err.println("Binary file " + uri + " not found");
-                    return null;
-                }
+                String p = parts[i].trim().replace(" ", "");
+                if (p.startsWith("q=") && p.substring(2).matches("0(\\.0*)?"))
+                    return false;
             }
-            return url.openStream();
+            return true;
         }
-        catch (IOException exception)
+        return false;
+    }
+
+
+    /**
+     * Send a rendered page with its ETag and Last-Modified headers, or 304 (Not Modified) when the If-None-Match header of the
+     * request shows that the browser already has this version of the page. Pages that are large enough are sent gzip-encoded
+     * when the browser accepts that. The browser has to revalidate the page at every request, since pages of today change every
+     * minute.
+     * @param session IHTTPSession; the request
+     * @param page PageCache.Page; the page
+     * @return Response; the page, or 304 (Not Modified)
+     */
+    private Response page(final IHTTPSession session, final PageCache.Page page)
+    {
+        boolean gzipped = page.hasGzip() && acceptsGzip(session);
+        Response response;
+        if (page.matches(session.getHeaders().get("if-none-match"), gzipped))
+            response = newFixedLengthResponse(NanoHTTPD.Response.Status.NOT_MODIFIED, NanoHTTPD.MIME_HTML, "");
+        else
         {
-            System.err.println("Binary file " + uri + " not found or not readable");
-            return null;
+            byte[] body = page.getBody(gzipped);
+            response = newFixedLengthResponse(NanoHTTPD.Response.Status.OK, NanoHTTPD.MIME_HTML,
+                    new ByteArrayInputStream(body), body.length);
+            if (gzipped)
+                response.addHeader("Content-Encoding", "gzip");
         }
+        response.addHeader("ETag", page.getETag(gzipped));
+        response.addHeader("Last-Modified", HTTP_DATE_FORMATTER.format(Instant.ofEpochMilli(page.getLastModified())));
+        response.addHeader("Cache-Control", "no-cache");
+        if (page.hasGzip())
+            response.addHeader("Vary", "Accept-Encoding");
+        return response;
     }
 
     /**
-     * Return the full content of a text file indicated by the URI.
-     * @param uri String; the location of the file (absolute or relative path; resource; or inside jar file)
-     * @return String; the full content of a text file indicated by the URI
+     * Make a response with a dynamic text, e.g., JSON. A text of at least Constants.GZIP_MIN_BYTES bytes is sent gzip-encoded
+     * with Constants.GZIP_LEVEL when the browser accepts that; smaller texts are not worth the CPU time of the compression.
+     * @param session IHTTPSession; the request
+     * @param status Response.IStatus; the status of the response
+     * @param mimeType String; the mime type of the text
+     * @param text String; the text
+     * @return Response; the response with the text
      */
-    private static String readTextFile(final String uri)
+    private Response textResponse(final IHTTPSession session, final Response.IStatus status, final String mimeType,
+            final String text)
     {
-        System.out.println("loaded text file " + uri);
-        URL url = URLResource.getResource(uri);
-        if (url == null)
+        byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        if (body.length < Constants.GZIP_MIN_BYTES)
+            return newFixedLengthResponse(status, mimeType, new ByteArrayInputStream(body), body.length);
+        Response response;
+        if (acceptsGzip(session))
         {
-            url = URLResource.getResource("/resources" + uri);
-            if (url == null)
-            {
-                System.err.println("File " + uri + " not found");
-                return "";
-            }
+            byte[] gzip = LevelGzipOutputStream.compress(body, Constants.GZIP_LEVEL);
+            response = newFixedLengthResponse(status, mimeType, new ByteArrayInputStream(gzip), gzip.length);
+            response.addHeader("Content-Encoding", "gzip");
+        }
+        else
+            response = newFixedLengthResponse(status, mimeType, new ByteArrayInputStream(body), body.length);
+        response.addHeader("Vary", "Accept-Encoding");
+        return response;
+    }
+
+    /**
+     * Return the status of the web server as JSON: the connections of the runner, the page cache, the event stream, the CRC
+     * checks of the telegrams in today's file and in the converted day files, and the P1 recorder.
+     * @return String; the JSON object with the status of the web server
+     * @throws IOException cannot happen when writing to a StringBuilder
+     */
+    private static String status() throws IOException
+    {
+        StringBuilder s = new StringBuilder(512);
+        JsonWriter json = new JsonWriter(s);
+        json.beginObject();
+        json.name("virtualThreads").value(RUNNER.isVirtual());
+        json.name("activeConnections").value(RUNNER.getActive());
+        json.name("queueDepth").value(RUNNER.getQueueDepth());
+        json.name("maxQueueDepth").value(RUNNER.getMaxQueueDepth());
+        json.name("acceptedConnections").value(RUNNER.getAccepted());
+        json.name("rejectedConnections").value(RUNNER.getRejected());
+        json.name("pageCacheSize").value(PAGE_CACHE.size());
+        json.name("pageCacheBytes").value(PAGE_CACHE.getBytes());
+        json.name("pageCacheHits").value(PAGE_CACHE.getHits());
+        json.name("pageCacheMisses").value(PAGE_CACHE.getMisses());
+        json.name("pageCacheShared").value(PAGE_CACHE.getShared());
+        json.name("pagesStreamed").value(PageStream.getStreamed());
+        json.name("eventSubscribers").value(TelegramFeed.getInstance().getSubscriberCount());
+        CrcCounts today = TelegramFile.getTodayCrcCounts();
+        json.name("todayCrcValid").value(today.getValid());
+        json.name("todayCrcInvalid").value(today.getInvalid());
+        json.name("todayCrcMissing").value(today.getMissing());
+        CrcCounts converted = BinaryDayFile.getCrcCounts();
+        json.name("convertedCrcValid").value(converted.getValid());
+        json.name("convertedCrcInvalid").value(converted.getInvalid());
+        json.name("convertedCrcMissing").value(converted.getMissing());
+        if (recorder != null)
+        {
+            json.name("p1TelegramsRead").value(recorder.getTelegramsRead());
+            json.name("p1TelegramsWritten").value(recorder.getTelegramsWritten());
+            json.name("p1FramesDiscarded").value(recorder.getFramesDiscarded());
+            CrcCounts p1 = recorder.getCrcCounts();
+            json.name("p1CrcValid").value(p1.getValid());
+            json.name("p1CrcInvalid").value(p1.getInvalid());
+            json.name("p1CrcMissing").value(p1.getMissing());
+        }
+        json.endObject();
+        return s.toString();
+    }
+
+    /**
+     * Serve the Server-Sent Events stream with the new telegrams of today. The response is chunked, and only ends when the
+     * browser closes the connection.
+     * @return Response; the event stream, or 503 when there are too many subscribers
+     */
+    private Response events()
+    {
+        TelegramFeed.Subscriber subscriber = TelegramFeed.getInstance().subscribe();
+        if (subscriber == null)
+        {
+            Response response = newFixedLengthResponse(HttpStatus.SERVICE_UNAVAILABLE, NanoHTTPD.MIME_PLAINTEXT,
+                    "too many subscribers");
+            response.addHeader("Retry-After", "60");
+            return response;
         }
+        Response response = newChunkedResponse(NanoHTTPD.Response.Status.OK, "text/event-stream", subscriber);
+        response.addHeader("Cache-Control", "no-store");
+        return response;
+    }
+
+    /**
+     * The server compresses the responses itself: static files are compressed once at startup, and dynamic responses with a
+     * configurable level and minimum size. The event stream is never compressed, since the gzip stream would hold back the
+     * events until its buffer is full. {@inheritDoc}
+     */
+    @Override
+    protected boolean useGzipWhenAccepted(final Response response)
+    {
+        return false;
+    }
+
+    /**
+     * Serve the JSON data endpoints /api/last, /api/day, /api/days and /api/months, and the status of the server on
+     * /api/status. Responses for periods that are fully in the past do not change anymore, and are marked immutable so the
+     * browser caches them; the other responses are not cached.
+     * @param session IHTTPSession; the request
+     * @param uri String; the URI of the request
+     * @param parms Map&lt;String, String&gt;; the parameters of the request
+     * @return Response; the JSON response, or 400 Bad Request for an invalid date
+     */
+    private Response api(final IHTTPSession session, final String uri, final Map<String, String> parms)
+    {
         try
         {
-            String text;
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8)))
+            String json;
+            boolean closed;
+            if (uri.equals("/api/last"))
+            {
+                json = DataApi.last();
+                closed = false;
+            }
+            else if (uri.equals("/api/status"))
+            {
+                json = status();
+                closed = false;
+            }
+            else if (uri.equals("/api/day"))
+            {
+                LocalDate date = parms.containsKey("date") ? LocalDate.parse(parms.get("date")) : LocalDate.now();
+                json = DataApi.day(date);
+                closed = DayFileIndex.getInstance().get(date) != null && DataApi.isClosed(date);
+            }
+            else if (uri.equals("/api/days"))
+            {
+                LocalDate to = parms.containsKey("to") ? LocalDate.parse(parms.get("to")) : LocalDate.now();
+                LocalDate from = parms.containsKey("from") ? LocalDate.parse(parms.get("from")) : to.minusDays(29);
+                json = DataApi.days(from, to);
+                closed = DataApi.isClosed(to);
+            }
+            else if (uri.equals("/api/months"))
             {
-                text = reader.lines().collect(Collectors.joining("\n"));
+                YearMonth to = parms.containsKey("to") ? YearMonth.parse(parms.get("to")) : YearMonth.now();
+                YearMonth from = parms.containsKey("from") ? YearMonth.parse(parms.get("from")) : to.minusMonths(11);
+                json = DataApi.months(from, to);
+                closed = DataApi.isClosed(to.atEndOfMonth());
             }
-            return text;
+            else
+                return newFixedLengthResponse(NanoHTTPD.Response.Status.NOT_FOUND, "application/json",
+                        "{\"error\":\"unknown endpoint\"}");
+
+            Response response = textResponse(session, NanoHTTPD.Response.Status.OK, "application/json", json);
+            response.addHeader("Cache-Control", closed ? "public, max-age=31536000, immutable" : "no-store");
+            return response;
         }
-        catch (IOException exception)
+        catch (DateTimeParseException e)
+        {
+            return newFixedLengthResponse(NanoHTTPD.Response.Status.BAD_REQUEST, "application/json",
+                    "{\"error\":\"invalid date\"}");
+        }
+        catch (Exception e)
         {
-            System.err.println("File " + uri + " not found or not readable");
-            return "";
+            System.err.println("error in api(): " + e.getMessage());
+            return newFixedLengthResponse(NanoHTTPD.Response.Status.INTERNAL_ERROR, "application/json",
+                    "{\"error\":\"internal error\"}");
         }
     }
 
+    /**
+     * Return the compiled page framework, and compile it from the framework.html resource at the first call. Only the first
+     * call locks; later calls only read the volatile field.
+     * @return PageTemplate; the compiled page framework
+     */
+    private static PageTemplate framework()
+    {
+        PageTemplate result = framework;
+        if (result != null)
+            return result;
+        synchronized (SmartMeterWeb.class)
+        {
+            if (framework == null)
+            {
+                StaticAssets.Asset asset = StaticAssets.getInstance().get("/framework.html");
+                if (asset == null)
+                    System.err.println("File /framework.html not found");
+                framework = new PageTemplate(asset == null ? PageTemplate.CONTENT_MARKER
+                        : new String(asset.getBody(false), StandardCharsets.UTF_8));
+            }
+            return framework;
+        }
+    }
+
+    /**
+     * Use another page framework, e.g., to render only the content of the pages.
+     * @param html String; the HTML of the page framework, with the marker &lt;!-- #content --&gt; for the content
+     */
+    public static synchronized void setFramework(final String html)
+    {
+        framework = new PageTemplate(html);
+    }
+
     /**
      * Return a string with 'today' or a nicely formatted date for the provided LocalDate argument.
      * @param date LocalDate; the date to provide the formatted date for
@@ -279,24 +547,52 @@ public class SmartMeterWeb extends NanoHTTPD
     }
 
     /**
-     * Provide an overview page for today, with the general info, power usage, cumulative power usage, gas usage, and cumulative
-     * gas usage for today. The overview page is ALWAYS for today (or the last day when results were registered).
+     * Render a page into a String.
+     * @param writer PageStream.PageWriter; the writer of the HTML of the page
+     * @return String; complete HTML file with the page content
+     */
+    private static String html(final PageStream.PageWriter writer)
+    {
+        StringBuilder out = new StringBuilder(65536);
+        try
+        {
+            writer.write(out);
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception); // cannot happen for a StringBuilder
+        }
+        return out.toString();
+    }
+
+    /**
+     * Return the overview page for today as a String; see writeOverview().
      * @return String; complete HTML file with the page content
      */
     public static String overview()
+    {
+        return html(SmartMeterWeb::writeOverview);
+    }
+
+    /**
+     * Provide an overview page for today, with the general info, power usage, cumulative power usage, gas usage, and cumulative
+     * gas usage for today. The overview page is ALWAYS for today (or the last day when results were registered).
+     * @param out Appendable; the destination of the HTML
+     * @throws IOException on write error of the destination
+     */
+    public static void writeOverview(final Appendable out) throws IOException
     {
         System.out.println("loaded page /");
 
-        String framework = cachedFrameworkHtml.replace("#1", "active").replace("#2", "").replace("#3", "").replace("#4", "");
-        StringBuilder msg = new StringBuilder();
+        framework().writeHead(out, PageTemplate.Tab.OVERVIEW);
 
         try
         {
             Telegram lastTelegram = TelegramFile.getLastTelegram();
-            msg.append("<div class=\"container-fluid\" style=\"margin-top:50px\">\n");
-            msg.append("<div class=\"row\">\n");
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Overview</h2>\n");
+            out.append("<div class=\"container-fluid\" style=\"margin-top:50px\">\n");
+            out.append("<div class=\"row\">\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Overview</h2>\n");
 
             Table overviewTable = new Table();
             overviewTable.addRow("Electricity Tariff 1", lastTelegram.electricityTariff1kWh, "kWh");
@@ -307,97 +603,105 @@ public class SmartMeterWeb extends NanoHTTPD
             double currentL1 = 1000.0 * lastTelegram.powerDeliveredkW / lastTelegram.voltageL1;
             overviewTable.addRow("Current", String.format("%.3f", currentL1), "A");
             overviewTable.addRow("Gas Delivered", lastTelegram.gasDeliveredM3, "m<sup>3</sup>");
-            msg.append(overviewTable.table());
-            msg.append("</div>\n"); // col
+            out.append(overviewTable.table());
+            out.append("</div>\n"); // col
 
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Devices</h2>\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Devices</h2>\n");
             Table deviceTable = new Table();
             deviceTable.addRow("Electricity Device id", lastTelegram.electricityMeterId);
             deviceTable.addRow("Gas Device id", lastTelegram.gasMeterId);
-            msg.append(deviceTable.table());
-            msg.append("</div>\n"); // col
-            msg.append("</div>\n"); // row
-
-            SortedMap<String, Telegram> todayMap = TelegramFile.getTodayTelegrams();
-            msg.append("<div class=\"row\">\n");
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Power usage today [kW]</h2>\n");
+            out.append(deviceTable.table());
+            out.append("</div>\n"); // col
+            out.append("</div>\n"); // row
+
+            DaySeries todayMap = TelegramFile.getTodaySeries();
+            out.append("<div class=\"row\">\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Power usage today [kW]</h2>\n");
             LineChart powerChart = TelegramChart.powerDay(todayMap, "PowerToday");
-            msg.append(powerChart.toDivHtml());
-            msg.append("</div>\n"); // col
+            powerChart.setLive(LocalDate.now().toString(), "powerDelivered");
+            powerChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
 
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Gas usage today [m3]</h2>\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Gas usage today [m3]</h2>\n");
             LineChart gasChart = TelegramChart.gasDay(todayMap, "GasToday");
-            msg.append(gasChart.toDivHtml());
-            msg.append("</div>\n"); // col
-            msg.append("</div>\n"); // row
+            gasChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
+            out.append("</div>\n"); // row
 
-            msg.append("<div class=\"row\">\n");
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Cumulative power usage today [kW]</h2>\n");
+            out.append("<div class=\"row\">\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Cumulative power usage today [kW]</h2>\n");
             LineChart cumPowerChart = TelegramChart.cumulativePowerDay(todayMap, "CumPowerToday");
-            msg.append(cumPowerChart.toDivHtml());
-            msg.append("</div>\n"); // col
+            cumPowerChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
 
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Cumulative gas usage today [m3]</h2>\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Cumulative gas usage today [m3]</h2>\n");
             LineChart cumGasChart = TelegramChart.cumulativeGasDay(todayMap, "CumGasToday");
-            msg.append(cumGasChart.toDivHtml());
-            msg.append("</div>\n"); // col
-            msg.append("</div>\n"); // row
+            cumGasChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
+            out.append("</div>\n"); // row
 
-            msg.append("<p>&nbsp;</p>");
-            msg.append("</div>\n"); // container-fluid
+            out.append("<p>&nbsp;</p>");
+            out.append("</div>\n"); // container-fluid
 
-            msg.append(powerChart.toScriptHtml());
-            msg.append(gasChart.toScriptHtml());
-            msg.append(cumPowerChart.toScriptHtml());
-            msg.append(cumGasChart.toScriptHtml());
+            powerChart.writeScriptHtml(out);
+            gasChart.writeScriptHtml(out);
+            cumPowerChart.writeScriptHtml(out);
+            cumGasChart.writeScriptHtml(out);
         }
         catch (Exception e)
         {
             System.err.println("Error in overview(): " + e.getMessage());
         }
 
-        return framework.replace("<!-- #content -->", msg.toString());
+        framework().writeTail(out, PageTemplate.Tab.OVERVIEW);
+    }
+
+    /**
+     * Return the electricity page for a given day as a String; see writeElectricity().
+     * @param date LocalDate; the date for which to display the electricity page
+     * @return String; complete HTML file with the page content
+     */
+    public static String electricity(final LocalDate date)
+    {
+        return html(out -> writeElectricity(out, date));
     }
 
     /**
      * Create the electricity page HTML for a given day. It contains an electricity overview, instantaneous and cumulative power
      * usage, voltage development over the day, energy usage per hour of the day, end energy usage 30 days prior to the given
      * day and 12 months prior to the given day.
+     * @param out Appendable; the destination of the HTML
      * @param date LocalDate; the date for which to display the electricity page
-     * @return String; complete HTML file with the page content
+     * @throws IOException on write error of the destination
      */
-    public static String electricity(final LocalDate date)
+    public static void writeElectricity(final Appendable out, final LocalDate date) throws IOException
     {
         System.out.println("loaded page /electricity");
 
-        String framework = cachedFrameworkHtml.replace("#1", "").replace("#2", "active").replace("#3", "").replace("#4", "");
-
-        StringBuilder msg = new StringBuilder();
+        framework().writeHead(out, PageTemplate.Tab.ELECTRICITY);
 
         try
         {
-            msg.append("<div class=\"container-fluid\" style=\"margin-top:50px\">\n");
+            out.append("<div class=\"container-fluid\" style=\"margin-top:50px\">\n");
 
-            SortedMap<String, Telegram> dayMap = TelegramFile.getDayTelegrams(date);
-            Telegram firstTelegram = dayMap.get(dayMap.firstKey());
-            LocalDate actualDate = firstTelegram.time.isAfter(LocalTime.of(23, 0)) ? firstTelegram.date.plus(1, ChronoUnit.DAYS)
-                    : firstTelegram.date;
+            DaySeries dayMap = TelegramFile.getDaySeries(date);
+            LocalDate actualDate = dayMap.getDate() == null ? date : dayMap.getDate(); // empty series: empty charts
             String dateString = makeDateString(actualDate);
 
-            msg.append(datePicker(actualDate, "/electricity"));
+            out.append(datePicker(actualDate, "/electricity"));
 
-            if (actualDate.equals(LocalDate.now()))
+            Telegram lastTelegram = actualDate.equals(LocalDate.now()) ? TelegramFile.getLastTelegram() : null;
+            if (lastTelegram != null)
             {
-                Telegram lastTelegram = TelegramFile.getLastTelegram();
 
-                msg.append("<div class=\"row\">\n");
-                msg.append("<div class=\"col-md-6\">\n");
-                msg.append("<h2>Overview</h2>\n");
+                out.append("<div class=\"row\">\n");
+                out.append("<div class=\"col-md-6\">\n");
+                out.append("<h2>Overview</h2>\n");
 
                 Table overviewTable = new Table();
                 overviewTable.addRow("Electricity Tariff 1", lastTelegram.electricityTariff1kWh, "kWh");
@@ -407,11 +711,11 @@ public class SmartMeterWeb extends NanoHTTPD
                 overviewTable.addRow("Voltage", lastTelegram.voltageL1, "V");
                 double currentL1 = 1000.0 * lastTelegram.powerDeliveredkW / lastTelegram.voltageL1;
                 overviewTable.addRow("Current", String.format("%.3f", currentL1), "A");
-                msg.append(overviewTable.table());
-                msg.append("</div>\n"); // col
+                out.append(overviewTable.table());
+                out.append("</div>\n"); // col
 
-                msg.append("<div class=\"col-md-6\">\n");
-                msg.append("<h2>Devices</h2>\n");
+                out.append("<div class=\"col-md-6\">\n");
+                out.append("<h2>Devices</h2>\n");
                 Table deviceTable = new Table();
                 deviceTable.addRow("Electricity Device id", lastTelegram.electricityMeterId);
                 deviceTable.addRow("\u00a0", " "); // &nbsp;
@@ -419,162 +723,174 @@ public class SmartMeterWeb extends NanoHTTPD
                 deviceTable.addRow("Power failures", lastTelegram.powerFailuresAnyPhase);
                 deviceTable.addRow("Voltage sags L1", lastTelegram.voltageSagsL1);
                 deviceTable.addRow("Voltage swells L1", lastTelegram.voltageSwellsL1);
-                msg.append(deviceTable.table());
-                msg.append("</div>\n"); // col
-                msg.append("</div>\n"); // row
+                out.append(deviceTable.table());
+                out.append("</div>\n"); // col
+                out.append("</div>\n"); // row
             }
 
-            msg.append("<div class=\"row\">\n");
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Power usage " + dateString + " [kW]</h2>\n");
+            out.append("<div class=\"row\">\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Power usage " + dateString + " [kW]</h2>\n");
             LineChart powerChart = TelegramChart.powerDay(dayMap, "PowerDay");
-            msg.append(powerChart.toDivHtml());
-            msg.append("</div>\n"); // col
+            if (actualDate.equals(LocalDate.now()))
+                powerChart.setLive(actualDate.toString(), "powerDelivered");
+            powerChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
 
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Cumulative power usage " + dateString + " [kW]</h2>\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Cumulative power usage " + dateString + " [kW]</h2>\n");
             LineChart cumPowerChart = TelegramChart.cumulativePowerDay(dayMap, "CumPowerDay");
-            msg.append(cumPowerChart.toDivHtml());
-            msg.append("</div>\n"); // col
-            msg.append("</div>\n"); // row
-            msg.append("<p>&nbsp;</p>");
-
-            msg.append("<div class=\"row\">\n");
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Voltage L1 " + dateString + " [V]</h2>\n");
+            cumPowerChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
+            out.append("</div>\n"); // row
+            out.append("<p>&nbsp;</p>");
+
+            out.append("<div class=\"row\">\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Voltage L1 " + dateString + " [V]</h2>\n");
             LineChart voltageChart = TelegramChart.voltageDay(dayMap, "VoltageDay");
-            msg.append(voltageChart.toDivHtml());
-            msg.append("</div>\n"); // col
+            if (actualDate.equals(LocalDate.now()))
+                voltageChart.setLive(actualDate.toString(), "voltageL1");
+            voltageChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
 
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Energy usage " + dateString + " per hour [kWh]</h2>\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Energy usage " + dateString + " per hour [kWh]</h2>\n");
             BarChart energyPerHourChart = TelegramChart.energyPerHourDay(dayMap, "EnergyPerHourDay");
-            msg.append(energyPerHourChart.toDivHtml());
-            msg.append("</div>\n"); // col
-            msg.append("</div>\n"); // row
-            msg.append("<p>&nbsp;</p>");
-
-            msg.append("<div class=\"row\">\n");
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Energy usage 30 days until " + dateString + " [kWh]</h2>\n");
+            energyPerHourChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
+            out.append("</div>\n"); // row
+            out.append("<p>&nbsp;</p>");
+
+            out.append("<div class=\"row\">\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Energy usage 30 days until " + dateString + " [kWh]</h2>\n");
             BarChart energyPrev30DaysChart = TelegramChart.energyPrev30days(actualDate);
-            msg.append(energyPrev30DaysChart.toDivHtml());
-            msg.append("</div>\n"); // col
+            energyPrev30DaysChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
 
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Energy usage 12 months until " + dateString + " [kWh]</h2>\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Energy usage 12 months until " + dateString + " [kWh]</h2>\n");
             BarChart energyPrev12MonthsChart = TelegramChart.energyPrev12months(actualDate);
-            msg.append(energyPrev12MonthsChart.toDivHtml());
-            msg.append("</div>\n"); // col
-            msg.append("</div>\n"); // row
-
-            msg.append("<p>&nbsp;</p>");
-            msg.append("</div>\n"); // container-fluid
-
-            msg.append(powerChart.toScriptHtml());
-            msg.append(cumPowerChart.toScriptHtml());
-            msg.append(voltageChart.toScriptHtml());
-            msg.append(energyPerHourChart.toScriptHtml());
-            msg.append(energyPrev30DaysChart.toScriptHtml());
-            msg.append(energyPrev12MonthsChart.toScriptHtml());
+            energyPrev12MonthsChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
+            out.append("</div>\n"); // row
+
+            out.append("<p>&nbsp;</p>");
+            out.append("</div>\n"); // container-fluid
+
+            powerChart.writeScriptHtml(out);
+            cumPowerChart.writeScriptHtml(out);
+            voltageChart.writeScriptHtml(out);
+            energyPerHourChart.writeScriptHtml(out);
+            energyPrev30DaysChart.writeScriptHtml(out);
+            energyPrev12MonthsChart.writeScriptHtml(out);
         }
         catch (Exception e)
         {
             System.err.println("Error in electricity(): " + e.getMessage());
         }
 
-        return framework.replace("<!-- #content -->", msg.toString());
+        framework().writeTail(out, PageTemplate.Tab.ELECTRICITY);
     }
 
     /**
-     * Create the gas page HTML for a given day. It contains instantaneous and cumulative gas usage, gas usage per hour of the
-     * day, end gas usage 30 days prior to the given day and 12 months prior to the given day.
+     * Return the gas page for a given day as a String; see writeGas().
      * @param date LocalDate; the date for which to display the gas page
      * @return String; complete HTML file with the page content
      */
     public static String gas(final LocalDate date)
+    {
+        return html(out -> writeGas(out, date));
+    }
+
+    /**
+     * Create the gas page HTML for a given day. It contains instantaneous and cumulative gas usage, gas usage per hour of the
+     * day, end gas usage 30 days prior to the given day and 12 months prior to the given day.
+     * @param out Appendable; the destination of the HTML
+     * @param date LocalDate; the date for which to display the gas page
+     * @throws IOException on write error of the destination
+     */
+    public static void writeGas(final Appendable out, final LocalDate date) throws IOException
     {
         System.out.println("loaded page /gas");
 
-        String framework = cachedFrameworkHtml.replace("#1", "").replace("#2", "").replace("#3", "active").replace("#4", "");
-        StringBuilder msg = new StringBuilder();
+        framework().writeHead(out, PageTemplate.Tab.GAS);
 
         try
         {
-            msg.append("<div class=\"container-fluid\" style=\"margin-top:50px\">\n");
+            out.append("<div class=\"container-fluid\" style=\"margin-top:50px\">\n");
 
-            SortedMap<String, Telegram> dayMap = TelegramFile.getDayTelegrams(date);
-            Telegram firstTelegram = dayMap.get(dayMap.firstKey());
-            LocalDate actualDate = firstTelegram.time.isAfter(LocalTime.of(23, 0)) ? firstTelegram.date.plus(1, ChronoUnit.DAYS)
-                    : firstTelegram.date;
+            DaySeries dayMap = TelegramFile.getDaySeries(date);
+            LocalDate actualDate = dayMap.getDate() == null ? date : dayMap.getDate(); // empty series: empty charts
             String dateString = makeDateString(actualDate);
 
-            msg.append(datePicker(actualDate, "/gas"));
+            out.append(datePicker(actualDate, "/gas"));
 
-            if (actualDate.equals(LocalDate.now()))
+            Telegram lastTelegram = actualDate.equals(LocalDate.now()) ? TelegramFile.getLastTelegram() : null;
+            if (lastTelegram != null)
             {
-                Telegram lastTelegram = TelegramFile.getLastTelegram();
 
-                msg.append("<div class=\"row\">\n");
-                msg.append("<div class=\"col-md-6\">\n");
-                msg.append("<h2>Overview</h2>\n");
+                out.append("<div class=\"row\">\n");
+                out.append("<div class=\"col-md-6\">\n");
+                out.append("<h2>Overview</h2>\n");
 
                 Table overviewTable = new Table();
                 overviewTable.addRow("Gas Delivered", lastTelegram.gasDeliveredM3, "m<sup>3</sup>");
-                msg.append(overviewTable.table());
-                msg.append("</div>\n"); // col
+                out.append(overviewTable.table());
+                out.append("</div>\n"); // col
 
-                msg.append("<div class=\"col-md-6\">\n");
-                msg.append("<h2>Devices</h2>\n");
+                out.append("<div class=\"col-md-6\">\n");
+                out.append("<h2>Devices</h2>\n");
                 Table deviceTable = new Table();
                 deviceTable.addRow("Gas Device id", lastTelegram.gasMeterId);
-                msg.append(deviceTable.table());
-                msg.append("</div>\n"); // col
-                msg.append("</div>\n"); // row
+                out.append(deviceTable.table());
+                out.append("</div>\n"); // col
+                out.append("</div>\n"); // row
             }
 
-            msg.append("<div class=\"row\">\n");
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Gas usage " + dateString + " [m3]</h2>\n");
+            out.append("<div class=\"row\">\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Gas usage " + dateString + " [m3]</h2>\n");
             LineChart gasChart = TelegramChart.gasDay(dayMap, "GasDay");
-            msg.append(gasChart.toDivHtml());
-            msg.append("</div>\n"); // col
+            gasChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
 
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Cumulative gas usage " + dateString + " [m3]</h2>\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Cumulative gas usage " + dateString + " [m3]</h2>\n");
             LineChart cumGasChart = TelegramChart.cumulativeGasDay(dayMap, "CumGasDay");
-            msg.append(cumGasChart.toDivHtml());
-            msg.append("</div>\n"); // col
-            msg.append("</div>\n"); // row
+            cumGasChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
+            out.append("</div>\n"); // row
 
-            msg.append("<div class=\"row\">\n");
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Gas usage 30 days until " + dateString + " [m3]</h2>\n");
+            out.append("<div class=\"row\">\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Gas usage 30 days until " + dateString + " [m3]</h2>\n");
             BarChart gasPrev30DaysChart = TelegramChart.gasPrev30days(actualDate);
-            msg.append(gasPrev30DaysChart.toDivHtml());
-            msg.append("</div>\n"); // col
+            gasPrev30DaysChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
 
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Gas usage 12 months until " + dateString + " [m3]</h2>\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Gas usage 12 months until " + dateString + " [m3]</h2>\n");
             BarChart gasPrev12MonthsChart = TelegramChart.gasPrev12months(actualDate);
-            msg.append(gasPrev12MonthsChart.toDivHtml());
-            msg.append("</div>\n"); // col
-            msg.append("</div>\n"); // row
+            gasPrev12MonthsChart.writeDivHtml(out);
+            out.append("</div>\n"); // col
+            out.append("</div>\n"); // row
 
-            msg.append("<p>&nbsp;</p>");
-            msg.append("</div>\n"); // container-fluid
+            out.append("<p>&nbsp;</p>");
+            out.append("</div>\n"); // container-fluid
 
-            msg.append(gasChart.toScriptHtml());
-            msg.append(cumGasChart.toScriptHtml());
-            msg.append(gasPrev30DaysChart.toScriptHtml());
-            msg.append(gasPrev12MonthsChart.toScriptHtml());
+            gasChart.writeScriptHtml(out);
+            cumGasChart.writeScriptHtml(out);
+            gasPrev30DaysChart.writeScriptHtml(out);
+            gasPrev12MonthsChart.writeScriptHtml(out);
         }
         catch (Exception e)
         {
             System.err.println("Error in gas(): " + e.getMessage());
         }
 
-        return framework.replace("<!-- #content -->", msg.toString());
+        framework().writeTail(out, PageTemplate.Tab.GAS);
     }
 
     /** the names of the months. */
@@ -582,15 +898,24 @@ public class SmartMeterWeb extends NanoHTTPD
             new String[] {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
 
     /**
-     * Create a max 5-year comparison page HTML for electricity usage and gas usage per month.
+     * Return the comparison page as a String; see writeComparison().
      * @return String; complete HTML file with the page content
      */
     public static String comparison()
+    {
+        return html(SmartMeterWeb::writeComparison);
+    }
+
+    /**
+     * Create a max 5-year comparison page HTML for electricity usage and gas usage per month.
+     * @param out Appendable; the destination of the HTML
+     * @throws IOException on write error of the destination
+     */
+    public static void writeComparison(final Appendable out) throws IOException
     {
         System.out.println("loaded page /comparison");
 
-        String framework = cachedFrameworkHtml.replace("#1", "").replace("#2", "").replace("#3", "").replace("#4", "active");
-        StringBuilder msg = new StringBuilder();
+        framework().writeHead(out, PageTemplate.Tab.COMPARISON);
 
         try
         {
@@ -598,10 +923,10 @@ public class SmartMeterWeb extends NanoHTTPD
             int lastMonth = LocalDate.now().minusMonths(1).getMonthValue();
             SortedMap<String, Telegram> monthTelegrams = TelegramFile.getStartOfMonthsTelegrams(currentYear, lastMonth, 60);
 
-            msg.append("<div class=\"container-fluid\" style=\"margin-top:50px\">\n");
-            msg.append("<div class=\"row\">\n");
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Energy usage [kWh]</h2>\n");
+            out.append("<div class=\"container-fluid\" style=\"margin-top:50px\">\n");
+            out.append("<div class=\"row\">\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Energy usage [kWh]</h2>\n");
 
             Matrix energyTableTotal = new Matrix(6, 14);
             Matrix energyTableTariff1 = new Matrix(6, 14);
@@ -655,11 +980,11 @@ public class SmartMeterWeb extends NanoHTTPD
                 energyTableTariff1.setValue(i, 13, totalTariff1[i]);
                 energyTableTariff2.setValue(i, 13, totalTariff2[i]);
             }
-            msg.append(energyTableTotal.table());
-            msg.append("</div>\n"); // col
+            out.append(energyTableTotal.table());
+            out.append("</div>\n"); // col
 
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Gas usage [m3]</h2>\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Gas usage [m3]</h2>\n");
             Matrix gasTable = new Matrix(6, 14);
             int[] gasTotal = new int[6];
             for (int i = 0; i < 12; i++)
@@ -686,34 +1011,34 @@ public class SmartMeterWeb extends NanoHTTPD
             }
             for (int i = 1; i < 6; i++)
                 gasTable.setValue(i, 13, gasTotal[i]);
-            msg.append(gasTable.table());
-            msg.append("</div>\n"); // col
-            msg.append("</div>\n"); // row
+            out.append(gasTable.table());
+            out.append("</div>\n"); // col
+            out.append("</div>\n"); // row
 
-            msg.append("<p>&nbsp;</p>");
+            out.append("<p>&nbsp;</p>");
 
-            msg.append("<div class=\"row\">\n");
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Energy usage Tariff 1 (low) [kWh]</h2>\n");
-            msg.append(energyTableTariff1.table());
-            msg.append("</div>\n"); // col
+            out.append("<div class=\"row\">\n");
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Energy usage Tariff 1 (low) [kWh]</h2>\n");
+            out.append(energyTableTariff1.table());
+            out.append("</div>\n"); // col
 
-            msg.append("<div class=\"col-md-6\">\n");
-            msg.append("<h2>Energy usage Tariff 2 (high) [kWh]</h2>\n");
-            msg.append(energyTableTariff2.table());
-            msg.append("</div>\n"); // col
-            msg.append("</div>\n"); // row
+            out.append("<div class=\"col-md-6\">\n");
+            out.append("<h2>Energy usage Tariff 2 (high) [kWh]</h2>\n");
+            out.append(energyTableTariff2.table());
+            out.append("</div>\n"); // col
+            out.append("</div>\n"); // row
 
-            msg.append("<p>&nbsp;</p>");
+            out.append("<p>&nbsp;</p>");
 
-            msg.append("</div>\n"); // container-fluid
+            out.append("</div>\n"); // container-fluid
         }
         catch (Exception e)
         {
             System.err.println("Error in comparison(): " + e.getMessage());
         }
 
-        return framework.replace("<!-- #content -->", msg.toString());
+        framework().writeTail(out, PageTemplate.Tab.COMPARISON);
     }
 
     /**
@@ -0,0 +1,320 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * StaticAssets holds the static files of the web server (javascript, css, source maps, fonts, and icons) in memory. The
+ * project's files next to framework.html and the files in its asset folders are read once at startup, from the folder with the
+ * classes or from the jar file, into immutable byte arrays. Other resources are not served, since the shaded jar also contains
+ * the resources of the dependencies. Text-like files also get a gzip variant, compressed with the best compression level, when
+ * that is smaller. Every variant has a strong ETag, and its exact length is known, so a request is served from the arrays
+ * without any I/O or copying.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class StaticAssets
+{
+    /** the mime types per file extension. */
+    private static final Map<String, String> MIME_TYPES = new HashMap<>();
+
+    static
+    {
+        MIME_TYPES.put("html", "text/html");
+        MIME_TYPES.put("js", "text/javascript");
+        MIME_TYPES.put("css", "text/css");
+        MIME_TYPES.put("map", "application/json");
+        MIME_TYPES.put("svg", "image/svg+xml");
+        MIME_TYPES.put("ico", "image/x-icon");
+        MIME_TYPES.put("png", "image/png");
+        MIME_TYPES.put("ttf", "font/ttf");
+        MIME_TYPES.put("eot", "application/vnd.ms-fontobject");
+        MIME_TYPES.put("woff", "font/woff");
+        MIME_TYPES.put("woff2", "font/woff2");
+    }
+
+    /** the file extensions of the files that are worth compressing; png and woff files are compressed already. */
+    private static final String[] COMPRESSIBLE = {"html", "js", "css", "map", "svg", "ico", "ttf", "eot"};
+
+    /** the static files of the project, including framework.html itself. */
+    private static final String[] FILES = {"framework.html", "favicon.ico", "favicon-32x32.png", "jquery-3.6.4.min.js"};
+
+    /** the folders of the project with static files, next to framework.html. */
+    private static final String[] FOLDERS = {"bootstrap-3.4.1", "chart"};
+
+    /** the singleton instance. */
+    private static StaticAssets instance = null;
+
+    /** the assets, keyed on the URI, e.g., /chart/Chart.min.js. */
+    private final Map<String, Asset> assets;
+
+    /** the total number of bytes of the assets, including the gzip variants. */
+    private final long bytes;
+
+    /**
+     * Read all resources.
+     */
+    private StaticAssets()
+    {
+        Map<String, Asset> map = new HashMap<>();
+        long total = 0L;
+        URL url = URLResource.getResource("/framework.html");
+        if (url == null)
+            url = URLResource.getResource("/resources/framework.html");
+        if (url == null)
+            System.err.println("error in StaticAssets(): resources not found");
+        else
+        {
+            try
+            {
+                Path root = root(url);
+                for (String file : FILES)
+                    total += load(root, root.resolve(file), map);
+                for (String folder : FOLDERS)
+                {
+                    if (!Files.isDirectory(root.resolve(folder)))
+                        continue;
+                    try (Stream<Path> paths = Files.walk(root.resolve(folder)))
+                    {
+                        for (Path path : (Iterable<Path>) paths::iterator)
+                            total += load(root, path, map);
+                    }
+                }
+            }
+            catch (IOException | URISyntaxException e)
+            {
+                System.err.println("error in StaticAssets(): " + e.getMessage());
+            }
+        }
+        this.assets = Collections.unmodifiableMap(map);
+        this.bytes = total;
+        System.out.println("loaded " + map.size() + " static files, " + total + " bytes");
+    }
+
+    /**
+     * Read a file with a known file extension into an asset.
+     * @param root Path; the folder of framework.html
+     * @param path Path; the file
+     * @param map Map&lt;String, Asset&gt;; the assets, keyed on the URI, to which the asset is added
+     * @return long; the number of bytes of the asset, including the gzip variant, or 0 when the file is not an asset
+     * @throws IOException on read error
+     */
+    private static long load(final Path root, final Path path, final Map<String, Asset> map) throws IOException
+    {
+        String uri = "/" + root.relativize(path).toString().replace('\\', '/');
+        String mimeType = MIME_TYPES.get(extension(uri));
+        if (mimeType == null || !Files.isRegularFile(path))
+            return 0L;
+        Asset asset = new Asset(Files.readAllBytes(path), mimeType, compressible(uri));
+        map.put(uri, asset);
+        return asset.body.length + (asset.gzip == null ? 0 : asset.gzip.length);
+    }
+
+    /**
+     * Return the static assets, which are read at the first call.
+     * @return StaticAssets; the static assets
+     */
+    public static synchronized StaticAssets getInstance()
+    {
+        if (instance == null)
+            instance = new StaticAssets();
+        return instance;
+    }
+
+    /**
+     * Return the folder that contains the given resource, as a folder on disk, or as a folder in the jar file.
+     * @param url URL; the resource
+     * @return Path; the folder that contains the resource
+     * @throws IOException when the jar file cannot be opened
+     * @throws URISyntaxException when the URL is not a valid URI
+     */
+    private static Path root(final URL url) throws IOException, URISyntaxException
+    {
+        URI uri = url.toURI();
+        if (!"jar".equals(uri.getScheme()))
+            return Paths.get(uri).getParent();
+        FileSystem fileSystem;
+        try
+        {
+            fileSystem = FileSystems.newFileSystem(uri, Collections.emptyMap());
+        }
+        catch (FileSystemAlreadyExistsException e)
+        {
+            fileSystem = FileSystems.getFileSystem(uri);
+        }
+        String entry = uri.toString().substring(uri.toString().indexOf("!/") + 1);
+        return fileSystem.getPath(entry).getParent();
+    }
+
+    /**
+     * Return the file extension of a URI in lower case.
+     * @param uri String; the URI
+     * @return String; the file extension without the dot, or an empty string
+     */
+    private static String extension(final String uri)
+    {
+        int dot = uri.lastIndexOf('.');
+        return dot < 0 || dot < uri.lastIndexOf('/') ? "" : uri.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Return whether a file is worth compressing, based on its file extension.
+     * @param uri String; the URI of the file
+     * @return boolean; whether the file is worth compressing
+     */
+    private static boolean compressible(final String uri)
+    {
+        String extension = extension(uri);
+        for (String c : COMPRESSIBLE)
+        {
+            if (c.equals(extension))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return the asset for a URI.
+     * @param uri String; the URI, e.g., /chart/Chart.min.js
+     * @return Asset; the asset, or null when there is no static file for the URI
+     */
+    public Asset get(final String uri)
+    {
+        return this.assets.get(uri);
+    }
+
+    /**
+     * Return the number of assets.
+     * @return int; the number of assets
+     */
+    public int size()
+    {
+        return this.assets.size();
+    }
+
+    /**
+     * Return the total number of bytes of the assets, including the gzip variants.
+     * @return long; the total number of bytes of the assets
+     */
+    public long getBytes()
+    {
+        return this.bytes;
+    }
+
+    /**
+     * A static file, with its optional gzip variant and the ETags of both variants.
+     */
+    public static final class Asset
+    {
+        /** the bytes of the file. */
+        private final byte[] body;
+
+        /** the gzip-compressed bytes of the file, or null when compression does not make the file smaller. */
+        private final byte[] gzip;
+
+        /** the mime type of the file. */
+        private final String mimeType;
+
+        /** the strong ETag of the file, including the quotes. */
+        private final String etag;
+
+        /** the strong ETag of the gzip variant, including the quotes. */
+        private final String gzipEtag;
+
+        /**
+         * Create an asset, and compress it when that is worthwhile.
+         * @param body byte[]; the bytes of the file
+         * @param mimeType String; the mime type of the file
+         * @param compress boolean; whether to try to compress the file
+         */
+        Asset(final byte[] body, final String mimeType, final boolean compress)
+        {
+            this.body = body;
+            this.mimeType = mimeType;
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            String tag = Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length);
+            this.etag = "\"" + tag + "\"";
+            this.gzipEtag = "\"" + tag + "-gz\"";
+            byte[] compressed = compress ? LevelGzipOutputStream.compress(body, Deflater.BEST_COMPRESSION) : null;
+            this.gzip = compressed != null && compressed.length < body.length ? compressed : null;
+        }
+
+        /**
+         * Return the bytes of the file, or of the gzip variant. The array is shared and should not be changed.
+         * @param gzipped boolean; whether to return the gzip variant; the caller checks hasGzip() first
+         * @return byte[]; the bytes of the file or of the gzip variant
+         */
+        public byte[] getBody(final boolean gzipped)
+        {
+            return gzipped ? this.gzip : this.body;
+        }
+
+        /**
+         * Return whether the asset has a gzip variant.
+         * @return boolean; whether the asset has a gzip variant
+         */
+        public boolean hasGzip()
+        {
+            return this.gzip != null;
+        }
+
+        /**
+         * Return the mime type of the file.
+         * @return String; the mime type of the file
+         */
+        public String getMimeType()
+        {
+            return this.mimeType;
+        }
+
+        /**
+         * Return the strong ETag of the file or of the gzip variant, including the quotes.
+         * @param gzipped boolean; whether to return the ETag of the gzip variant
+         * @return String; the ETag
+         */
+        public String getETag(final boolean gzipped)
+        {
+            return gzipped ? this.gzipEtag : this.etag;
+        }
+
+        /**
+         * Return whether the value of an If-None-Match header matches the ETag of a variant.
+         * @param ifNoneMatch String; the value of the If-None-Match header, may be null
+         * @param gzipped boolean; whether to check the ETag of the gzip variant
+         * @return boolean; whether the browser already has this variant
+         */
+        public boolean matches(final String ifNoneMatch, final boolean gzipped)
+        {
+            if (ifNoneMatch == null)
+                return false;
+            String tag = getETag(gzipped);
+            for (String t : ifNoneMatch.split(","))
+            {
+                String s = t.trim();
+                if (s.equals("*") || s.equals(tag) || s.equals("W/" + tag))
+                    return true;
+            }
+            return false;
+        }
+    }
+
+}
@@ -41,6 +41,12 @@ import java.time.format.DateTimeFormatter;
  */
 public class Telegram
 {
+    /** the formatter for the date part of getDateTime(). */
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /** the formatter for the time part of getDateTime(). */
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+
     /** 1-3:0.2.8 version, e.g. (50). */
     public int version;
 
@@ -50,6 +56,9 @@ public class Telegram
     /** 0-0:1.0.0 date and time, e.g. (200815221959S). */
     public LocalTime time;
 
+    /** whether the CRC of the telegram did not match; only set when Constants.CRC_KEEP_INVALID keeps such telegrams. */
+    public boolean crcInvalid;
+
     /** 0-0:96.1.1 meter id in hex, e.g. (4530303435303034303832303939373137). */
     public String electricityMeterId = "";
 
@@ -152,13 +161,39 @@ public class Telegram
     /** 0-1:24.2.1 gas delivered in m3 -- second string (230505000003S)(05125.733*m3). */
     public double gasDeliveredM3;
 
+    /** 1-0:1.4.0 current average demand (e-MUCS), e.g. (02.351*kW). */
+    public double averageDemandkW;
+
+    /** 1-0:1.6.0 maximum demand of the running month (e-MUCS) -- second string (200509134558S)(01.111*kW). */
+    public double maxDemandMonthkW;
+
+    /** 0-0:96.3.10 breaker state (e-MUCS), e.g. (1). */
+    public int breakerState;
+
+    /** 0-0:17.0.0 limiter threshold (e-MUCS), e.g. (999.9*kW). */
+    public double limiterThresholdkW;
+
+    /** 1-0:31.4.0 fuse supervision threshold L1 (e-MUCS), e.g. (999*A). */
+    public double fuseSupervisionL1A;
+
+    /** 0-n:96.1.0 water meter id in hex, for the M-Bus channel of the water meter. */
+    public String waterMeterId = "";
+
+    /** 0-n:24.2.1 water delivered in m3 -- second string (230505000003S)(00912.219*m3). */
+    public double waterDeliveredM3;
+
+    /** 0-n:96.1.0 heat meter id in hex, for the M-Bus channel of the heat meter. */
+    public String heatMeterId = "";
+
+    /** 0-n:24.2.1 heat delivered in GJ -- second string (230505000003S)(00012.345*GJ). */
+    public double heatDeliveredGJ;
+
     /**
      * @return the date and time as yyyyMMdd HH:mm
      */
     public String getDateTime()
     {
-        return this.date.format(DateTimeFormatter.ofPattern("yyyyMMdd")) + " "
-                + this.time.format(DateTimeFormatter.ofPattern("HH:mm"));
+        return this.date.format(DATE_FORMATTER) + " " + this.time.format(TIME_FORMATTER);
     }
 
     /** {@inheritDoc} */
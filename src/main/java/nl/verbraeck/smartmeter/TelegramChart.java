@@ -4,11 +4,12 @@ import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.SortedMap;
 
 import nl.verbraeck.smartmeter.chart.BarChart;
+import nl.verbraeck.smartmeter.chart.Downsampler;
 import nl.verbraeck.smartmeter.chart.LineChart;
 
 /**
@@ -23,330 +24,235 @@ public class TelegramChart
 {
     /**
      * Make a line chart of the L1 power usage of a maximum of 1440 minutes of a day.
-     * @param dayMap SortedMap&lt;String, Telegram&gt;; Map of clock times to telegrams for a day
+     * @param series DaySeries; the readings of the day
      * @param name String; name of the chart to use; has to be unique within the page
      * @return LineChart; a chart object with the L1 power usage over a day
      */
-    public static LineChart powerDay(final SortedMap<String, Telegram> dayMap, final String name)
+    public static LineChart powerDay(final DaySeries series, final String name)
     {
         LineChart powerChart = new LineChart(name);
         try
         {
-            List<Double> xList = new ArrayList<>();
-            List<Double> yList = new ArrayList<>();
-            double minutes = 0.0;
-            LocalDate date = null;
-            for (Map.Entry<String, Telegram> entry : dayMap.entrySet())
+            double[] x = new double[series.size() + 1441];
+            double[] y = new double[series.size() + 1441];
+            int count = 0;
+            for (int i = 0; i < series.size(); i++)
             {
-                if (date == null)
+                if (series.getMinuteOfDay(i) != DaySeries.BEFORE_DAY)
                 {
-                    if (entry.getValue().time.isAfter(LocalTime.of(23, 0)))
-                        date = entry.getValue().date.plus(1, ChronoUnit.DAYS);
-                    else
-                        date = entry.getValue().date;
+                    x[count] = series.getMinuteOfDay(i);
+                    y[count++] = series.getPowerDelivered(i);
                 }
-                if (date.equals(entry.getValue().date))
-                {
-                    minutes = Math.rint(entry.getValue().time.toSecondOfDay() / 60.0);
-                    xList.add(minutes);
-                    yList.add(entry.getValue().powerDeliveredkW);
-                }
-                else
-                {
-                    System.out.println("Date: " + entry.getValue().date + " not equal to first date: " + date);
-                }
-            }
-            while (minutes < 1440.0)
-            {
-                minutes = Math.rint(minutes + 1.000001);
-                xList.add(minutes);
-                yList.add(0.0);
             }
-            powerChart.setWidth("100%").setX(xList).setY(yList).setTitle("Power (kW)").setMax(1440.0).setTickStepSize(60)
-                    .setHours(true).setFill(true).setFillColor("red");
+            count = fillToEndOfDay(x, y, count, 0.0);
+            powerChart.setWidth("100%").setX(Arrays.copyOf(x, count)).setY(Arrays.copyOf(y, count)).setTitle("Power (kW)")
+                    .setMax(1440.0).setTickStepSize(60).setHours(true).setFill(true).setFillColor("red")
+                    .setDownsampling(Downsampler.Method.MIN_MAX);
         }
         catch (Exception e)
         {
-            System.err.println("error in energyPrev12months: " + e.getMessage());
+            System.err.println("error in powerDay: " + e.getMessage());
         }
         return powerChart;
     }
 
     /**
      * Make a line chart of the cumulative L1 power usage of a maximum of 1440 minutes of a day.
-     * @param dayMap SortedMap&lt;String, Telegram&gt;; Map of clock times to telegrams for a day
+     * @param series DaySeries; the readings of the day
      * @param name String; name of the chart to use; has to be unique within the page
      * @return LineChart; a chart object with the cumulative L1 power usage over a day
      */
-    public static LineChart cumulativePowerDay(final SortedMap<String, Telegram> dayMap, final String name)
+    public static LineChart cumulativePowerDay(final DaySeries series, final String name)
     {
         LineChart powerChart = new LineChart(name);
         try
         {
-            List<Double> xList = new ArrayList<>();
-            List<Double> yList = new ArrayList<>();
-            double minutes = 0.0;
+            double[] x = new double[series.size() + 1441];
+            double[] y = new double[series.size() + 1441];
+            int count = 0;
             double cumEnergy = 0.0;
-            LocalDate date = null;
-            double firstEnergy =
-                    dayMap.get(dayMap.firstKey()).electricityTariff1kWh + dayMap.get(dayMap.firstKey()).electricityTariff2kWh;
-            for (Map.Entry<String, Telegram> entry : dayMap.entrySet())
+            double firstEnergy = series.isEmpty() ? 0.0 : series.getTariff1(0) + series.getTariff2(0);
+            for (int i = 0; i < series.size(); i++)
             {
-                if (date == null)
+                if (series.getMinuteOfDay(i) != DaySeries.BEFORE_DAY)
                 {
-                    if (entry.getValue().time.isAfter(LocalTime.of(23, 0)))
-                        date = entry.getValue().date.plus(1, ChronoUnit.DAYS);
-                    else
-                        date = entry.getValue().date;
+                    cumEnergy = series.getTariff1(i) + series.getTariff2(i) - firstEnergy;
+                    x[count] = series.getMinuteOfDay(i);
+                    y[count++] = cumEnergy;
                 }
-                if (date.equals(entry.getValue().date))
-                {
-                    minutes = Math.rint(entry.getValue().time.toSecondOfDay() / 60.0);
-                    xList.add(minutes);
-                    cumEnergy = entry.getValue().electricityTariff1kWh + entry.getValue().electricityTariff2kWh - firstEnergy;
-                    yList.add(cumEnergy);
-                }
-                else
-                {
-                    // ignore first entry -- it is often just before midnight
-                    if (minutes > 0.0)
-                        System.out.println("Date: " + entry.getValue().date + " not equal to first date: " + date);
-                }
-            }
-            while (minutes < 1440.0)
-            {
-                minutes = Math.rint(minutes + 1.000001);
-                xList.add(minutes);
-                yList.add(cumEnergy);
             }
-            powerChart.setWidth("100%").setX(xList).setY(yList).setTitle("Power (kW)").setMax(1440.0).setTickStepSize(60)
-                    .setHours(true).setFill(false);
+            count = fillToEndOfDay(x, y, count, cumEnergy);
+            powerChart.setWidth("100%").setX(Arrays.copyOf(x, count)).setY(Arrays.copyOf(y, count)).setTitle("Power (kW)")
+                    .setMax(1440.0).setTickStepSize(60).setHours(true).setFill(false);
         }
         catch (Exception e)
         {
-            System.err.println("error in energyPrev12months: " + e.getMessage());
+            System.err.println("error in cumulativePowerDay: " + e.getMessage());
         }
         return powerChart;
     }
 
     /**
      * Make a line chart of the gas usage of a maximum of 1440 minutes of a day.
-     * @param dayMap SortedMap&lt;String, Telegram&gt;; Map of clock times to telegrams for a day
+     * @param series DaySeries; the readings of the day
      * @param name String; name of the chart to use; has to be unique within the page
      * @return LineChart; a chart object with the gas usage over a day
      */
-    public static LineChart gasDay(final SortedMap<String, Telegram> dayMap, final String name)
+    public static LineChart gasDay(final DaySeries series, final String name)
     {
         LineChart gasChart = new LineChart(name);
         try
         {
-            List<Double> xList = new ArrayList<>();
-            List<Double> yList = new ArrayList<>();
-            double minutes = 0.0;
-            LocalDate date = null;
+            double[] x = new double[series.size() + 1441];
+            double[] y = new double[series.size() + 1441];
+            int count = 0;
             double prev = -1.0;
-            LocalTime timestamp = null;
-            for (Map.Entry<String, Telegram> entry : dayMap.entrySet())
+            int timestamp = DaySeries.NO_CAPTURE;
+            for (int i = 0; i < series.size(); i++)
             {
-                if (date == null)
-                {
-                    if (entry.getValue().time.isAfter(LocalTime.of(23, 0)))
-                        date = entry.getValue().date.plus(1, ChronoUnit.DAYS);
-                    else
-                        date = entry.getValue().date;
-                }
-                if (date.equals(entry.getValue().date))
-                {
-                    minutes = Math.rint(entry.getValue().time.toSecondOfDay() / 60.0);
-                    xList.add(minutes);
-                    yList.add(prev == -1.0 ? 0.0 : entry.getValue().gasDeliveredM3 - prev);
-                    if (!entry.getValue().gasCaptureTime.equals(timestamp))
-                        prev = entry.getValue().gasDeliveredM3;
-                    timestamp = entry.getValue().gasCaptureTime;
-                }
-                else
+                if (series.getMinuteOfDay(i) != DaySeries.BEFORE_DAY)
                 {
-                    System.out.println("Date: " + entry.getValue().date + " not equal to first date: " + date);
+                    x[count] = series.getMinuteOfDay(i);
+                    y[count++] = prev == -1.0 ? 0.0 : series.getGasDelivered(i) - prev;
+                    if (prev == -1.0 || series.getGasCapture(i) != timestamp)
+                        prev = series.getGasDelivered(i);
+                    timestamp = series.getGasCapture(i);
                 }
             }
-            while (minutes < 1440.0)
-            {
-                minutes = Math.rint(minutes + 1.000001);
-                xList.add(minutes);
-                yList.add(0.0);
-            }
-            gasChart.setWidth("100%").setX(xList).setY(yList).setTitle("Gas (m3)").setMax(1440.0).setTickStepSize(60)
-                    .setHours(true).setFill(true).setFillColor("red");
+            count = fillToEndOfDay(x, y, count, 0.0);
+            gasChart.setWidth("100%").setX(Arrays.copyOf(x, count)).setY(Arrays.copyOf(y, count)).setTitle("Gas (m3)")
+                    .setMax(1440.0).setTickStepSize(60).setHours(true).setFill(true).setFillColor("red")
+                    .setDownsampling(Downsampler.Method.MIN_MAX);
         }
         catch (Exception e)
         {
-            System.err.println("error in energyPrev12months: " + e.getMessage());
+            System.err.println("error in gasDay: " + e.getMessage());
         }
         return gasChart;
     }
 
     /**
      * Make a line chart of the cumulative gas usage of a maximum of 1440 minutes of a day.
-     * @param dayMap SortedMap&lt;String, Telegram&gt;; Map of clock times to telegrams for a day
+     * @param series DaySeries; the readings of the day
      * @param name String; name of the chart to use; has to be unique within the page
      * @return LineChart; a chart object with the cumulative gas usage over a day
      */
-    public static LineChart cumulativeGasDay(final SortedMap<String, Telegram> dayMap, final String name)
+    public static LineChart cumulativeGasDay(final DaySeries series, final String name)
     {
         LineChart gasChart = new LineChart(name);
         try
         {
-            List<Double> xList = new ArrayList<>();
-            List<Double> yList = new ArrayList<>();
-            double minutes = 0.0;
-            LocalDate date = null;
-            double firstGas = dayMap.get(dayMap.firstKey()).gasDeliveredM3;
+            double[] x = new double[series.size() + 1441];
+            double[] y = new double[series.size() + 1441];
+            int count = 0;
+            double firstGas = series.isEmpty() ? 0.0 : series.getGasDelivered(0);
             double lastGas = firstGas;
-            for (Map.Entry<String, Telegram> entry : dayMap.entrySet())
+            for (int i = 0; i < series.size(); i++)
             {
-                if (date == null)
-                {
-                    if (entry.getValue().time.isAfter(LocalTime.of(23, 0)))
-                        date = entry.getValue().date.plus(1, ChronoUnit.DAYS);
-                    else
-                        date = entry.getValue().date;
-                }
-                if (date.equals(entry.getValue().date))
+                if (series.getMinuteOfDay(i) != DaySeries.BEFORE_DAY)
                 {
-                    minutes = Math.rint(entry.getValue().time.toSecondOfDay() / 60.0);
-                    xList.add(minutes);
-                    lastGas = entry.getValue().gasDeliveredM3;
-                    yList.add(lastGas - firstGas);
-                }
-                else
-                {
-                    System.out.println("Date: " + entry.getValue().date + " not equal to first date: " + date);
+                    lastGas = series.getGasDelivered(i);
+                    x[count] = series.getMinuteOfDay(i);
+                    y[count++] = lastGas - firstGas;
                 }
             }
-            while (minutes < 1440.0)
-            {
-                minutes = Math.rint(minutes + 1.000001);
-                xList.add(minutes);
-                yList.add(lastGas - firstGas);
-            }
-            gasChart.setWidth("100%").setX(xList).setY(yList).setTitle("Gas (m3)").setMax(1440.0).setTickStepSize(60)
-                    .setHours(true).setFill(false).setFillColor("blue");
+            count = fillToEndOfDay(x, y, count, lastGas - firstGas);
+            gasChart.setWidth("100%").setX(Arrays.copyOf(x, count)).setY(Arrays.copyOf(y, count)).setTitle("Gas (m3)")
+                    .setMax(1440.0).setTickStepSize(60).setHours(true).setFill(false).setFillColor("blue");
         }
         catch (Exception e)
         {
-            System.err.println("error in energyPrev12months: " + e.getMessage());
+            System.err.println("error in cumulativeGasDay: " + e.getMessage());
         }
         return gasChart;
     }
 
     /**
      * Make a line chart of the voltage development of a maximum of 1440 minutes of a day.
-     * @param dayMap SortedMap&lt;String, Telegram&gt;; Map of clock times to telegrams for a day
+     * @param series DaySeries; the readings of the day
      * @param name String; name of the chart to use; has to be unique within the page
      * @return LineChart; a chart object with the power development over a day
      */
-    public static LineChart voltageDay(final SortedMap<String, Telegram> dayMap, final String name)
+    public static LineChart voltageDay(final DaySeries series, final String name)
     {
         LineChart voltageChart = new LineChart(name);
         try
         {
-            List<Double> xList = new ArrayList<>();
-            List<Double> yList = new ArrayList<>();
-            double minutes = 0.0;
-            LocalDate date = null;
-            for (Map.Entry<String, Telegram> entry : dayMap.entrySet())
+            double[] x = new double[series.size() + 1441];
+            double[] y = new double[series.size() + 1441];
+            int count = 0;
+            for (int i = 0; i < series.size(); i++)
             {
-                if (date == null)
-                {
-                    if (entry.getValue().time.isAfter(LocalTime.of(23, 0)))
-                        date = entry.getValue().date.plus(1, ChronoUnit.DAYS);
-                    else
-                        date = entry.getValue().date;
-                }
-                if (date.equals(entry.getValue().date))
+                if (series.getMinuteOfDay(i) != DaySeries.BEFORE_DAY)
                 {
-                    minutes = Math.rint(entry.getValue().time.toSecondOfDay() / 60.0);
-                    xList.add(minutes);
-                    yList.add(entry.getValue().voltageL1);
-                }
-                else
-                {
-                    System.out.println("Date: " + entry.getValue().date + " not equal to first date: " + date);
+                    x[count] = series.getMinuteOfDay(i);
+                    y[count++] = series.getVoltageL1(i);
                 }
             }
-            while (minutes < 1440.0)
-            {
-                minutes = Math.rint(minutes + 1.000001);
-                xList.add(minutes);
-                yList.add(Double.NaN);
-            }
-            voltageChart.setWidth("100%").setX(xList).setY(yList).setTitle("Voltage L1 (V)").setMax(1440.0).setTickStepSize(60)
-                    .setHours(true).setFill(false).setFillColor("green");
+            count = fillToEndOfDay(x, y, count, Double.NaN);
+            voltageChart.setWidth("100%").setX(Arrays.copyOf(x, count)).setY(Arrays.copyOf(y, count))
+                    .setTitle("Voltage L1 (V)").setMax(1440.0).setTickStepSize(60).setHours(true).setFill(false)
+                    .setFillColor("green");
         }
         catch (Exception e)
         {
-            System.err.println("error in energyPrev12months: " + e.getMessage());
+            System.err.println("error in voltageDay: " + e.getMessage());
         }
         return voltageChart;
     }
 
+    /**
+     * Add points with the given value for every minute after the last point until the end of the day.
+     * @param x double[]; the x values, with room for the extra points
+     * @param y double[]; the y values, with room for the extra points
+     * @param count int; the number of points so far
+     * @param value double; the y value of the extra points
+     * @return int; the number of points including the extra points
+     */
+    private static int fillToEndOfDay(final double[] x, final double[] y, final int count, final double value)
+    {
+        int n = count;
+        double minutes = n == 0 ? 0.0 : x[n - 1];
+        while (minutes < 1440.0)
+        {
+            minutes = Math.rint(minutes + 1.000001);
+            x[n] = minutes;
+            y[n++] = value;
+        }
+        return n;
+    }
+
     /**
      * Make a bar chart of the L1 energy usage per hour for a maximum of 24 hours.
-     * @param dayMap SortedMap&lt;String, Telegram&gt;; Map of clock times to telegrams for a day
+     * @param series DaySeries; the readings of the day
      * @param name String; name of the chart to use; has to be unique within the page
      * @return LineChart; a chart object with the L1 energy usage per hour for a maximum of 24 hours
      */
-    public static BarChart energyPerHourDay(final SortedMap<String, Telegram> dayMap, final String name)
+    public static BarChart energyPerHourDay(final DaySeries series, final String name)
     {
         BarChart powerChart = new BarChart(name);
         try
         {
             List<String> xList = new ArrayList<>();
-            List<Double> yList = new ArrayList<>();
-            List<Double> cList = new ArrayList<>();
             for (int x = 0; x < 24; x++)
-            {
                 xList.add(" " + x + ":00");
-                yList.add(0.0);
-                cList.add(0.0);
-            }
-            int hour = 0;
-            double start =
-                    dayMap.get(dayMap.firstKey()).electricityTariff1kWh + dayMap.get(dayMap.firstKey()).electricityTariff2kWh;
-            LocalDate date = null;
-            for (Map.Entry<String, Telegram> entry : dayMap.entrySet())
+            double[] values = new double[24];
+            double[] cumulative = new double[24];
+            double start = series.isEmpty() ? 0.0 : series.getTariff1(0) + series.getTariff2(0);
+            for (int i = 0; i < series.size(); i++)
             {
-                if (date == null)
-                {
-                    if (entry.getValue().time.isAfter(LocalTime.of(23, 0)))
-                        date = entry.getValue().date.plus(1, ChronoUnit.DAYS);
-                    else
-                        date = entry.getValue().date;
-                }
-                if (date.equals(entry.getValue().date))
-                {
-                    hour = Math.min(23, (int) Math.round(entry.getValue().time.toSecondOfDay() / 3600.0));
-                    if (hour == 0)
-                    {
-                        cList.set(hour, entry.getValue().electricityTariff1kWh + entry.getValue().electricityTariff2kWh);
-                        yList.set(hour, cList.get(hour) - start);
-                    }
-                    else
-                    {
-                        cList.set(hour, entry.getValue().electricityTariff1kWh + entry.getValue().electricityTariff2kWh);
-                        yList.set(hour, cList.get(hour) - cList.get(hour - 1));
-                    }
-                }
-                else
+                if (series.getMinuteOfDay(i) != DaySeries.BEFORE_DAY)
                 {
-                    System.out.println("Date: " + entry.getValue().date + " not equal to first date: " + date);
+                    int hour = Math.min(23, (int) Math.round(series.getMinuteOfDay(i) / 60.0));
+                    cumulative[hour] = series.getTariff1(i) + series.getTariff2(i);
+                    values[hour] = cumulative[hour] - (hour == 0 ? start : cumulative[hour - 1]);
                 }
             }
-            powerChart.setWidth("100%").setLabels(xList).setValues(yList).setTitle("Energy (kWh)");
+            powerChart.setWidth("100%").setLabels(xList).setValues(values).setTitle("Energy (kWh)");
         }
         catch (Exception e)
         {
-            System.err.println("error in energyPrev12months: " + e.getMessage());
+            System.err.println("error in energyPerHourDay: " + e.getMessage());
         }
         return powerChart;
     }
@@ -362,12 +268,10 @@ public class TelegramChart
         try
         {
             SortedMap<String, Telegram> day30Map = TelegramFile.getStartOfDaysTelegrams(targetDate, 30);
-            SortedMap<String, Telegram> lastDayTelegrams = TelegramFile.getDayTelegrams(targetDate);
-            Telegram lastTelegram = lastDayTelegrams.get(lastDayTelegrams.lastKey());
+            Telegram lastTelegram = TelegramFile.getLastDayTelegram(targetDate);
             List<String> labelList = new ArrayList<>();
-            List<Double> tariff1List = new ArrayList<>();
-            List<Double> tariff2List = new ArrayList<>();
-            List<Double> totalList = new ArrayList<>();
+            double[] totals = new double[day30Map.size()];
+            int count = 0;
             double prevTariff1 = Double.NaN;
             double prevTariff2 = Double.NaN;
             LocalDate date;
@@ -384,10 +288,8 @@ public class TelegramChart
                 {
                     labelList.add(" " + date.minusDays(1).toString());
                     double t1 = telegram.electricityTariff1kWh - prevTariff1;
-                    tariff1List.add(t1);
                     double t2 = telegram.electricityTariff2kWh - prevTariff2;
-                    tariff2List.add(t2);
-                    totalList.add(t1 + t2);
+                    totals[count++] = t1 + t2;
                 }
                 prevTariff1 = telegram.electricityTariff1kWh;
                 prevTariff2 = telegram.electricityTariff2kWh;
@@ -395,14 +297,15 @@ public class TelegramChart
             }
 
             // today
-            labelList.add(lastTelegram.date.toString());
-            double t1 = lastTelegram.electricityTariff1kWh - prevTariff1;
-            tariff1List.add(t1);
-            double t2 = lastTelegram.electricityTariff2kWh - prevTariff2;
-            tariff1List.add(t2);
-            totalList.add(t1 + t2);
+            if (lastTelegram != null)
+            {
+                labelList.add(lastTelegram.date.toString());
+                double t1 = lastTelegram.electricityTariff1kWh - prevTariff1;
+                double t2 = lastTelegram.electricityTariff2kWh - prevTariff2;
+                totals[count++] = t1 + t2;
+            }
 
-            powerChart.setWidth("100%").setTitle("Power (kW)").setLabels(labelList).setValues(totalList);
+            powerChart.setWidth("100%").setTitle("Power (kW)").setLabels(labelList).setValues(Arrays.copyOf(totals, count));
         }
         catch (Exception e)
         {
@@ -424,9 +327,8 @@ public class TelegramChart
             SortedMap<String, Telegram> months12Map =
                     TelegramFile.getStartOfMonthsTelegrams(targetDate.getYear(), targetDate.getMonthValue(), 12);
             List<String> labelList = new ArrayList<>();
-            List<Double> tariff1List = new ArrayList<>();
-            List<Double> tariff2List = new ArrayList<>();
-            List<Double> totalList = new ArrayList<>();
+            double[] totals = new double[months12Map.size()];
+            int count = 0;
             double prevTariff1 = Double.NaN;
             double prevTariff2 = Double.NaN;
             boolean first = true;
@@ -443,13 +345,11 @@ public class TelegramChart
                 if (!first)
                 {
                     labelList.add(" " + key);
-                    tariff1List.add(t1);
-                    tariff2List.add(t2);
-                    totalList.add(t1 + t2);
+                    totals[count++] = t1 + t2;
                 }
                 first = false;
             }
-            powerChart.setWidth("100%").setTitle("Power (kW)").setLabels(labelList).setValues(totalList);
+            powerChart.setWidth("100%").setTitle("Power (kW)").setLabels(labelList).setValues(Arrays.copyOf(totals, count));
         }
         catch (Exception e)
         {
@@ -469,10 +369,10 @@ public class TelegramChart
         try
         {
             SortedMap<String, Telegram> day30Map = TelegramFile.getStartOfDaysTelegrams(targetDate, 30);
-            SortedMap<String, Telegram> lastDayTelegrams = TelegramFile.getDayTelegrams(targetDate);
-            Telegram lastTelegram = lastDayTelegrams.get(lastDayTelegrams.lastKey());
+            Telegram lastTelegram = TelegramFile.getLastDayTelegram(targetDate);
             List<String> labelList = new ArrayList<>();
-            List<Double> valueList = new ArrayList<>();
+            double[] values = new double[day30Map.size()];
+            int count = 0;
             double prevGas = Double.NaN;
             LocalDate date;
             boolean first = true;
@@ -487,17 +387,20 @@ public class TelegramChart
                 if (!first)
                 {
                     labelList.add(" " + date.minusDays(1).toString());
-                    valueList.add(telegram.gasDeliveredM3 - prevGas);
+                    values[count++] = telegram.gasDeliveredM3 - prevGas;
                 }
                 prevGas = telegram.gasDeliveredM3;
                 first = false;
             }
 
             // today
-            labelList.add(lastTelegram.date.toString());
-            valueList.add(lastTelegram.gasDeliveredM3 - prevGas);
+            if (lastTelegram != null)
+            {
+                labelList.add(lastTelegram.date.toString());
+                values[count++] = lastTelegram.gasDeliveredM3 - prevGas;
+            }
 
-            gasChart.setWidth("100%").setLabels(labelList).setValues(valueList).setTitle("Gas (m3)");
+            gasChart.setWidth("100%").setLabels(labelList).setValues(Arrays.copyOf(values, count)).setTitle("Gas (m3)");
         }
         catch (Exception e)
         {
@@ -519,7 +422,8 @@ public class TelegramChart
             SortedMap<String, Telegram> months12Map =
                     TelegramFile.getStartOfMonthsTelegrams(targetDate.getYear(), targetDate.getMonthValue(), 12);
             List<String> labelList = new ArrayList<>();
-            List<Double> gasList = new ArrayList<>();
+            double[] values = new double[months12Map.size()];
+            int count = 0;
             double prevGas = Double.NaN;
             boolean first = true;
             for (String key : months12Map.keySet())
@@ -532,11 +436,11 @@ public class TelegramChart
                 if (!first)
                 {
                     labelList.add(" " + key);
-                    gasList.add(gas);
+                    values[count++] = gas;
                 }
                 first = false;
             }
-            gasChart.setWidth("100%").setTitle("Gas (m3)").setLabels(labelList).setValues(gasList);
+            gasChart.setWidth("100%").setTitle("Gas (m3)").setLabels(labelList).setValues(Arrays.copyOf(values, count));
         }
         catch (Exception e)
         {
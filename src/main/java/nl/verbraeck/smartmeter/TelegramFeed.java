@@ -0,0 +1,289 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TelegramFeed pushes every new telegram of today's file to the browsers that are connected to the <code>/events</code>
+ * endpoint, as Server-Sent Events. A daemon thread checks today's file every few seconds while there are subscribers; the
+ * TodayTailer tells the feed about the newest telegram, which is written once as a compact JSON event, and handed to all
+ * subscribers (fan-out).
+ * <p>
+ * NanoHTTPD serves every connection with its own thread, which sends a chunked response by reading its InputStream until the
+ * end of the stream. Every subscriber therefore is an InputStream with a small bounded buffer of events: the read blocks until
+ * an event arrives, or returns a heartbeat comment after a quiet period, so a closed connection is detected at the next write.
+ * When a browser does not keep up, the oldest events in its buffer are dropped, so a slow client never blocks the fan-out or
+ * the other clients. The number of subscribers is limited, since each of them holds a thread of the web server.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class TelegramFeed
+{
+    /** the maximum number of connected subscribers; half of the worker threads of the web server. */
+    public static final int MAX_SUBSCRIBERS = Constants.HTTP_WORKERS / 2;
+
+    /** the number of events that can wait in the buffer of a subscriber. */
+    private static final int BUFFER_SIZE = 16;
+
+    /** the interval in milliseconds at which today's file is checked for new telegrams. */
+    private static final long POLL_INTERVAL_MS = 5_000L;
+
+    /** the time in milliseconds after which a heartbeat is sent when there are no events. */
+    private static final long HEARTBEAT_MS = 15_000L;
+
+    /** the heartbeat: a comment line that the browser ignores. */
+    private static final byte[] HEARTBEAT = ": heartbeat\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /** the first bytes of every stream: the reconnection time of the browser in milliseconds. */
+    private static final byte[] RETRY = "retry: 10000\n\n".getBytes(StandardCharsets.UTF_8);
+
+    /** the singleton instance. */
+    private static TelegramFeed instance = null;
+
+    /** the connected subscribers. */
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /** the last event that was published, sent to new subscribers first; null when there was none yet. */
+    private volatile byte[] lastEvent = null;
+
+    /**
+     * Create the feed, register it with the tailer of today's file, and start the thread that checks the file.
+     */
+    private TelegramFeed()
+    {
+        TelegramFile.addTelegramListener(this::publish);
+        Thread poller = new Thread(this::poll, "TelegramFeed");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    /**
+     * Return the feed, and start it at the first call.
+     * @return TelegramFeed; the feed
+     */
+    public static synchronized TelegramFeed getInstance()
+    {
+        if (instance == null)
+            instance = new TelegramFeed();
+        return instance;
+    }
+
+    /**
+     * Check today's file for new telegrams, as long as there are subscribers. New telegrams reach publish() through the
+     * listener of the tailer.
+     */
+    private void poll()
+    {
+        while (true)
+        {
+            try
+            {
+                Thread.sleep(POLL_INTERVAL_MS);
+                if (!this.subscribers.isEmpty())
+                    TelegramFile.getLastTelegram();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            catch (Exception e)
+            {
+                System.err.println("error in TelegramFeed.poll(): " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write a telegram as an event, and hand it to all subscribers.
+     * @param telegram Telegram; the newest telegram
+     */
+    private void publish(final Telegram telegram)
+    {
+        byte[] event;
+        try
+        {
+            event = event(telegram);
+        }
+        catch (IOException e)
+        {
+            System.err.println("error in TelegramFeed.publish(): " + e.getMessage());
+            return;
+        }
+        this.lastEvent = event;
+        for (Subscriber subscriber : this.subscribers)
+            subscriber.offer(event);
+    }
+
+    /**
+     * Write a telegram as a Server-Sent Event with the name "telegram", and as data a compact JSON object with the fields that
+     * change every minute. The minute is the minute of the day, rounded as in DaySeries, as the x-value of the day charts.
+     * @param telegram Telegram; the telegram
+     * @return byte[]; the UTF-8 bytes of the event
+     * @throws IOException cannot happen when writing to a StringBuilder
+     */
+    static byte[] event(final Telegram telegram) throws IOException
+    {
+        StringBuilder s = new StringBuilder(256);
+        s.append("event: telegram\ndata: ");
+        JsonWriter json = new JsonWriter(s);
+        json.beginObject();
+        json.name("date").value(telegram.date == null ? null : telegram.date.toString());
+        json.name("minute").value(telegram.time == null ? -1 : DaySeries.roundMinute(telegram.time));
+        json.name("tariff1").value(telegram.electricityTariff1kWh);
+        json.name("tariff2").value(telegram.electricityTariff2kWh);
+        json.name("powerDelivered").value(telegram.powerDeliveredkW);
+        json.name("powerReceived").value(telegram.powerReceivedkW);
+        json.name("voltageL1").value(telegram.voltageL1);
+        json.name("currentL1").value(telegram.currentL1);
+        json.name("gasDelivered").value(telegram.gasDeliveredM3);
+        json.endObject();
+        s.append("\n\n");
+        return s.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Connect a new subscriber. The stream starts with the reconnection time and the last event, so the browser is up to date
+     * right away.
+     * @return Subscriber; the stream of events for the new subscriber, or null when there are too many subscribers
+     */
+    public synchronized Subscriber subscribe()
+    {
+        if (this.subscribers.size() >= MAX_SUBSCRIBERS)
+            return null;
+        Subscriber subscriber = new Subscriber();
+        subscriber.offer(RETRY);
+        byte[] event = this.lastEvent;
+        if (event != null)
+            subscriber.offer(event);
+        this.subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Return the number of connected subscribers.
+     * @return int; the number of connected subscribers
+     */
+    public int getSubscriberCount()
+    {
+        return this.subscribers.size();
+    }
+
+    /**
+     * Subscriber is the stream of events for one browser. NanoHTTPD reads the stream in the thread of the connection, and
+     * closes it when the connection is closed, which removes the subscriber from the feed.
+     */
+    public final class Subscriber extends InputStream
+    {
+        /** the events that wait to be sent. */
+        private final ArrayBlockingQueue<byte[]> buffer = new ArrayBlockingQueue<>(BUFFER_SIZE);
+
+        /** the event that is being sent. */
+        private byte[] current = new byte[0];
+
+        /** the position in the current event. */
+        private int position = 0;
+
+        /** the number of events that were dropped because the buffer was full. */
+        private int dropped = 0;
+
+        /** whether the stream has been closed. */
+        private volatile boolean closed = false;
+
+        /**
+         * Create a subscriber; use TelegramFeed.subscribe().
+         */
+        private Subscriber()
+        {
+            // use TelegramFeed.subscribe()
+        }
+
+        /**
+         * Add an event to the buffer; when the buffer is full, the oldest event is dropped.
+         * @param event byte[]; the event
+         */
+        private synchronized void offer(final byte[] event)
+        {
+            while (!this.buffer.offer(event))
+            {
+                this.buffer.poll();
+                this.dropped++;
+            }
+        }
+
+        /**
+         * Make sure there are bytes of an event to send, and wait for the next event when needed. When no event arrives in
+         * time, the next bytes are a heartbeat.
+         * @return boolean; false when the stream is closed
+         * @throws IOException when the thread is interrupted
+         */
+        private boolean fill() throws IOException
+        {
+            if (this.position < this.current.length)
+                return true;
+            if (this.closed)
+                return false;
+            try
+            {
+                byte[] event = this.buffer.poll(HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+                this.current = event == null ? HEARTBEAT : event;
+                this.position = 0;
+                return !this.closed;
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for an event");
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read() throws IOException
+        {
+            if (!fill())
+                return -1;
+            return this.current[this.position++] & 0xFF;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException
+        {
+            if (len == 0)
+                return 0;
+            if (!fill())
+                return -1;
+            int n = Math.min(len, this.current.length - this.position);
+            System.arraycopy(this.current, this.position, b, off, n);
+            this.position += n;
+            return n;
+        }
+
+        /**
+         * Return the number of events that were dropped because the browser did not keep up.
+         * @return int; the number of dropped events
+         */
+        public synchronized int getDropped()
+        {
+            return this.dropped;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void close()
+        {
+            this.closed = true;
+            TelegramFeed.this.subscribers.remove(this);
+        }
+    }
+
+}
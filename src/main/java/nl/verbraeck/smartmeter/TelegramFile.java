@@ -1,14 +1,23 @@
 package nl.verbraeck.smartmeter;
 
-import java.io.File;
-import java.io.FilenameFilter;
-import java.nio.file.Files;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 
 /**
  * TelegramFile contains methods to read telegram files for today, a given date, the last 30 days before a given date, and the
@@ -21,67 +30,81 @@ import java.util.TreeMap;
  */
 public class TelegramFile
 {
+    /** the number of bytes at the end of a file that is read first when looking for the last telegram. */
+    private static final int TAIL_BLOCK_SIZE = 4096;
+
+    /** the in-memory series of the telegrams in the newest (today's) file. */
+    private static final TodayTailer TODAY_TAILER = new TodayTailer();
+
+    /** the concurrent loads of the series of closed days, so a day file is read once at a time. */
+    private static final SingleFlight<LocalDate, DaySeries> SERIES_FLIGHTS =
+            new SingleFlight<>(Constants.SINGLE_FLIGHT_TIMEOUT_MS);
+
+    /** the concurrent loads of the first telegrams of days (key yyyy-MM-dd) and months (key yyyy-MM). */
+    private static final SingleFlight<String, Telegram> START_FLIGHTS = new SingleFlight<>(Constants.SINGLE_FLIGHT_TIMEOUT_MS);
 
     /**
-     * Read all telegrams (max 1440) for today (or for the last saved date when no new files are added).
+     * Return the telegrams (max 1440) for today (or for the last saved date when no new files are added). The telegrams are
+     * made from the in-memory series of today, so the file is not read again, and only have the fields of the DaySeries:
+     * without the meter ids, the text message and the values of L2 and L3, and with the time rounded to the minute.
      * @return SortedMap&lt;String, Telegram&gt;; the sorted map with the date and time as the key (formatted as "yyyyMMdd
      *         HH:mm") to the corresponding Telegram
+     * @deprecated use getTodaySeries(), which has the same data without making Telegram objects
      */
+    @Deprecated
     public static SortedMap<String, Telegram> getTodayTelegrams()
     {
         SortedMap<String, Telegram> telegramMap = new TreeMap<>();
+        DaySeries series = getTodaySeries();
+        for (int i = 0; i < series.size(); i++)
+        {
+            Telegram telegram = series.getTelegram(i);
+            telegramMap.put(telegram.getDateTime(), telegram);
+        }
+        return telegramMap;
+    }
+
+    /**
+     * Return the series for today (or for the last saved date when no new files are added). The series is kept in memory, and
+     * only the telegrams that were appended since the previous call are parsed.
+     * @return DaySeries; the series for today
+     */
+    public static DaySeries getTodaySeries()
+    {
         try
         {
-            File dir = new File(Constants.LOCAL_FOLDER);
-            final TreeMap<String, File> fileMap = new TreeMap<>();
-            dir.listFiles(new FilenameFilter()
+            Map.Entry<LocalDate, Path> lastFile = DayFileIndex.getInstance().last();
+            if (lastFile != null)
             {
-                @Override
-                public boolean accept(final File folder, final String name)
-                {
-                    File file = new File(folder, name);
-                    if (file.isFile() && name.endsWith(Constants.FILE_SUFFIX))
-                    {
-                        fileMap.put(name, file);
-                        return true;
-                    }
-                    return false;
-                }
-            });
-            String lastFile = fileMap.lastEntry().getValue().getAbsolutePath();
-            List<String> lines = Files.readAllLines(Path.of(lastFile));
-            String line = "";
-            List<String> telegramLines = new ArrayList<>();
-            while (!lines.isEmpty())
-            {
-                telegramLines.clear();
-                do
-                {
-                    line = lines.remove(0);
-                }
-                while (!line.startsWith("/") && !lines.isEmpty());
-                if (!lines.isEmpty())
-                {
-                    do
-                    {
-                        telegramLines.add(line);
-                        line = lines.remove(0);
-                    }
-                    while (!line.startsWith("!") && !lines.isEmpty());
-                }
-                if (line.startsWith("!")) // full telegram
-                {
-                    Telegram telegram = TelegramParser.parseTelegram(telegramLines);
-                    telegramMap.put(telegram.getDateTime(), telegram);
-                }
+                updateToday(lastFile.getValue());
+                return TODAY_TAILER.getSeries();
             }
         }
         catch (Exception e)
         {
-            System.err.println("error in getTodayTelegrams(): " + e.getMessage());
+            System.err.println("error in getTodaySeries(): " + e.getMessage());
         }
 
-        return telegramMap;
+        return new DaySeries(null, 0);
+    }
+
+    /**
+     * Return the results of the CRC checks of the telegrams in today's file, counted once when they are tailed.
+     * @return CrcCounts; the results of the CRC checks of today's telegrams
+     */
+    public static CrcCounts getTodayCrcCounts()
+    {
+        return TODAY_TAILER.getCrcCounts();
+    }
+
+    /**
+     * Add a listener that gets the newest telegram of today's file whenever new telegrams are found in the file. The file is
+     * only checked when today's data is requested, e.g., with getLastTelegram().
+     * @param listener Consumer&lt;Telegram&gt;; the listener
+     */
+    public static void addTelegramListener(final Consumer<Telegram> listener)
+    {
+        TODAY_TAILER.addListener(listener);
     }
 
     /**
@@ -92,43 +115,22 @@ public class TelegramFile
     {
         try
         {
-            File dir = new File(Constants.LOCAL_FOLDER);
-            final TreeMap<String, File> fileMap = new TreeMap<>();
-            dir.listFiles(new FilenameFilter()
-            {
-                @Override
-                public boolean accept(final File folder, final String name)
-                {
-                    File file = new File(folder, name);
-                    if (file.isFile() && name.endsWith(Constants.FILE_SUFFIX))
-                    {
-                        fileMap.put(name, file);
-                        return true;
-                    }
-                    return false;
-                }
-            });
-            String lastFile = fileMap.lastEntry().getValue().getAbsolutePath();
-            List<String> lines = Files.readAllLines(Path.of(lastFile));
-
-            // get the start of the last full telegram
-            int lastStart = -1;
-            int preLastStart = -1;
-            for (int i = 0; i < lines.size(); i++)
-            {
-                if (lines.get(i).startsWith("/"))
-                {
-                    preLastStart = lastStart;
-                    lastStart = i;
-                }
-            }
-            List<String> telegramLines = new ArrayList<>();
-            for (int i = preLastStart; i < lastStart - 1; i++)
+            DayFileIndex index = DayFileIndex.getInstance();
+            Map.Entry<LocalDate, Path> lastFile = index.last();
+            if (lastFile == null)
+                return new Telegram();
+            updateToday(lastFile.getValue());
+            if (TODAY_TAILER.getLastTelegram() != null)
+                return TODAY_TAILER.getLastTelegram();
+
+            // the newest file can still be empty just after midnight
+            for (Path path : index.range(null, lastFile.getKey().minusDays(1)).descendingMap().values())
             {
-                telegramLines.add(lines.get(i));
+                Telegram telegram = lastTelegram(path);
+                if (telegram != null)
+                    return telegram;
             }
-            Telegram telegram = TelegramParser.parseTelegram(telegramLines);
-            return telegram;
+            return new Telegram();
         }
         catch (Exception e)
         {
@@ -137,51 +139,96 @@ public class TelegramFile
         }
     }
 
+    /**
+     * Bring the in-memory series of today up to date. When the tailer switches to a new file (at midnight), the day of the
+     * previous file is closed, and its first and last readings are added to the rollup store; when the month changes as well,
+     * the month is closed too.
+     * @param newestPath Path; the newest day file
+     * @throws IOException on read error
+     */
+    private static void updateToday(final Path newestPath) throws IOException
+    {
+        Path previousPath = TODAY_TAILER.getPath();
+        TODAY_TAILER.update(newestPath);
+        if (!Constants.DATA_CACHING || previousPath == null || previousPath.equals(newestPath))
+            return;
+        LocalDate previousDate = DayFileIndex.parseDate(previousPath.getFileName().toString());
+        LocalDate newestDate = DayFileIndex.parseDate(newestPath.getFileName().toString());
+        if (previousDate == null || newestDate == null || !previousDate.isBefore(newestDate))
+            return;
+        closeDay(previousDate, previousPath);
+        LocalDate firstOfMonth = previousDate.withDayOfMonth(1);
+        if (firstOfMonth.isBefore(newestDate.withDayOfMonth(1)))
+            closeMonth(firstOfMonth);
+    }
+
+    /**
+     * Add the first and last readings of a closed day to the rollup store, when they are not stored yet.
+     * @param date LocalDate; the closed day
+     * @param path Path; the telegram file of the day
+     * @return Telegram; the first telegram of the day, or null when the file does not contain a complete telegram
+     * @throws IOException on read error
+     */
+    private static Telegram closeDay(final LocalDate date, final Path path) throws IOException
+    {
+        RollupStore rollupStore = RollupStore.getInstance();
+        Telegram first = rollupStore.getFirstOfDay(date);
+        if (first != null)
+            return first;
+        first = firstTelegram(path);
+        rollupStore.addDay(date, first, lastTelegram(path));
+        return first;
+    }
+
+    /**
+     * Add the first and last readings of a closed month to the rollup store, when they are not stored yet. The first reading is
+     * the first telegram of the first file in the month, the last reading the last telegram of the last file in the month.
+     * @param firstOfMonth LocalDate; the first day of the closed month
+     * @return Telegram; the first telegram of the month, or null when there is no file with a complete telegram in the month
+     * @throws IOException on read error
+     */
+    private static Telegram closeMonth(final LocalDate firstOfMonth) throws IOException
+    {
+        NavigableMap<LocalDate, Path> monthFiles =
+                DayFileIndex.getInstance().range(firstOfMonth, firstOfMonth.plusMonths(1).minusDays(1));
+        if (monthFiles.isEmpty())
+            return null;
+        Telegram first = firstTelegram(monthFiles.firstEntry().getValue());
+        RollupStore.getInstance().addMonth(firstOfMonth, first, lastTelegram(monthFiles.lastEntry().getValue()));
+        return first;
+    }
+
     /**
      * Read all telegrams (max 1440) for the given date. In case there are no telegrams for the given date, return the telegrams
-     * for the last date when telegrams were saved.
+     * for the last date when telegrams were saved. Days that are closed are read from a binary day file, which is created from
+     * the text file in the background on first use. Note that the telegrams of today are made from the in-memory series, and
+     * only have the fields of the DaySeries (see getTodayTelegrams()), where the telegrams of other days are complete.
      * @param date LocalDate; the date for which the Telegrams should be retrieved
      * @return SortedMap&lt;String, Telegram&gt;; the sorted map with the date and time as the key (formatted as "yyyyMMdd
      *         HH:mm") to the corresponding Telegram
+     * @deprecated use getDaySeries(), which returns the same data for every date without making Telegram objects
      */
+    @Deprecated
     public static SortedMap<String, Telegram> getDayTelegrams(final LocalDate date)
     {
         SortedMap<String, Telegram> telegramMap = new TreeMap<>();
         try
         {
-            File dir = new File(Constants.LOCAL_FOLDER);
-            File file = new File(dir, Constants.FILE_PREFIX + date.toString() + Constants.FILE_SUFFIX);
-            if (file == null || !file.exists())
+            DayFileIndex index = DayFileIndex.getInstance();
+            Path path = index.get(date);
+            if (path == null || date.equals(LocalDate.now()))
             {
                 return getTodayTelegrams();
             }
 
-            List<String> lines = Files.readAllLines(Path.of(file.getAbsolutePath()));
-            List<String> telegramLines = new ArrayList<>();
-            String line = "";
-            while (!lines.isEmpty())
+            // a closed day is read from its binary day file; the newest file can still grow
+            if (date.isBefore(index.last().getKey()))
             {
-                telegramLines.clear();
-                do
-                {
-                    line = lines.remove(0);
-                }
-                while (!line.startsWith("/") && !lines.isEmpty());
-                if (!lines.isEmpty())
-                {
-                    do
-                    {
-                        telegramLines.add(line);
-                        line = lines.remove(0);
-                    }
-                    while (!line.startsWith("!") && !lines.isEmpty());
-                }
-                if (line.startsWith("!")) // full telegram
-                {
-                    Telegram telegram = TelegramParser.parseTelegram(telegramLines);
-                    telegramMap.put(telegram.getDateTime(), telegram);
-                }
+                BinaryDayFile binary = openBinary(date, path);
+                if (binary != null)
+                    return binary.getTelegrams();
             }
+            telegramMap = readTelegrams(path);
         }
         catch (Exception e)
         {
@@ -191,6 +238,66 @@ public class TelegramFile
         return telegramMap;
     }
 
+    /**
+     * Return the series for the given date. In case there are no telegrams for the given date, return the series for the last
+     * date when telegrams were saved. Days that are closed are read from the columns of the binary day file, without making
+     * Telegram objects; concurrent requests for the same closed day share one read.
+     * @param date LocalDate; the date for which the series should be retrieved
+     * @return DaySeries; the series for the date
+     */
+    public static DaySeries getDaySeries(final LocalDate date)
+    {
+        try
+        {
+            DayFileIndex index = DayFileIndex.getInstance();
+            Path path = index.get(date);
+            if (path == null || date.equals(LocalDate.now()))
+            {
+                return getTodaySeries();
+            }
+
+            if (date.isBefore(index.last().getKey()))
+            {
+                return SERIES_FLIGHTS.run(date, () ->
+                {
+                    BinaryDayFile binary = openBinary(date, path);
+                    return binary != null ? binary.getDaySeries() : DaySeries.of(readTelegrams(path));
+                });
+            }
+            return DaySeries.of(readTelegrams(path));
+        }
+        catch (Exception e)
+        {
+            System.err.println("error in getDaySeries(): " + e.getMessage());
+        }
+
+        return new DaySeries(null, 0);
+    }
+
+    /**
+     * Open the binary day file of a closed day. When the binary day file is missing, outdated or unreadable, the day file is
+     * converted on a background thread, and null is returned, so the caller reads the text file this time.
+     * @param date LocalDate; the date of the day file
+     * @param path Path; the text day file
+     * @return BinaryDayFile; the binary day file, or null when the text file has to be read
+     */
+    private static BinaryDayFile openBinary(final LocalDate date, final Path path)
+    {
+        if (BinaryDayFile.isCurrent(path))
+        {
+            try
+            {
+                return BinaryDayFile.open(BinaryDayFile.binaryPath(path));
+            }
+            catch (IOException e)
+            {
+                System.err.println("error in openBinary(): " + e.getMessage());
+            }
+        }
+        BinaryDayFile.convertLater(date, path);
+        return null;
+    }
+
     /**
      * Read a number of first telegrams of the day until the given date. The map has the date as the key in the format
      * yyyy-MM-dd.
@@ -204,68 +311,27 @@ public class TelegramFile
         SortedMap<String, Telegram> telegramMap = new TreeMap<>();
         try
         {
-            File dir = new File(Constants.LOCAL_FOLDER);
-            final TreeMap<String, File> fileMap = new TreeMap<>();
+            DayFileIndex index = DayFileIndex.getInstance();
+            LocalDate newestDate = index.last() == null ? null : index.last().getKey();
+            Iterator<Map.Entry<LocalDate, Path>> files =
+                    index.range(null, targetDate).descendingMap().entrySet().iterator();
 
-            dir.listFiles(new FilenameFilter()
+            // the days that are not cached are read concurrently, in batches of the number of missing days; a file without
+            // a complete telegram leaves a day missing, and the next batch reads one more day
+            while (telegramMap.size() < days && files.hasNext())
             {
-                @Override
-                public boolean accept(final File folder, final String name)
+                Map<String, Callable<Telegram>> tasks = new LinkedHashMap<>();
+                while (telegramMap.size() + tasks.size() < days && files.hasNext())
                 {
-                    File file = new File(folder, name);
-                    if (file.isFile() && name.endsWith(Constants.FILE_SUFFIX) && name.substring(Constants.FILE_PREFIX.length())
-                            .substring(0, 10).compareTo(targetDate.toString()) <= 0)
-                    {
-                        fileMap.put(name, file);
-                        return true;
-                    }
-                    return false;
-                }
-            });
-
-            for (String name : fileMap.descendingMap().keySet())
-            {
-                if (Constants.DATA_CACHING)
-                {
-                    String key = name.substring(Constants.FILE_PREFIX.length()).substring(0, 10);
-                    Telegram telegram = SmartMeterWeb.FIRST_DAY_TELEGRAM_MAP.get(key);
+                    Map.Entry<LocalDate, Path> entry = files.next();
+                    String key = entry.getKey().toString();
+                    Telegram telegram = Constants.DATA_CACHING ? SmartMeterWeb.FIRST_DAY_TELEGRAM_MAP.get(key) : null;
                     if (telegram != null)
-                    {
                         telegramMap.put(key, telegram);
-                        if (telegramMap.size() >= days)
-                            break;
-                        continue;
-                    }
-                }
-
-                File file = fileMap.get(name);
-                List<String> lines = Files.readAllLines(Path.of(file.getAbsolutePath()));
-                List<String> telegramLines = new ArrayList<>();
-                String line = "";
-                do
-                {
-                    line = lines.remove(0);
+                    else
+                        tasks.put(key, () -> startOfDay(entry.getKey(), entry.getValue(), newestDate));
                 }
-                while (!line.startsWith("/") && !lines.isEmpty());
-                if (!lines.isEmpty())
-                {
-                    do
-                    {
-                        telegramLines.add(line);
-                        line = lines.remove(0);
-                    }
-                    while (!line.startsWith("!") && !lines.isEmpty());
-                }
-                if (line.startsWith("!")) // full telegram
-                {
-                    Telegram telegram = TelegramParser.parseTelegram(telegramLines);
-                    String key = name.substring(Constants.FILE_PREFIX.length()).substring(0, 10);
-                    telegramMap.put(key, telegram);
-                    if (Constants.DATA_CACHING)
-                        SmartMeterWeb.FIRST_DAY_TELEGRAM_MAP.put(key, telegram);
-                }
-                if (telegramMap.size() >= days)
-                    break;
+                telegramMap.putAll(RangeLoader.load(tasks));
             }
         }
         catch (Exception e)
@@ -292,86 +358,351 @@ public class TelegramFile
         SortedMap<String, Telegram> telegramMap = new TreeMap<>();
         try
         {
-            File dir = new File(Constants.LOCAL_FOLDER);
-            final TreeMap<String, File> fileMap = new TreeMap<>();
-            dir.listFiles(new FilenameFilter()
-            {
-                @Override
-                public boolean accept(final File folder, final String name)
-                {
-                    File file = new File(folder, name);
-                    if (file.isFile() && name.endsWith(Constants.FILE_SUFFIX))
-                    {
-                        fileMap.put(name, file);
-                        return true;
-                    }
-                    return false;
-                }
-            });
+            DayFileIndex index = DayFileIndex.getInstance();
 
             // get the last entry in the given month; in other words, the last entry BEFORE the first of the next month.
             LocalDate lastDate = LocalDate.of(year, month, 1).plusMonths(1).minusDays(1);
-            String lastKey = fileMap.floorKey(Constants.FILE_PREFIX + lastDate.toString());
-            if (lastKey == null)
-                lastKey = fileMap.lastKey();
-            LocalDate date = LocalDate.parse(lastKey.substring(Constants.FILE_PREFIX.length()).substring(0, 10));
-            SortedMap<String, Telegram> lastDayTelegrams = TelegramFile.getDayTelegrams(date);
-            Telegram lastTelegram = lastDayTelegrams.get(lastDayTelegrams.lastKey());
-            telegramMap.put(date.toString().substring(0, 7), lastTelegram);
+            Map.Entry<LocalDate, Path> lastFile = index.floor(lastDate);
+            if (lastFile == null)
+                lastFile = index.last();
+            LocalDate date = lastFile.getKey();
+            Telegram lastTelegram = getLastDayTelegram(date);
+            if (lastTelegram != null)
+                telegramMap.put(date.toString().substring(0, 7), lastTelegram);
             date = LocalDate.of(date.getYear(), date.getMonth(), 1);
 
+            // the months that are not cached are read concurrently
+            Map<String, Callable<Telegram>> tasks = new LinkedHashMap<>();
             for (int i = 0; i < numberOfMonths; i++)
             {
-                String fn = Constants.FILE_PREFIX + date.toString();
-                File file = fileMap.ceilingEntry(fn).getValue();
+                Map.Entry<LocalDate, Path> file = index.ceiling(date);
+                if (file == null)
+                    break;
+                String key = date.minusMonths(1).toString().substring(0, 7);
+                Telegram telegram = Constants.DATA_CACHING ? SmartMeterWeb.FIRST_MONTH_TELEGRAM_MAP.get(key) : null;
+                if (telegram != null)
+                    telegramMap.put(key, telegram);
+                else
+                {
+                    // the first file of a closed month is stored in the rollup store with the month
+                    LocalDate firstOfMonth = date;
+                    boolean closed = Constants.DATA_CACHING && file.getKey().getMonth() == date.getMonth()
+                            && file.getKey().getYear() == date.getYear() && date.plusMonths(1).isBefore(index.last().getKey());
+                    Callable<Telegram> task = closed ? () -> closeMonth(firstOfMonth) : () -> firstTelegram(file.getValue());
+                    tasks.put(key, () -> START_FLIGHTS.run(key, task));
+                }
+                date = date.minusMonths(1);
+            }
+            SortedMap<String, Telegram> loaded = RangeLoader.load(tasks);
+            telegramMap.putAll(loaded);
+            if (Constants.DATA_CACHING)
+                SmartMeterWeb.FIRST_MONTH_TELEGRAM_MAP.putAll(loaded);
+        }
+        catch (Exception e)
+        {
+            System.err.println("error in getStartOfMonthsTelegrams(): " + e.getMessage());
+        }
+
+        return telegramMap;
+    }
+
+    /**
+     * Return the first telegram of a day file, from the cache when possible. A closed day is stored in the rollup store, so it
+     * does not have to be read again after a restart. Concurrent requests for the same day share one read of the file.
+     * @param date LocalDate; the date of the day file
+     * @param path Path; the day file
+     * @param newestDate LocalDate; the date of the newest day file, which is not closed yet
+     * @return Telegram; the first telegram of the day file, or null when the file does not contain a complete telegram
+     * @throws Exception on read error, or when a concurrent read of the same day did not finish in time
+     */
+    private static Telegram startOfDay(final LocalDate date, final Path path, final LocalDate newestDate) throws Exception
+    {
+        String key = date.toString();
+        Telegram telegram = Constants.DATA_CACHING ? SmartMeterWeb.FIRST_DAY_TELEGRAM_MAP.get(key) : null;
+        if (telegram != null)
+            return telegram;
+        return START_FLIGHTS.run(key, () ->
+        {
+            boolean closed = Constants.DATA_CACHING && date.isBefore(newestDate);
+            Telegram first = closed ? closeDay(date, path) : firstTelegram(path);
+            if (first != null && Constants.DATA_CACHING)
+                SmartMeterWeb.FIRST_DAY_TELEGRAM_MAP.put(key, first);
+            return first;
+        });
+    }
+
+    /**
+     * Query the readings in the range [from, to) with the given resolution. The readings are passed to the consumer one by one,
+     * oldest first, without building a map of telegrams. Intervals without telegrams are skipped.
+     * <p>
+     * For intervals shorter than a day, only the day files in the range are read, as columns (closed days come from the binary
+     * day files); each reading has the register values of the first telegram in the interval and the average of the
+     * instantaneous values. For intervals of a day or a month, only the first telegram of the day file at each interval
+     * boundary is read (from the cache or the rollup store when possible), and from and to are aligned to the start of their
+     * interval.
+     * </p>
+     * @param from LocalDateTime; the start of the range (inclusive)
+     * @param to LocalDateTime; the end of the range (exclusive)
+     * @param step Resolution; the length of the intervals
+     * @param consumer Consumer&lt;Reading&gt;; the consumer of the readings
+     */
+    public static void query(final LocalDateTime from, final LocalDateTime to, final Resolution step,
+            final Consumer<Reading> consumer)
+    {
+        try
+        {
+            if (step.isSubDay())
+                queryDays(from, to, step, consumer);
+            else
+                queryBoundaries(from, to, step, consumer);
+        }
+        catch (Exception e)
+        {
+            System.err.println("error in query(): " + e.getMessage());
+        }
+    }
 
-                if (Constants.DATA_CACHING)
+    /**
+     * Query the readings in the range [from, to) for intervals shorter than a day, from the day series of the days in the
+     * range.
+     * @param from LocalDateTime; the start of the range (inclusive)
+     * @param to LocalDateTime; the end of the range (exclusive)
+     * @param step Resolution; the length of the intervals
+     * @param consumer Consumer&lt;Reading&gt;; the consumer of the readings
+     */
+    private static void queryDays(final LocalDateTime from, final LocalDateTime to, final Resolution step,
+            final Consumer<Reading> consumer)
+    {
+        // the minutes in the series are rounded, so a telegram is in the range when its minute is in [fromMinute, toMinute)
+        long fromMinute = epochMinute(from);
+        long toMinute = epochMinute(to);
+        Reading reading = null;
+        long readingKey = Long.MIN_VALUE;
+        for (LocalDate date : DayFileIndex.getInstance().range(from.toLocalDate(), to.toLocalDate()).keySet())
+        {
+            long midnight = date.toEpochDay() * 1440L;
+            if (midnight >= toMinute)
+                break;
+            DaySeries series = getDaySeries(date);
+            if (!date.equals(series.getDate()))
+                continue;
+            for (int i = 0; i < series.size(); i++)
+            {
+                int minute = series.getMinuteOfDay(i);
+                if (minute == DaySeries.BEFORE_DAY || midnight + minute < fromMinute)
+                    continue;
+                if (midnight + minute >= toMinute)
+                    break;
+                int startMinute = step.alignMinute(minute);
+                long key = midnight + startMinute;
+                if (key != readingKey)
                 {
-                    String key = date.minusMonths(1).toString().substring(0, 7);
-                    Telegram telegram = SmartMeterWeb.FIRST_MONTH_TELEGRAM_MAP.get(key);
-                    if (telegram != null)
-                    {
-                        telegramMap.put(key, telegram);
-                        date = date.minusMonths(1);
-                        continue;
-                    }
+                    if (reading != null)
+                        consumer.accept(reading);
+                    reading = new Reading(date.atStartOfDay().plusMinutes(startMinute));
+                    readingKey = key;
                 }
+                reading.add(series, i);
+            }
+        }
+        if (reading != null)
+            consumer.accept(reading);
+    }
 
-                List<String> lines = Files.readAllLines(Path.of(file.getAbsolutePath()));
-                List<String> telegramLines = new ArrayList<>();
-                String line = "";
-                do
+    /**
+     * Return the number of minutes since the epoch of the first whole minute at or after the given time.
+     * @param time LocalDateTime; the time
+     * @return long; the minutes since 1970-01-01 00:00 of the time, rounded up
+     */
+    private static long epochMinute(final LocalDateTime time)
+    {
+        return time.toLocalDate().toEpochDay() * 1440L + (time.toLocalTime().toNanoOfDay() + 59_999_999_999L) / 60_000_000_000L;
+    }
+
+    /**
+     * Query the readings in the range [from, to) for intervals of a day or a month, from the first telegrams of the day files
+     * at the interval boundaries. The average power is the difference of the energy registers at the start of the interval and
+     * at the start of the next interval (or the last telegram, for the current interval), divided by the time in between.
+     * @param from LocalDateTime; the start of the range; aligned to the start of its interval
+     * @param to LocalDateTime; the end of the range (exclusive); aligned to the start of its interval
+     * @param step Resolution; the length of the intervals, DAY or MONTH
+     * @param consumer Consumer&lt;Reading&gt;; the consumer of the readings
+     */
+    private static void queryBoundaries(final LocalDateTime from, final LocalDateTime to, final Resolution step,
+            final Consumer<Reading> consumer)
+    {
+        DayFileIndex index = DayFileIndex.getInstance();
+        if (index.last() == null)
+            return;
+        LocalDate newestDate = index.last().getKey();
+        LocalDateTime end = step.align(to);
+        Map<String, Callable<Telegram>> tasks = new LinkedHashMap<>();
+        Map<String, LocalDate> fileDates = new HashMap<>();
+        for (LocalDateTime boundary = step.align(from); !boundary.isAfter(end); boundary = step.next(boundary))
+        {
+            Map.Entry<LocalDate, Path> file = index.ceiling(boundary.toLocalDate());
+            if (file == null)
+                break;
+            tasks.put(boundary.toString(), () -> startOfDay(file.getKey(), file.getValue(), newestDate));
+            fileDates.put(boundary.toString(), file.getKey());
+        }
+        SortedMap<String, Telegram> boundaries = RangeLoader.load(tasks);
+
+        Telegram lastTelegram = null;
+        for (LocalDateTime start = step.align(from); start.isBefore(end); start = step.next(start))
+        {
+            Telegram first = boundaries.get(start.toString());
+            if (first == null)
+                break;
+            LocalDate fileDate = fileDates.get(start.toString());
+            if (!first.date.atTime(first.time).isBefore(step.next(start))
+                    || !fileDate.isBefore(step.next(start).toLocalDate()))
+                continue; // no data in this interval; the boundary telegram is from a later interval
+            Telegram next = boundaries.get(step.next(start).toString());
+            if (next == null)
+            {
+                if (lastTelegram == null)
+                    lastTelegram = getLastTelegram();
+                next = lastTelegram;
+            }
+            Reading reading = new Reading(start);
+            reading.setRegisters(first, fileDate.equals(start.toLocalDate()));
+            double hours = ChronoUnit.SECONDS.between(first.date.atTime(first.time), next.date.atTime(next.time)) / 3600.0;
+            if (hours > 0.0)
+            {
+                reading.powerDelivered = (next.electricityTariff1kWh + next.electricityTariff2kWh
+                        - first.electricityTariff1kWh - first.electricityTariff2kWh) / hours;
+                reading.powerReceived = (next.electrBackTariff1kWh + next.electrBackTariff2kWh - first.electrBackTariff1kWh
+                        - first.electrBackTariff2kWh) / hours;
+            }
+            consumer.accept(reading);
+        }
+    }
+
+    /**
+     * Read all complete telegrams in a telegram file in one forward pass.
+     * @param path Path; the telegram file to read
+     * @return SortedMap&lt;String, Telegram&gt;; the sorted map with the date and time as the key (formatted as "yyyyMMdd
+     *         HH:mm") to the corresponding Telegram
+     * @throws IOException on read error
+     */
+    private static SortedMap<String, Telegram> readTelegrams(final Path path) throws IOException
+    {
+        SortedMap<String, Telegram> telegramMap = new TreeMap<>();
+        try (TelegramReader reader = TelegramReader.open(path))
+        {
+            while (reader.hasNext())
+            {
+                Telegram telegram = reader.next();
+                telegramMap.putIfAbsent(telegram.getDateTime(), telegram); // the first telegram of every minute
+            }
+        }
+        return telegramMap;
+    }
+
+    /**
+     * Read the first complete telegram in a telegram file. Reading stops at the end of the first telegram, so only the first
+     * kilobyte or so of the file is read.
+     * @param path Path; the telegram file to read
+     * @return Telegram; the first complete telegram in the file, or null when the file does not contain a complete telegram
+     * @throws IOException on read error
+     */
+    public static Telegram firstTelegram(final Path path) throws IOException
+    {
+        try (TelegramReader reader = TelegramReader.open(path))
+        {
+            return reader.hasNext() ? reader.next() : null;
+        }
+    }
+
+    /**
+     * Read the last complete telegram in a telegram file. The file is scanned backward from the end, so only the last
+     * kilobytes of the file are read. A telegram that is still being appended at the end of the file is skipped, and so are
+     * telegrams with an invalid CRC (unless Constants.CRC_KEEP_INVALID is set), up to the start of the file.
+     * @param path Path; the telegram file to read
+     * @return Telegram; the last complete telegram in the file, or null when the file does not contain a complete telegram
+     * @throws IOException on read error
+     */
+    public static Telegram lastTelegram(final Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long limit = channel.size(); // the telegrams after this position were skipped
+            int blockSize = TAIL_BLOCK_SIZE;
+            while (true)
+            {
+                long start = Math.max(0L, limit - blockSize);
+                ByteBuffer buffer = ByteBuffer.allocate((int) (limit - start));
+                int read = 0;
+                while (buffer.hasRemaining() && read >= 0)
+                    read = channel.read(buffer, start + buffer.position());
+                byte[] bytes = buffer.array();
+                int length = buffer.position();
+
+                // find the last "!" line that is terminated by a newline, and the "/" line before it
+                int end = -1;
+                int bang = -1;
+                for (int i = length - 1; i >= 0 && bang < 0; i--)
                 {
-                    line = lines.remove(0);
+                    if (bytes[i] == '\n')
+                        end = i + 1;
+                    else if (bytes[i] == '!' && end > 0 && (i > 0 ? bytes[i - 1] == '\n' : start == 0))
+                        bang = i;
                 }
-                while (!line.startsWith("/") && !lines.isEmpty());
-                if (!lines.isEmpty())
+                int slash = -1;
+                for (int i = bang - 1; i >= 0 && slash < 0; i--)
                 {
-                    do
-                    {
-                        telegramLines.add(line);
-                        line = lines.remove(0);
-                    }
-                    while (!line.startsWith("!") && !lines.isEmpty());
+                    if (bytes[i] == '/' && (i > 0 ? bytes[i - 1] == '\n' : start == 0))
+                        slash = i;
                 }
-                if (line.startsWith("!")) // full telegram
+                if (slash >= 0)
                 {
-                    Telegram telegram = TelegramParser.parseTelegram(telegramLines);
-                    String key = date.minusMonths(1).toString().substring(0, 7);
-                    telegramMap.put(key, telegram);
-                    if (Constants.DATA_CACHING)
-                        SmartMeterWeb.FIRST_MONTH_TELEGRAM_MAP.put(key, telegram);
-
+                    try (TelegramReader reader = new TelegramReader(new ByteArrayInputStream(bytes, slash, end - slash)))
+                    {
+                        if (reader.hasNext())
+                            return reader.next();
+                    }
+                    // the telegram has an invalid CRC: look for the telegram before it
+                    limit = start + slash;
+                    blockSize = TAIL_BLOCK_SIZE;
+                    continue;
                 }
-                date = date.minusMonths(1);
+                if (start == 0L)
+                    return null;
+                blockSize *= 2;
             }
         }
-        catch (Exception e)
+    }
+
+    /**
+     * Read the last telegram of the given date. For the date of the newest day file, or a later date, this is the last telegram
+     * that was received. For an earlier date without a readable telegram, the last telegram of the closest earlier date with a
+     * telegram is returned, so the date shows no usage instead of the usage up to now.
+     * @param date LocalDate; the date for which the last Telegram should be retrieved
+     * @return Telegram; the last telegram of the date, or null when there is no telegram on or before the date
+     * @throws IOException on read error
+     */
+    public static Telegram getLastDayTelegram(final LocalDate date) throws IOException
+    {
+        if (Constants.DATA_CACHING)
         {
-            System.err.println("error in getStartOfMonthsTelegrams(): " + e.getMessage());
+            Telegram telegram = RollupStore.getInstance().getLastOfDay(date);
+            if (telegram != null)
+                return telegram;
         }
-
-        return telegramMap;
+        DayFileIndex index = DayFileIndex.getInstance();
+        Map.Entry<LocalDate, Path> newest = index.last();
+        if (newest == null)
+            return null;
+        if (!date.isBefore(newest.getKey()))
+            return getLastTelegram();
+        for (Path path : index.range(null, date).descendingMap().values())
+        {
+            Telegram telegram = lastTelegram(path);
+            if (telegram != null)
+                return telegram;
+        }
+        return null;
     }
 
 }
@@ -1,8 +1,9 @@
 package nl.verbraeck.smartmeter;
 
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 
 /**
@@ -37,12 +38,41 @@ import java.util.List;
  * !F07C
  * </pre>
  * <p>
+ * The parser works directly on the bytes of a telegram. It packs the OBIS code of each line into an int (A and B in 4 bits
+ * each, C, D and E in 8 bits each, so 1-0:1.8.1 becomes 0x10010801), looks up the field for the code in the ObisRegistry, and
+ * lets the field decode the value directly from the bytes, without creating intermediate Strings. Which OBIS codes are
+ * recognized depends on the profiles of the registry; see ObisProfile.
+ * </p>
+ * <p>
  * Copyright (c) 2020-2023 Alexander Verbraeck.
  * </p>
  * @author <a href="https://www.tudelft.nl/averbraeck">Alexander Verbraeck</a>
  */
 public class TelegramParser
 {
+    /** the separators after the A, B, C and D groups of an OBIS code. */
+    private static final byte[] OBIS_SEPARATORS = new byte[] {'-', ':', '.', '.'};
+
+    /** powers of ten to scale the decoded decimals. */
+    private static final double[] POWERS_OF_TEN = new double[] {1E0, 1E1, 1E2, 1E3, 1E4, 1E5, 1E6, 1E7, 1E8, 1E9, 1E10,
+            1E11, 1E12, 1E13, 1E14, 1E15, 1E16, 1E17, 1E18};
+
+    /** the registry with the OBIS codes that are recognized; initialized after the constants that it uses. */
+    private static final ObisRegistry REGISTRY = ObisRegistry.getDefault();
+
+    /** The result of the CRC check of a telegram. */
+    public enum CrcStatus
+    {
+        /** the CRC after the "!" matches the telegram. */
+        VALID,
+
+        /** the CRC after the "!" does not match the telegram, e.g., because of a corrupted serial line. */
+        INVALID,
+
+        /** there is no CRC after the "!", as in telegrams of DSMR 2 and 3 meters, or the CRC cannot be verified. */
+        MISSING
+    }
+
     /**
      * Parse the telegram into a telegram record.
      * @param lines List of strings containing telegram data
@@ -53,236 +83,331 @@ public class TelegramParser
         Telegram telegram = new Telegram();
         for (String line : lines)
         {
-            if (line.startsWith("1-3:0.2.8"))
-                telegram.version = parseInt(line);
-            else if (line.startsWith("0-0:1.0.0"))
-            {
-                telegram.date = parseDate(line);
-                telegram.time = parseTime(line);
-            }
-            else if (line.startsWith("0-0:96.1.1"))
-                telegram.electricityMeterId = parseHex(line);
-
-            else if (line.startsWith("1-0:1.8.1"))
-                telegram.electricityTariff1kWh = parseFloatUnit(line);
-            else if (line.startsWith("1-0:1.8.2"))
-                telegram.electricityTariff2kWh = parseFloatUnit(line);
-            else if (line.startsWith("1-0:2.8.1"))
-                telegram.electrBackTariff1kWh = parseFloatUnit(line);
-            else if (line.startsWith("1-0:2.8.2"))
-                telegram.electrBackTariff2kWh = parseFloatUnit(line);
-
-            else if (line.startsWith("0-0:96.14.0"))
-                telegram.tariff = parseInt(line);
-
-            else if (line.startsWith("1-0:1.7.0"))
-                telegram.powerDeliveredkW = parseFloatUnit(line);
-            else if (line.startsWith("1-0:2.7.0"))
-                telegram.powerReceivedkW = parseFloatUnit(line);
-
-            else if (line.startsWith("0-0:96.7.21"))
-                telegram.powerFailuresAnyPhase = parseInt(line);
-            else if (line.startsWith("0-0:96.7.9"))
-                telegram.longPowerFailuresAnyPhase = parseInt(line);
-
-            else if (line.startsWith("1-0:32.32.0"))
-                telegram.voltageSagsL1 = parseInt(line);
-            else if (line.startsWith("1-0:52.32.0"))
-                telegram.voltageSagsL2 = parseInt(line);
-            else if (line.startsWith("1-0:72.32.0"))
-                telegram.voltageSagsL3 = parseInt(line);
-
-            else if (line.startsWith("1-0:32.36.0"))
-                telegram.voltageSwellsL1 = parseInt(line);
-            else if (line.startsWith("1-0:52.36.0"))
-                telegram.voltageSwellsL2 = parseInt(line);
-            else if (line.startsWith("1-0:72.36.0"))
-                telegram.voltageSwellsL3 = parseInt(line);
-
-            else if (line.startsWith("0-0:96.13.0"))
-                telegram.textMessage = parseHex(line);
-
-            else if (line.startsWith("1-0:32.7.0"))
-                telegram.voltageL1 = parseFloatUnit(line);
-            else if (line.startsWith("1-0:52.7.0"))
-                telegram.voltageL2 = parseFloatUnit(line);
-            else if (line.startsWith("1-0:72.7.0"))
-                telegram.voltageL3 = parseFloatUnit(line);
-
-            else if (line.startsWith("1-0:31.7.0"))
-                telegram.currentL1 = parseFloatUnit(line);
-            else if (line.startsWith("1-0:51.7.0"))
-                telegram.currentL2 = parseFloatUnit(line);
-            else if (line.startsWith("1-0:71.7.0"))
-                telegram.currentL3 = parseFloatUnit(line);
-
-            else if (line.startsWith("1-0:21.7.0"))
-                telegram.powerDeliveredL1kW = parseFloatUnit(line);
-            else if (line.startsWith("1-0:41.7.0"))
-                telegram.powerDeliveredL2kW = parseFloatUnit(line);
-            else if (line.startsWith("1-0:61.7.0"))
-                telegram.powerDeliveredL3kW = parseFloatUnit(line);
-
-            else if (line.startsWith("1-0:22.7.0"))
-                telegram.powerReceivedL1kW = parseFloatUnit(line);
-            else if (line.startsWith("1-0:42.7.0"))
-                telegram.powerReceivedL2kW = parseFloatUnit(line);
-            else if (line.startsWith("1-0:62.7.0"))
-                telegram.powerReceivedL3kW = parseFloatUnit(line);
+            byte[] bytes = line.getBytes(StandardCharsets.ISO_8859_1);
+            parseLine(telegram, bytes, 0, bytes.length);
+        }
+        return telegram;
+    }
 
-            else if (line.startsWith("0-1:24.1.0"))
-                telegram.gasDeviceTypeId = parseInt(line);
-            else if (line.startsWith("0-1:96.1.0"))
-                telegram.gasMeterId = parseHex(line);
-            else if (line.startsWith("0-1:24.2.1"))
-            {
-                telegram.gasCaptureDate = parseDate(line);
-                telegram.gasCaptureTime = parseTime(line);
-                telegram.gasDeliveredM3 = parseFloatUnit2(line);
-            }
+    /**
+     * Parse the telegram into a telegram record, directly from the bytes of the telegram. The lines are terminated by '\n' or
+     * "\r\n". Lines that are not OBIS lines (the header, the empty line, and the CRC line) or that have an unknown OBIS code
+     * are skipped.
+     * @param bytes byte[]; the array with the telegram
+     * @param offset int; the offset of the telegram in the array
+     * @param length int; the number of bytes of the telegram
+     * @return Telegram; a parsed telegram
+     */
+    public static Telegram parseTelegram(final byte[] bytes, final int offset, final int length)
+    {
+        Telegram telegram = new Telegram();
+        int end = offset + length;
+        int lineStart = offset;
+        while (lineStart < end)
+        {
+            int lineEnd = indexOf(bytes, lineStart, end, '\n');
+            int stop = lineEnd > lineStart && bytes[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            parseLine(telegram, bytes, lineStart, stop);
+            lineStart = lineEnd + 1;
         }
         return telegram;
+    }
 
+    /**
+     * Check the CRC16 of a telegram: the 4 hexadecimal digits after the "!" have to be the CRC16/ARC of the bytes from the "/"
+     * up to and including the "!". The lines of a telegram end with "\r\n"; when the '\r' was removed (as TelegramReader does),
+     * it is added to the CRC before every '\n'.
+     * @param bytes byte[]; the array with the telegram, starting with the "/"
+     * @param offset int; the offset of the telegram in the array
+     * @param length int; the number of bytes of the telegram
+     * @return CrcStatus; whether the CRC is valid, invalid, or missing
+     */
+    public static CrcStatus checkCrc(final byte[] bytes, final int offset, final int length)
+    {
+        return checkCrc(bytes, offset, length, false);
     }
 
     /**
-     * Parse an integer from the telegram line. The line is formatted, e.g., as <code>0-0:96.14.0(0001)</code>. The int is
-     * enclosed between brackets.
-     * @param line The line to parse
-     * @return int; the parsed integer value
+     * Check the CRC16 of a telegram that was stored line by line without the '\r', such as the telegrams that doc/meter.sh
+     * stores: the tty turns every "\r\n" into "\n\n", and the script drops the empty lines, including the empty line after
+     * the header. The '\r' and the empty line after the header are added to the CRC. Since the lines of such a telegram can
+     * have been changed in other ways as well, a CRC that does not match cannot be told apart from a corrupted telegram, and
+     * the telegram is then returned as MISSING (not verifiable) instead of INVALID.
+     * @param bytes byte[]; the array with the telegram, starting with the "/"
+     * @param offset int; the offset of the telegram in the array
+     * @param length int; the number of bytes of the telegram
+     * @return CrcStatus; VALID when the CRC matches, MISSING otherwise
      */
-    private static int parseInt(final String line)
+    public static CrcStatus checkStoredCrc(final byte[] bytes, final int offset, final int length)
     {
-        int bo = line.indexOf('(');
-        int bc = line.indexOf(')');
-        if (bo == -1 || bc == -1 || bo > bc)
-            return 0;
-        String nr = line.substring(bo + 1, bc);
-        try
+        return checkCrc(bytes, offset, length, true) == CrcStatus.VALID ? CrcStatus.VALID : CrcStatus.MISSING;
+    }
+
+    /**
+     * Check the CRC16 of a telegram, and add the '\r' before every '\n' when it was removed.
+     * @param bytes byte[]; the array with the telegram, starting with the "/"
+     * @param offset int; the offset of the telegram in the array
+     * @param length int; the number of bytes of the telegram
+     * @param emptyLine boolean; whether to add the empty line after the header when it was removed
+     * @return CrcStatus; whether the CRC is valid, invalid, or missing
+     */
+    private static CrcStatus checkCrc(final byte[] bytes, final int offset, final int length, final boolean emptyLine)
+    {
+        int end = offset + length;
+        int crc = 0;
+        int i = offset;
+        boolean header = true;
+        while (true)
         {
-            return Integer.parseInt(nr);
+            if (i == end)
+                return CrcStatus.MISSING; // no "!" line
+            byte b = bytes[i];
+            if (b == '\n' && (i == offset || bytes[i - 1] != '\r'))
+                crc = Crc16.update(crc, '\r');
+            crc = Crc16.update(crc, b);
+            if (b == '\n' && header)
+            {
+                header = false;
+                if (emptyLine && i + 1 < end && bytes[i + 1] != '\n' && bytes[i + 1] != '\r')
+                    crc = Crc16.update(Crc16.update(crc, '\r'), '\n');
+            }
+            if (b == '!' && i > offset && bytes[i - 1] == '\n')
+                break;
+            i++;
         }
-        catch (NumberFormatException nfe)
+        if (end - i < 5)
+            return CrcStatus.MISSING;
+        int expected = 0;
+        for (int j = i + 1; j <= i + 4; j++)
         {
-            System.err.println("parseInt. Line: " + line + ", error: " + nfe.getMessage());
-            return 0;
+            int digit = Character.digit(bytes[j], 16);
+            if (digit < 0)
+                return CrcStatus.MISSING;
+            expected = (expected << 4) | digit;
         }
+        return expected == crc ? CrcStatus.VALID : CrcStatus.INVALID;
     }
 
     /**
-     * Parse a floating point value with a unit from the telegram line. The line is formatted, e.g., as
-     * <code>1-0:1.7.0(02.327*kW)</code>. The floating point value and unit are enclosed between brackets. The unit is stored
-     * after the asterisk.
-     * @param line The line to parse
-     * @return double; the parsed floating point value
+     * Parse one line of the telegram, and store the value in the telegram record.
+     * @param telegram Telegram; the telegram record to fill
+     * @param bytes byte[]; the array with the telegram
+     * @param start int; the index of the first byte of the line
+     * @param end int; the index after the last byte of the line, without line terminator
      */
-    private static double parseFloatUnit(final String line)
+    private static void parseLine(final Telegram telegram, final byte[] bytes, final int start, final int end)
     {
-        int bo = line.indexOf('(');
-        int bc = line.indexOf('*');
-        if (bo == -1 || bc == -1 || bo > bc)
-            return 0.0;
-        String nr = line.substring(bo + 1, bc);
-        try
+        int open = indexOf(bytes, start, end, '(');
+        if (open == end)
+            return;
+        ObisField field = REGISTRY.get(obisCode(bytes, start, open));
+        if (field != null)
+            field.decode(telegram, bytes, open, end);
+    }
+
+    /**
+     * Return the index of the first occurrence of a byte in a range of the array.
+     * @param bytes byte[]; the array
+     * @param start int; the first index to look at
+     * @param end int; the index after the last index to look at
+     * @param b char; the byte to look for
+     * @return int; the index of the byte, or end when the byte does not occur in the range
+     */
+    static int indexOf(final byte[] bytes, final int start, final int end, final char b)
+    {
+        int i = start;
+        while (i < end && bytes[i] != b)
+            i++;
+        return i;
+    }
+
+    /**
+     * Pack the OBIS code A-B:C.D.E into an int, with A and B in 4 bits, and C, D and E in 8 bits each.
+     * @param bytes byte[]; the array with the telegram
+     * @param start int; the index of the first byte of the OBIS code
+     * @param end int; the index after the last byte of the OBIS code
+     * @return int; the packed OBIS code, or -1 when the bytes do not form an OBIS code
+     */
+    static int obisCode(final byte[] bytes, final int start, final int end)
+    {
+        int code = 0;
+        int group = 0;
+        int value = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++)
         {
-            return Double.parseDouble(nr);
+            int b = bytes[i];
+            if (b >= '0' && b <= '9')
+            {
+                value = value * 10 + b - '0';
+                if (++digits > 3)
+                    return -1;
+            }
+            else if (group < 4 && b == OBIS_SEPARATORS[group] && digits > 0)
+            {
+                code = (code << (group < 2 ? 4 : 8)) | value;
+                if (value > (group < 2 ? 15 : 255))
+                    return -1;
+                group++;
+                value = 0;
+                digits = 0;
+            }
+            else
+                return -1;
         }
-        catch (NumberFormatException nfe)
+        if (group != 4 || digits == 0 || value > 255)
+            return -1;
+        return (code << 8) | value;
+    }
+
+    /**
+     * Decode an integer from the bytes between the opening bracket and the closing bracket, e.g., (0001).
+     * @param bytes byte[]; the array with the telegram
+     * @param open int; the index of the opening bracket
+     * @param end int; the index after the last byte of the line
+     * @return int; the decoded integer value, or 0 when the value is not an integer
+     */
+    static int decodeInt(final byte[] bytes, final int open, final int end)
+    {
+        int close = indexOf(bytes, open + 1, end, ')');
+        if (close == end)
+            return 0;
+        int value = 0;
+        for (int i = open + 1; i < close; i++)
         {
-            System.err.println("parseFloatUnit. Line: " + line + ", error: " + nfe.getMessage());
-            return 0.0;
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || i - open > 9)
+            {
+                System.err.println("decodeInt. Line: " + new String(bytes, open, end - open, StandardCharsets.ISO_8859_1));
+                return 0;
+            }
+            value = value * 10 + digit;
         }
+        return value;
     }
 
     /**
-     * Parse a floating point value with a unit from the telegram line. The line is formatted, e.g., as
-     * <code>0-1:24.2.1(230505000003S)(05125.733*m3)</code>. The floating point value and unit are enclosed between the second
-     * pair of brackets. The unit is stored after the asterisk.
-     * @param line The line to parse
-     * @return double; the parsed floating point value
+     * Decode a fixed-point decimal with a unit from the bytes between the opening bracket and the asterisk, e.g.,
+     * (001234.567*kWh). The digits are accumulated in a long, and scaled with a power of ten at the end, which gives exactly
+     * the same double as Double.parseDouble.
+     * @param bytes byte[]; the array with the telegram
+     * @param open int; the index of the opening bracket
+     * @param end int; the index after the last byte of the line
+     * @return double; the decoded value, or 0.0 when there is no value with a unit
      */
-    private static double parseFloatUnit2(final String line)
+    static double decodeDecimal(final byte[] bytes, final int open, final int end)
     {
-        int bo = line.indexOf('(', line.indexOf('(') + 1);
-        int bc = line.indexOf('*');
-        if (bo == -1 || bc == -1 || bo > bc)
+        if (open >= end)
             return 0.0;
-        String nr = line.substring(bo + 1, bc);
-        try
-        {
-            return Double.parseDouble(nr);
-        }
-        catch (NumberFormatException nfe)
-        {
-            System.err.println("parseFloatUnit. Line: " + line + ", error: " + nfe.getMessage());
+        int star = indexOf(bytes, open + 1, end, '*');
+        if (star == end)
             return 0.0;
+        long mantissa = 0L;
+        int scale = -1;
+        for (int i = open + 1; i < star; i++)
+        {
+            int b = bytes[i];
+            if (b >= '0' && b <= '9' && i - open <= 18)
+            {
+                mantissa = mantissa * 10 + b - '0';
+                if (scale >= 0)
+                    scale++;
+            }
+            else if (b == '.' && scale < 0)
+                scale = 0;
+            else
+            {
+                String nr = new String(bytes, open + 1, star - open - 1, StandardCharsets.ISO_8859_1);
+                try
+                {
+                    return Double.parseDouble(nr);
+                }
+                catch (NumberFormatException nfe)
+                {
+                    System.err.println("decodeDecimal. Value: " + nr + ", error: " + nfe.getMessage());
+                    return 0.0;
+                }
+            }
         }
+        return scale <= 0 ? mantissa : mantissa / POWERS_OF_TEN[scale];
     }
 
     /**
-     * Parse a hexadecimal value from the telegram line. The line is formatted, e.g., as
-     * <code>0-1:96.1.0(4730303339303031383033353931323138)</code>. The hexadecimal value is enclosed between brackets.
-     * @param line The line to parse
-     * @return String; the parsed hexadecimal string value
+     * Decode two digits.
+     * @param bytes byte[]; the array with the telegram
+     * @param index int; the index of the first digit
+     * @return int; the decoded value, or -1 when the bytes are not two digits
      */
-    private static String parseHex(final String line)
+    private static int decode2(final byte[] bytes, final int index)
     {
-        int bo = line.indexOf('(');
-        int bc = line.lastIndexOf(')');
-        if (bo == -1 || bc == -1 || bo > bc)
-            return "";
-        String hex = line.substring(bo + 1, bc);
-        StringBuilder result = new StringBuilder("");
-        for (int i = 0; i < hex.length(); i += 2)
-        {
-            String str = hex.substring(i, i + 2);
-            result.append((char) Integer.parseInt(str, 16));
-        }
-        return result.toString();
+        int d1 = bytes[index] - '0';
+        int d2 = bytes[index + 1] - '0';
+        if (d1 < 0 || d1 > 9 || d2 < 0 || d2 > 9)
+            return -1;
+        return d1 * 10 + d2;
     }
 
     /**
-     * Parse a date value from the telegram line. The line is formatted, e.g., as <code>0-0:1.0.0(230505000259S)</code>. The
-     * date (and time) value is enclosed between brackets, and formatted as YYMMDDhhmmssX.
-     * @param line The line to parse
-     * @return LocalDate; the parsed date value
+     * Decode the date from a timestamp formatted as (YYMMDDhhmmssX).
+     * @param bytes byte[]; the array with the telegram
+     * @param open int; the index of the opening bracket
+     * @param end int; the index after the last byte of the line
+     * @return LocalDate; the decoded date, or today when the timestamp is not valid
      */
-    private static LocalDate parseDate(final String line)
+    static LocalDate decodeDate(final byte[] bytes, final int open, final int end)
     {
-        int bo = line.indexOf('(');
-        int bc = line.lastIndexOf(')');
-        if (bo == -1 || bc == -1 || bo > bc)
+        if (open + 13 > end)
             return LocalDate.now();
         try
         {
-            return LocalDate.parse(line.substring(bo + 1, bo + 7), DateTimeFormatter.ofPattern("yyMMdd"));
+            return LocalDate.of(2000 + decode2(bytes, open + 1), decode2(bytes, open + 3), decode2(bytes, open + 5));
         }
-        catch (Exception exception)
+        catch (DateTimeException exception)
         {
             return LocalDate.now();
         }
     }
 
     /**
-     * Parse a time value from the telegram line. The line is formatted, e.g., as <code>0-0:1.0.0(230505000259S)</code>. The
-     * time (and date) value is enclosed between brackets, and formatted as YYMMDDhhmmssX.
-     * @param line The line to parse
-     * @return LocalTime; the parsed time value
+     * Decode the time from a timestamp formatted as (YYMMDDhhmmssX).
+     * @param bytes byte[]; the array with the telegram
+     * @param open int; the index of the opening bracket
+     * @param end int; the index after the last byte of the line
+     * @return LocalTime; the decoded time, or the current time when the timestamp is not valid
      */
-    private static LocalTime parseTime(final String line)
+    static LocalTime decodeTime(final byte[] bytes, final int open, final int end)
     {
-        int bo = line.indexOf('(');
-        int bc = line.lastIndexOf(')');
-        if (bo == -1 || bc == -1 || bo > bc)
+        if (open + 13 > end)
             return LocalTime.now();
         try
         {
-            return LocalTime.parse(line.substring(bo + 7, bo + 13), DateTimeFormatter.ofPattern("HHmmss"));
+            return LocalTime.of(decode2(bytes, open + 7), decode2(bytes, open + 9), decode2(bytes, open + 11));
         }
-        catch (Exception exception)
+        catch (DateTimeException exception)
         {
             return LocalTime.now();
         }
     }
 
+    /**
+     * Decode a hex-encoded string between the opening bracket and the last closing bracket, e.g., (4730303339).
+     * @param bytes byte[]; the array with the telegram
+     * @param open int; the index of the opening bracket
+     * @param end int; the index after the last byte of the line
+     * @return String; the decoded string
+     */
+    static String decodeHex(final byte[] bytes, final int open, final int end)
+    {
+        int close = end - 1;
+        while (close > open && bytes[close] != ')')
+            close--;
+        int length = (close - open - 1) / 2;
+        if (length <= 0)
+            return "";
+        char[] chars = new char[length];
+        for (int i = 0, j = open + 1; i < length; i++, j += 2)
+            chars[i] = (char) (Character.digit(bytes[j], 16) << 4 | Character.digit(bytes[j + 1], 16));
+        return new String(chars);
+    }
+
 }
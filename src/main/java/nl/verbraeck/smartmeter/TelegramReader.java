@@ -0,0 +1,327 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * TelegramReader reads the telegrams in a telegram file (or any other stream of telegrams) in one forward pass. A telegram
+ * starts with a line that starts with "/" and ends with a line that starts with "!". Lines outside a telegram, such as the date
+ * and time lines that the cron job writes before each telegram, are skipped. An incomplete telegram at the end of the stream is
+ * ignored. The CRC after the "!" is checked, and a telegram with an invalid CRC (e.g., from a corrupted serial line) is skipped,
+ * unless Constants.CRC_KEEP_INVALID is set; telegrams without a CRC are read as before. Only a telegram that was stored with
+ * its "\r\n" line ends (as the P1 recorder stores them) can be rejected: a telegram that was stored line by line without the
+ * '\r' (as doc/meter.sh stores them) is not verifiable when its CRC does not match, and is counted as missing and kept. The
+ * reader counts the results of the CRC checks; the places where telegrams enter the system add these counts to their
+ * CrcCounts.
+ * <p>
+ * The reader does not read ahead further than the next telegram, so the caller can stop early (e.g., after the first telegram
+ * of a file) without reading the rest of the file. Use the reader in a try-with-resources block, or close the stream returned
+ * by <code>stream()</code>, to close the underlying file.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public class TelegramReader implements Iterator<Telegram>, Closeable
+{
+    /** the size of the read buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** the line terminator that is stored in telegramBytes. */
+    private static final byte[] NEWLINE = new byte[] {'\n'};
+
+    /** the input stream to read the telegrams from. */
+    private final InputStream in;
+
+    /** the read buffer. */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** the position of the next unread byte in the buffer. */
+    private int pos = 0;
+
+    /** the number of valid bytes in the buffer. */
+    private int limit = 0;
+
+    /** the total number of bytes that has been read from the input stream into the buffer. */
+    private long bytesRead = 0L;
+
+    /** the number of bytes from the start of the stream up to and including the last complete telegram that was read. */
+    private long endPosition = 0L;
+
+    /** the lines of the telegram that is being assembled, from the "/" up to and including the "!" line, '\n'-terminated. */
+    private byte[] telegramBytes = new byte[2048];
+
+    /** the number of valid bytes in telegramBytes. */
+    private int telegramLength = 0;
+
+    /** the next telegram to return, or null when it has not been read yet. */
+    private Telegram next = null;
+
+    /** whether the end of the stream has been reached. */
+    private boolean eof = false;
+
+    /** whether the last line that was read ended with "\r\n". */
+    private boolean lineCr = false;
+
+    /** the number of telegrams with a valid CRC that were read. */
+    private long crcValid = 0L;
+
+    /** the number of telegrams with an invalid CRC that were read. */
+    private long crcInvalid = 0L;
+
+    /** the number of telegrams without a CRC that were read. */
+    private long crcMissing = 0L;
+
+    /**
+     * Create a reader for the telegrams in the given input stream. The stream is not buffered by the caller; the reader uses
+     * its own buffer.
+     * @param in InputStream; the stream to read the telegrams from
+     */
+    public TelegramReader(final InputStream in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Open a reader for the telegrams in the given file.
+     * @param path Path; the telegram file to read
+     * @return TelegramReader; a reader that has to be closed by the caller
+     * @throws IOException when the file cannot be opened
+     */
+    public static TelegramReader open(final Path path) throws IOException
+    {
+        return new TelegramReader(Files.newInputStream(path));
+    }
+
+    /**
+     * Return the telegrams as a sequential stream. Closing the stream closes the reader.
+     * @return Stream&lt;Telegram&gt;; a stream of the telegrams in the order of the input
+     */
+    public Stream<Telegram> stream()
+    {
+        return StreamSupport
+                .stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() ->
+                {
+                    try
+                    {
+                        close();
+                    }
+                    catch (IOException exception)
+                    {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasNext()
+    {
+        if (this.next == null && !this.eof)
+        {
+            try
+            {
+                this.next = readTelegram();
+            }
+            catch (IOException exception)
+            {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        return this.next != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Telegram next()
+    {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        Telegram telegram = this.next;
+        this.next = null;
+        return telegram;
+    }
+
+    /**
+     * Read the next complete telegram from the stream.
+     * @return Telegram; the next complete telegram, or null when the stream does not contain another complete telegram
+     * @throws IOException on read error
+     */
+    private Telegram readTelegram() throws IOException
+    {
+        boolean inTelegram = false;
+        boolean crlf = false;
+        this.telegramLength = 0;
+        while (true)
+        {
+            int lineStart = this.telegramLength;
+            int lineLength = readLine();
+            if (lineLength < 0)
+            {
+                this.eof = true;
+                return null; // incomplete or no telegram
+            }
+            byte first = lineLength > 0 ? this.telegramBytes[lineStart] : 0;
+            if (first == '/')
+            {
+                // (re)start the telegram; a previous telegram without "!" is discarded
+                System.arraycopy(this.telegramBytes, lineStart, this.telegramBytes, 0, lineLength + 1);
+                this.telegramLength = lineLength + 1;
+                inTelegram = true;
+                crlf = this.lineCr; // the raw line ends were kept
+            }
+            else if (!inTelegram)
+            {
+                this.telegramLength = lineStart; // skip the line
+            }
+            else if (first == '!')
+            {
+                this.endPosition = this.bytesRead - (this.limit - this.pos);
+                TelegramParser.CrcStatus crc = crlf ? TelegramParser.checkCrc(this.telegramBytes, 0, this.telegramLength)
+                        : TelegramParser.checkStoredCrc(this.telegramBytes, 0, this.telegramLength);
+                if (crc == TelegramParser.CrcStatus.VALID)
+                    this.crcValid++;
+                else if (crc == TelegramParser.CrcStatus.MISSING)
+                    this.crcMissing++;
+                else
+                {
+                    this.crcInvalid++;
+                    if (!Constants.CRC_KEEP_INVALID)
+                    {
+                        // skip the corrupted telegram
+                        this.telegramLength = 0;
+                        inTelegram = false;
+                        continue;
+                    }
+                }
+                Telegram telegram = TelegramParser.parseTelegram(this.telegramBytes, 0, this.telegramLength);
+                telegram.crcInvalid = crc == TelegramParser.CrcStatus.INVALID;
+                return telegram;
+            }
+        }
+    }
+
+    /**
+     * Read one line from the stream and append it to telegramBytes, with a '\n' as the line terminator (a '\r' before the
+     * '\n' is removed).
+     * @return int; the length of the line without terminator, or -1 when the end of the stream was reached before a complete
+     *         line could be read
+     * @throws IOException on read error
+     */
+    private int readLine() throws IOException
+    {
+        int start = this.telegramLength;
+        while (true)
+        {
+            if (this.pos >= this.limit)
+            {
+                this.limit = Math.max(0, this.in.read(this.buffer, 0, BUFFER_SIZE));
+                this.pos = 0;
+                this.bytesRead += this.limit;
+                if (this.limit == 0)
+                {
+                    this.telegramLength = start;
+                    return -1; // a partial last line is not a complete line
+                }
+            }
+            int i = this.pos;
+            while (i < this.limit && this.buffer[i] != '\n')
+                i++;
+            if (i < this.limit)
+            {
+                int end = i > this.pos && this.buffer[i - 1] == '\r' ? i - 1 : i;
+                append(this.buffer, this.pos, end - this.pos);
+                this.pos = i + 1;
+                this.lineCr = end < i;
+                if (this.telegramLength > start && this.telegramBytes[this.telegramLength - 1] == '\r')
+                {
+                    this.telegramLength--; // '\r' at the end of the previous buffer
+                    this.lineCr = true;
+                }
+                int length = this.telegramLength - start;
+                append(NEWLINE, 0, 1);
+                return length;
+            }
+            append(this.buffer, this.pos, i - this.pos);
+            this.pos = this.limit;
+        }
+    }
+
+    /**
+     * Append bytes to telegramBytes, growing the array when needed.
+     * @param src byte[]; the source array
+     * @param offset int; the offset in the source array
+     * @param length int; the number of bytes to append
+     */
+    private void append(final byte[] src, final int offset, final int length)
+    {
+        if (this.telegramLength + length > this.telegramBytes.length)
+        {
+            byte[] grown = new byte[Math.max(2 * this.telegramBytes.length, this.telegramLength + length)];
+            System.arraycopy(this.telegramBytes, 0, grown, 0, this.telegramLength);
+            this.telegramBytes = grown;
+        }
+        System.arraycopy(src, offset, this.telegramBytes, this.telegramLength, length);
+        this.telegramLength += length;
+    }
+
+    /**
+     * Return the number of bytes from the start of the stream up to and including the line terminator of the "!" line of the
+     * last complete telegram that was read. Bytes after this position belong to a telegram that has not been read, or that is
+     * not complete yet. Note that hasNext() reads the next telegram.
+     * @return long; the position in the stream directly after the last complete telegram that was read
+     */
+    public long getEndPosition()
+    {
+        return this.endPosition;
+    }
+
+    /**
+     * Return the number of complete telegrams with a valid CRC that this reader has read.
+     * @return long; the number of telegrams with a valid CRC
+     */
+    public long getCrcValid()
+    {
+        return this.crcValid;
+    }
+
+    /**
+     * Return the number of complete telegrams with an invalid CRC that this reader has read; these telegrams are skipped,
+     * unless Constants.CRC_KEEP_INVALID is set.
+     * @return long; the number of telegrams with an invalid CRC
+     */
+    public long getCrcInvalid()
+    {
+        return this.crcInvalid;
+    }
+
+    /**
+     * Return the number of complete telegrams without a CRC (e.g., of a DSMR 2 or 3 meter) that this reader has read.
+     * @return long; the number of telegrams without a CRC
+     */
+    public long getCrcMissing()
+    {
+        return this.crcMissing;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException
+    {
+        this.in.close();
+    }
+
+}
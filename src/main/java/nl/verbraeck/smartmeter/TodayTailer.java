@@ -0,0 +1,154 @@
+package nl.verbraeck.smartmeter;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * TodayTailer keeps the readings of today's file in memory, as a DaySeries. The cron job appends one telegram per minute to the
+ * file, so instead of parsing the whole file for every request, the tailer remembers the byte offset up to which it has parsed
+ * the file, and only parses the complete telegrams that have been appended since. A telegram that is only partially written is
+ * parsed at the next update. When a new day file appears (at midnight), the tailer switches to the new file and starts with an
+ * empty series.
+ * <p>
+ * The series is published as a snapshot that is replaced when new telegrams arrive, so readers never have to lock. Listeners
+ * are told about the newest telegram after every update that found new telegrams.
+ * </p>
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public class TodayTailer
+{
+    /** the file that is being tailed, or null when no file has been tailed yet. */
+    private Path path = null;
+
+    /** the byte offset in the file directly after the last complete telegram that was parsed. */
+    private long offset = 0L;
+
+    /** the last complete telegram in the file, or null when the file does not contain a complete telegram yet. */
+    private volatile Telegram lastTelegram = null;
+
+    /** the series to which the telegrams of the file are appended. */
+    private DaySeries series = new DaySeries(null, BinaryDayFile.ROWS);
+
+    /** the current snapshot of the series of the file. */
+    private volatile DaySeries seriesSnapshot = this.series.snapshot();
+
+    /** the listeners for new telegrams. */
+    private final List<Consumer<Telegram>> listeners = new CopyOnWriteArrayList<>();
+
+    /** the results of the CRC checks of the telegrams in the tailed files; every telegram is counted once. */
+    private final CrcCounts crcCounts = new CrcCounts();
+
+    /**
+     * Bring the in-memory series up to date with the given file. When the file differs from the file that was tailed before
+     * (e.g., after midnight), the series is restarted for the new file. When the file did not grow, nothing is read.
+     * @param newestPath Path; the newest day file
+     * @throws IOException on read error
+     */
+    public synchronized void update(final Path newestPath) throws IOException
+    {
+        if (!newestPath.equals(this.path))
+        {
+            this.path = newestPath;
+            reset();
+        }
+
+        try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size < this.offset)
+            {
+                // the file has been truncated or replaced; start again
+                reset();
+            }
+            if (size == this.offset)
+                return;
+
+            channel.position(this.offset);
+            Telegram last = null;
+            TelegramReader reader = new TelegramReader(Channels.newInputStream(channel));
+            while (reader.hasNext())
+            {
+                last = reader.next();
+                this.series.append(last);
+            }
+            // telegrams with an invalid CRC after the last telegram are passed as well, so they are not read or counted again
+            this.offset += reader.getEndPosition();
+            this.crcCounts.add(reader);
+            if (last != null)
+            {
+                this.seriesSnapshot = this.series.snapshot();
+                this.lastTelegram = last;
+                for (Consumer<Telegram> listener : this.listeners)
+                    listener.accept(last);
+            }
+        }
+    }
+
+    /**
+     * Start with an empty series at the start of the file.
+     */
+    private void reset()
+    {
+        this.offset = 0L;
+        this.series = new DaySeries(null, BinaryDayFile.ROWS);
+        this.seriesSnapshot = this.series.snapshot();
+        this.lastTelegram = null;
+    }
+
+    /**
+     * Add a listener that gets the newest telegram after every update that found new telegrams. The listener is called in the
+     * thread that calls update(), and should return quickly.
+     * @param listener Consumer&lt;Telegram&gt;; the listener
+     */
+    public void addListener(final Consumer<Telegram> listener)
+    {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Return the results of the CRC checks of the telegrams in the tailed files.
+     * @return CrcCounts; the results of the CRC checks of the tailed telegrams
+     */
+    public CrcCounts getCrcCounts()
+    {
+        return this.crcCounts;
+    }
+
+    /**
+     * Return the file that is being tailed.
+     * @return Path; the file that is being tailed, or null when update() has not been called yet
+     */
+    public synchronized Path getPath()
+    {
+        return this.path;
+    }
+
+    /**
+     * Return the current snapshot of the series of the tailed file. The snapshot does not get new entries anymore.
+     * @return DaySeries; the series of the tailed file
+     */
+    public DaySeries getSeries()
+    {
+        return this.seriesSnapshot;
+    }
+
+    /**
+     * Return the last complete telegram in the tailed file.
+     * @return Telegram; the last complete telegram, or null when the file does not contain a complete telegram yet
+     */
+    public Telegram getLastTelegram()
+    {
+        return this.lastTelegram;
+    }
+
+}
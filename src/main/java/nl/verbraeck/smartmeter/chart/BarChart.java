@@ -1,5 +1,7 @@
 package nl.verbraeck.smartmeter.chart;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,7 +28,10 @@ public class BarChart
     private List<String> labels = new ArrayList<>();
 
     /** the heights of the bars, where each value belongs to a label with the same index. */
-    private List<Double> values = new ArrayList<>();
+    private double[] values = new double[0];
+
+    /** the maximum number of decimals of the values that are sent to the browser. */
+    private int decimals = 3;
 
     /**
      * Make a barchart in a div, where the name is used in the HTML code to link the javascript and the placeholder.
@@ -39,88 +44,117 @@ public class BarChart
 
     /**
      * Make the 'script' part of the HTML page, to be placed in a sequence of scripts for the page. The data for the graph is
-     * provided in JSON format.
+     * provided as arrays of numbers.
+     * @param out Appendable; the destination of the script, e.g., the StringBuilder or Writer of the page
+     * @throws IOException on write error of the destination
+     */
+    public void writeScriptHtml(final Appendable out) throws IOException
+    {
+        out.append("\n<script>\n");
+        out.append("  var ctx = document.getElementById('");
+        out.append(this.chartName);
+        out.append("').getContext('2d');\n");
+        out.append("  var chart").append(this.chartName).append(" = new Chart(ctx, {\n");
+        out.append("    type: 'bar',\n");
+        out.append("    data: {\n");
+        out.append("      labels: [");
+        for (int i = 0; i < this.labels.size(); i++)
+        {
+            if (i > 0)
+                out.append(", ");
+            out.append("'");
+            out.append(this.labels.get(i));
+            out.append("'");
+        }
+        out.append("],\n");
+        out.append("      datasets: [{\n");
+        out.append("        label: '");
+        out.append(this.title);
+        out.append("',\n");
+        out.append("        backgroundColor: 'red',\n");
+        out.append("        borderColor: 'black',\n");
+        out.append("        data: ");
+        NumberFormatter.appendArray(out, this.values, this.labels.size(), this.decimals);
+        out.append(",\n");
+        out.append("        borderwidth: 1\n");
+        out.append("      }]\n");
+        out.append("    },\n");
+        out.append("    options: {\n");
+        out.append("        scales: {\n");
+        out.append("            xAxes: [{\n");
+        out.append("                scaleLabel: {\n");
+        out.append("                    display: false,\n");
+        out.append("                    labelString: 'Time',\n");
+        out.append("                },\n");
+        out.append("                ticks: {\n");
+        out.append("                    autoSkip: false,\n");
+        out.append("                    autoSkipPadding: 1,\n");
+        out.append("                    maxTicksLimit: 50,\n");
+        out.append("                    includeBounds: true,\n");
+        out.append("                    minRotation: 90,\n");
+        out.append("                    maxRotation: 90\n");
+        out.append("                }\n");
+        out.append("            }],\n");
+        out.append("            yAxes: [{\n");
+        out.append("                ticks: {\n");
+        out.append("                    beginAtZero: true\n");
+        out.append("                }\n");
+        out.append("            }]\n");
+        out.append("        }\n");
+        out.append("    }\n");
+        out.append("  });\n");
+        out.append("</script>\n\n");
+    }
+
+    /**
+     * Make the 'div' part of the HTML page, at the location where the graph is to be placed.
+     * @param out Appendable; the destination of the div, e.g., the StringBuilder or Writer of the page
+     * @throws IOException on write error of the destination
+     */
+    public void writeDivHtml(final Appendable out) throws IOException
+    {
+        out.append("<div style=\"width:");
+        out.append(this.width);
+        out.append(";\">\n");
+        out.append("  <canvas id=\"");
+        out.append(this.chartName);
+        out.append("\" width=\"200px\" height=\"100px\" style=\"border:1px solid #000000;\"></canvas>\n");
+        out.append("</div>\n");
+    }
+
+    /**
+     * Make the 'script' part of the HTML page as a String. Use writeScriptHtml() to write the script into the page directly.
      * @return String with the 'script' part of the HTML page
      */
     public String toScriptHtml()
     {
         StringBuilder msg = new StringBuilder();
-        msg.append("\n<script>\n");
-        msg.append("  var ctx = document.getElementById('");
-        msg.append(this.chartName);
-        msg.append("').getContext('2d');\n");
-        msg.append("  var chart" + this.chartName + " = new Chart(ctx, {\n");
-        msg.append("    type: 'bar',\n");
-        msg.append("    data: {\n");
-        msg.append("      labels: [");
-        for (int i = 0; i < this.labels.size(); i++)
+        try
         {
-            if (i > 0)
-                msg.append(", ");
-            msg.append("'");
-            msg.append(this.labels.get(i));
-            msg.append("'");
+            writeScriptHtml(msg);
         }
-        msg.append("],\n");
-        msg.append("      datasets: [{\n");
-        msg.append("        label: '");
-        msg.append(this.title);
-        msg.append("',\n");
-        msg.append("        backgroundColor: 'red',\n");
-        msg.append("        borderColor: 'black',\n");
-        msg.append("        data: [");
-        for (int i = 0; i < this.labels.size(); i++)
+        catch (IOException exception)
         {
-            if (i > 0)
-                msg.append(", ");
-            msg.append(this.values.get(i));
+            throw new UncheckedIOException(exception); // cannot happen for a StringBuilder
         }
-        msg.append("],\n");
-        msg.append("        borderwidth: 1\n");
-        msg.append("      }]\n");
-        msg.append("    },\n");
-        msg.append("    options: {\n");
-        msg.append("        scales: {\n");
-        msg.append("            xAxes: [{\n");
-        msg.append("                scaleLabel: {\n");
-        msg.append("                    display: false,\n");
-        msg.append("                    labelString: 'Time',\n");
-        msg.append("                },\n");
-        msg.append("                ticks: {\n");
-        msg.append("                    autoSkip: false,\n");
-        msg.append("                    autoSkipPadding: 1,\n");
-        msg.append("                    maxTicksLimit: 50,\n");
-        msg.append("                    includeBounds: true,\n");
-        msg.append("                    minRotation: 90,\n");
-        msg.append("                    maxRotation: 90\n");
-        msg.append("                }\n");
-        msg.append("            }],\n");
-        msg.append("            yAxes: [{\n");
-        msg.append("                ticks: {\n");
-        msg.append("                    beginAtZero: true\n");
-        msg.append("                }\n");
-        msg.append("            }]\n");
-        msg.append("        }\n");
-        msg.append("    }\n");
-        msg.append("  });\n");
-        msg.append("</script>\n\n");
         return msg.toString();
     }
 
     /**
-     * Make the 'div' part of the HTML page, at the location where the graph is to be placed.
+     * Make the 'div' part of the HTML page as a String. Use writeDivHtml() to write the div into the page directly.
      * @return String with the 'div' part of the HTML page
      */
     public String toDivHtml()
     {
         StringBuilder msg = new StringBuilder();
-        msg.append("<div style=\"width:");
-        msg.append(this.width);
-        msg.append(";\">\n");
-        msg.append("  <canvas id=\"");
-        msg.append(this.chartName);
-        msg.append("\" width=\"200px\" height=\"100px\" style=\"border:1px solid #000000;\"></canvas>\n");
-        msg.append("</div>\n");
+        try
+        {
+            writeDivHtml(msg);
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception); // cannot happen for a StringBuilder
+        }
         return msg.toString();
     }
 
@@ -148,10 +182,10 @@ public class BarChart
 
     /**
      * Set the bar heights for the bar chart. The method calls can be chained.
-     * @param values List&lt;Double&gt;; the bar heights to use for the chart; each value belongs to a label with the same index
+     * @param values double[]; the bar heights to use for the chart; each value belongs to a label with the same index
      * @return BarChart for chaining the method calls
      */
-    public BarChart setValues(final List<Double> values)
+    public BarChart setValues(final double[] values)
     {
         this.values = values;
         return this;
@@ -168,4 +202,16 @@ public class BarChart
         return this;
     }
 
+    /**
+     * Set the maximum number of decimals of the values that are sent to the browser (0-9). The method calls can be chained.
+     * @param decimals int; the maximum number of decimals of the values
+     * @return BarChart for chaining the method calls
+     * @throws IllegalArgumentException when the number of decimals is not in the range 0-9
+     */
+    public BarChart setDecimals(final int decimals)
+    {
+        this.decimals = NumberFormatter.checkDecimals(decimals);
+        return this;
+    }
+
 }
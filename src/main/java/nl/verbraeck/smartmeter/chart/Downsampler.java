@@ -0,0 +1,230 @@
+package nl.verbraeck.smartmeter.chart;
+
+/**
+ * Downsampling of a series of (x, y) points to a maximum number of points, so a chart of a week, a month, or of 1-second
+ * readings does not send hundreds of thousands of points to the browser. Two methods are offered:
+ * <ul>
+ * <li>Largest-Triangle-Three-Buckets (LTTB, Steinarsson 2013) keeps the visual shape of the line: the points are divided in
+ * buckets, and per bucket the point that forms the largest triangle with the point chosen in the previous bucket and the
+ * average of the next bucket is kept.</li>
+ * <li>The min/max envelope keeps the lowest and the highest point of every bucket, so short spikes, e.g., of the power when a
+ * kettle is switched on, survive the downsampling.</li>
+ * </ul>
+ * Both methods work on primitive arrays, keep the order of the points, and write into arrays provided by the caller, so they do
+ * not allocate. The x values have to be sorted. Points with a NaN y value are only kept when a bucket has no other points.
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class Downsampler
+{
+    /** The downsampling method. */
+    public enum Method
+    {
+        /** Largest-Triangle-Three-Buckets; keeps the shape of the line. */
+        LTTB,
+
+        /** the lowest and highest point of every bucket; keeps short spikes. */
+        MIN_MAX;
+    }
+
+    /**
+     * Utility class; do not instantiate.
+     */
+    private Downsampler()
+    {
+        // Do not instantiate
+    }
+
+    /**
+     * Downsample a series to at most maxPoints points with the given method. Less than 3 points only keep the first and the
+     * last point, or the first point.
+     * @param method Method; the downsampling method
+     * @param x double[]; the x values, sorted
+     * @param y double[]; the y values
+     * @param length int; the number of points in x and y to use
+     * @param maxPoints int; the maximum number of points of the result
+     * @param outX double[]; the array for the x values of the result, with a length of at least min(length, maxPoints)
+     * @param outY double[]; the array for the y values of the result, with a length of at least min(length, maxPoints)
+     * @return int; the number of points of the result
+     */
+    public static int downsample(final Method method, final double[] x, final double[] y, final int length,
+            final int maxPoints, final double[] outX, final double[] outY)
+    {
+        if (maxPoints < 3 && maxPoints < length)
+            return ends(x, y, length, maxPoints, outX, outY);
+        if (method == Method.MIN_MAX)
+            return minMax(x, y, length, maxPoints / 2, outX, outY);
+        return lttb(x, y, length, maxPoints, outX, outY);
+    }
+
+    /**
+     * Downsample a series with Largest-Triangle-Three-Buckets. The first and the last point are always kept; the points in
+     * between are divided in (threshold - 2) buckets, and one point per bucket is kept. A threshold below 3 only keeps the
+     * first and the last point, or the first point.
+     * @param x double[]; the x values, sorted
+     * @param y double[]; the y values
+     * @param length int; the number of points in x and y to use
+     * @param threshold int; the number of points of the result
+     * @param outX double[]; the array for the x values of the result, with a length of at least min(length, threshold)
+     * @param outY double[]; the array for the y values of the result, with a length of at least min(length, threshold)
+     * @return int; the number of points of the result
+     */
+    public static int lttb(final double[] x, final double[] y, final int length, final int threshold, final double[] outX,
+            final double[] outY)
+    {
+        if (threshold >= length)
+            return copy(x, y, length, outX, outY);
+        if (threshold < 3)
+            return ends(x, y, length, threshold, outX, outY);
+
+        double every = (double) (length - 2) / (threshold - 2);
+        int a = 0;
+        int n = 0;
+        outX[n] = x[0];
+        outY[n++] = y[0];
+        for (int bucket = 0; bucket < threshold - 2; bucket++)
+        {
+            // the average of the next bucket (for the last bucket: the last point)
+            int avgStart = (int) ((bucket + 1) * every) + 1;
+            int avgEnd = Math.min((int) ((bucket + 2) * every) + 1, length);
+            double avgX = 0.0;
+            double avgY = 0.0;
+            int avgCount = 0;
+            for (int i = avgStart; i < avgEnd; i++)
+            {
+                if (!Double.isNaN(y[i]))
+                {
+                    avgX += x[i];
+                    avgY += y[i];
+                    avgCount++;
+                }
+            }
+            if (avgCount > 0)
+            {
+                avgX /= avgCount;
+                avgY /= avgCount;
+            }
+            else
+            {
+                avgX = x[Math.min(avgStart, length - 1)];
+                avgY = y[a];
+            }
+
+            // the point in this bucket with the largest triangle with point a and the average of the next bucket
+            int start = (int) (bucket * every) + 1;
+            int end = (int) ((bucket + 1) * every) + 1;
+            double ax = x[a];
+            double ay = Double.isNaN(y[a]) ? avgY : y[a];
+            double maxArea = -1.0;
+            int next = start;
+            for (int i = start; i < end; i++)
+            {
+                double area = Math.abs((ax - avgX) * (y[i] - ay) - (ax - x[i]) * (avgY - ay));
+                if (area > maxArea)
+                {
+                    maxArea = area;
+                    next = i;
+                }
+            }
+            outX[n] = x[next];
+            outY[n++] = y[next];
+            a = next;
+        }
+        outX[n] = x[length - 1];
+        outY[n++] = y[length - 1];
+        return n;
+    }
+
+    /**
+     * Downsample a series to the min/max envelope: the points are divided in the given number of buckets, and the lowest and
+     * the highest point of every bucket are kept, in the order of x. Less than one bucket gives no points.
+     * @param x double[]; the x values, sorted
+     * @param y double[]; the y values
+     * @param length int; the number of points in x and y to use
+     * @param buckets int; the number of buckets; the result has at most twice as many points
+     * @param outX double[]; the array for the x values of the result, with a length of at least min(length, 2 * buckets)
+     * @param outY double[]; the array for the y values of the result, with a length of at least min(length, 2 * buckets)
+     * @return int; the number of points of the result
+     */
+    public static int minMax(final double[] x, final double[] y, final int length, final int buckets, final double[] outX,
+            final double[] outY)
+    {
+        if (2 * buckets >= length)
+            return copy(x, y, length, outX, outY);
+        if (buckets < 1)
+            return 0;
+
+        double every = (double) length / buckets;
+        int n = 0;
+        for (int bucket = 0; bucket < buckets; bucket++)
+        {
+            int start = (int) (bucket * every);
+            int end = bucket == buckets - 1 ? length : (int) ((bucket + 1) * every);
+            int min = start;
+            int max = start;
+            for (int i = start; i < end; i++)
+            {
+                if (Double.isNaN(y[i]))
+                    continue;
+                if (Double.isNaN(y[min]) || y[i] < y[min])
+                    min = i;
+                if (Double.isNaN(y[max]) || y[i] > y[max])
+                    max = i;
+            }
+            int first = Math.min(min, max);
+            int second = Math.max(min, max);
+            outX[n] = x[first];
+            outY[n++] = y[first];
+            if (second != first)
+            {
+                outX[n] = x[second];
+                outY[n++] = y[second];
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Keep the first and the last point, when there is room for less than 3 points.
+     * @param x double[]; the x values
+     * @param y double[]; the y values
+     * @param length int; the number of points in x and y to use
+     * @param maxPoints int; the maximum number of points of the result, less than length and less than 3
+     * @param outX double[]; the array for the x values of the result
+     * @param outY double[]; the array for the y values of the result
+     * @return int; the number of points of the result
+     */
+    private static int ends(final double[] x, final double[] y, final int length, final int maxPoints, final double[] outX,
+            final double[] outY)
+    {
+        if (maxPoints < 1)
+            return 0;
+        outX[0] = x[0];
+        outY[0] = y[0];
+        if (maxPoints == 1)
+            return 1;
+        outX[1] = x[length - 1];
+        outY[1] = y[length - 1];
+        return 2;
+    }
+
+    /**
+     * Copy the points when no downsampling is needed.
+     * @param x double[]; the x values
+     * @param y double[]; the y values
+     * @param length int; the number of points in x and y to use
+     * @param outX double[]; the array for the x values of the result
+     * @param outY double[]; the array for the y values of the result
+     * @return int; the number of points of the result
+     */
+    private static int copy(final double[] x, final double[] y, final int length, final double[] outX, final double[] outY)
+    {
+        System.arraycopy(x, 0, outX, 0, length);
+        System.arraycopy(y, 0, outY, 0, length);
+        return length;
+    }
+
+}
@@ -1,7 +1,7 @@
 package nl.verbraeck.smartmeter.chart;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  * Formatting a data series as a line chart in the browser, using the chart.js library.
@@ -13,6 +13,9 @@ import java.util.List;
  */
 public class LineChart
 {
+    /** the default maximum number of points that is sent to the browser; a day with one point per minute fits. */
+    public static final int DEFAULT_MAX_POINTS = 2000;
+
     /** the name of the chart, to be used in the HTML code to link the javascript and the placeholder. */
     private final String chartName;
 
@@ -23,10 +26,13 @@ public class LineChart
     private String width = "100%";
 
     /** the x values of the line chart. */
-    private List<Double> x = new ArrayList<>();
+    private double[] x = new double[0];
 
     /** the y values of the line chart. */
-    private List<Double> y = new ArrayList<>();
+    private double[] y = new double[0];
+
+    /** the maximum number of decimals of the values that are sent to the browser. */
+    private int decimals = 3;
 
     /** If a maxX value is to be used, provide the max value for the x-axis in this field. */
     private double maxX = Double.NaN;
@@ -43,6 +49,18 @@ public class LineChart
     /** The HTML5 fill color to use in case the graph is to be filled. */
     private String fillColor = "blue";
 
+    /** the maximum number of points that is sent to the browser; longer series are downsampled. */
+    private int maxPoints = DEFAULT_MAX_POINTS;
+
+    /** the method to downsample series that are longer than maxPoints. */
+    private Downsampler.Method downsampling = Downsampler.Method.LTTB;
+
+    /** the field of the telegram events that is appended to the chart, or null when the chart is not live. */
+    private String liveField = null;
+
+    /** the date (yyyy-MM-dd) of the telegram events that are appended to the chart. */
+    private String liveDate = null;
+
     /**
      * Make a line chart in a div, where the name is used in the HTML code to link the javascript and the placeholder.
      * @param chartName unique name of the chart in the HTML file
@@ -54,102 +72,152 @@ public class LineChart
 
     /**
      * Make the 'script' part of the HTML page, to be placed in a sequence of scripts for the page. The data for the graph is
-     * provided in JSON format.
-     * @return String with the 'script' part of the HTML page
+     * provided as arrays of numbers.
+     * @param out Appendable; the destination of the script, e.g., the StringBuilder or Writer of the page
+     * @throws IOException on write error of the destination
      */
-    public String toScriptHtml()
+    public void writeScriptHtml(final Appendable out) throws IOException
     {
-        StringBuilder msg = new StringBuilder();
-        msg.append("\n<script>\n");
-        msg.append("  var ctx = document.getElementById('");
-        msg.append(this.chartName);
-        msg.append("').getContext('2d');\n");
-        msg.append("  var chart" + this.chartName + " = new Chart(ctx, {\n");
-        msg.append("    type: 'line',\n");
-        msg.append("    data: {\n");
-        msg.append("      datasets: [{\n");
+        double[] px = this.x;
+        double[] py = this.y;
+        int count = this.x.length;
+        if (count > this.maxPoints)
+        {
+            px = new double[this.maxPoints];
+            py = new double[this.maxPoints];
+            count = Downsampler.downsample(this.downsampling, this.x, this.y, count, this.maxPoints, px, py);
+        }
+
+        out.append("\n<script>\n");
+        out.append("  var ctx = document.getElementById('");
+        out.append(this.chartName);
+        out.append("').getContext('2d');\n");
+        out.append("  var chart").append(this.chartName).append(" = new Chart(ctx, {\n");
+        out.append("    type: 'line',\n");
+        out.append("    data: {\n");
+        out.append("      datasets: [{\n");
         if (this.fill)
         {
-            msg.append("        fill: 'origin',\n");
-            msg.append("        backgroundColor: '" + this.fillColor + "',\n");
+            out.append("        fill: 'origin',\n");
+            out.append("        backgroundColor: '").append(this.fillColor).append("',\n");
         }
         else
         {
-            msg.append("        fill: false,\n");
-            msg.append("        borderColor: '" + this.fillColor + "',\n");
+            out.append("        fill: false,\n");
+            out.append("        borderColor: '").append(this.fillColor).append("',\n");
         }
-        msg.append("        label: '");
-        msg.append(this.title);
-        msg.append("',\n");
-        msg.append("        pointRadius: 0,\n");
-        msg.append("        stepped: 'before',\n");
-        msg.append("        data: [");
-        for (int i = 0; i < this.x.size(); i++)
+        out.append("        label: '");
+        out.append(this.title);
+        out.append("',\n");
+        out.append("        pointRadius: 0,\n");
+        out.append("        stepped: 'before',\n");
+        out.append("        data: chartPoints(");
+        NumberFormatter.appendArray(out, px, count, this.decimals);
+        out.append(", ");
+        NumberFormatter.appendArray(out, py, count, this.decimals);
+        out.append(")\n");
+        out.append("      }]\n");
+        out.append("    },\n");
+        out.append("    options: {\n");
+        out.append("        scales: {\n");
+        out.append("            x: {\n");
+        out.append("                min: 0,\n");
+        if (!Double.isNaN(this.maxX))
         {
-            if (i > 0)
-                msg.append(", ");
-            msg.append("{ x: ");
-            msg.append(this.x.get(i));
-            msg.append(", y: ");
-            msg.append(this.y.get(i));
-            msg.append("}");
+            out.append("                max: ");
+            NumberFormatter.append(out, this.maxX, this.decimals);
+            out.append(",\n");
         }
-        msg.append("]\n");
-        msg.append("      }]\n");
-        msg.append("    },\n");
-        msg.append("    options: {\n");
-        msg.append("        scales: {\n");
-        msg.append("            x: {\n");
-        msg.append("                min: 0,\n");
-        if (!Double.isNaN(this.maxX))
-            msg.append("                max: " + this.maxX + ",\n");
-        msg.append("            },\n");
-        msg.append("            xAxes: [{\n");
-        msg.append("                type: 'linear',\n");
-        msg.append("                position: 'bottom',\n");
-        msg.append("                maxTicksLimit: 25,\n");
-        msg.append("                includeBounds: true,\n");
-        msg.append("                ticks: {\n");
+        out.append("            },\n");
+        out.append("            xAxes: [{\n");
+        out.append("                type: 'linear',\n");
+        out.append("                position: 'bottom',\n");
+        out.append("                maxTicksLimit: 25,\n");
+        out.append("                includeBounds: true,\n");
+        out.append("                ticks: {\n");
         if (this.hours)
         {
-            msg.append("                    callback: function(val, index) {\n");
-            msg.append("                        return ' ' + index + ':00';\n");
-            msg.append("                    },\n");
-            msg.append("                    stepSize: 60,\n");
+            out.append("                    callback: function(val, index) {\n");
+            out.append("                        return ' ' + index + ':00';\n");
+            out.append("                    },\n");
+            out.append("                    stepSize: 60,\n");
         }
         else if (this.tickStepSize > 0)
         {
-            msg.append("                    stepSize: " + this.tickStepSize + ",\n");
+            out.append("                    stepSize: ").append(Integer.toString(this.tickStepSize)).append(",\n");
         }
-        msg.append("                    includeBounds: true,\n");
-        msg.append("                    minRotation: 90,\n");
-        msg.append("                    maxRotation: 90,\n");
-        msg.append("                    min: 0,\n");
+        out.append("                    includeBounds: true,\n");
+        out.append("                    minRotation: 90,\n");
+        out.append("                    maxRotation: 90,\n");
+        out.append("                    min: 0,\n");
         if (!Double.isNaN(this.maxX))
-            msg.append("                    max: " + this.maxX + ",\n");
-        msg.append("                }\n");
-        msg.append("            }]\n");
-        msg.append("        }\n");
-        msg.append("    }\n");
-        msg.append("  });\n");
-        msg.append("</script>\n\n");
-        return msg.toString();
+        {
+            out.append("                    max: ");
+            NumberFormatter.append(out, this.maxX, this.decimals);
+            out.append(",\n");
+        }
+        out.append("                }\n");
+        out.append("            }]\n");
+        out.append("        }\n");
+        out.append("    }\n");
+        out.append("  });\n");
+        if (this.liveField != null)
+        {
+            out.append("  liveChart(chart").append(this.chartName).append(", '").append(this.liveDate).append("', '");
+            out.append(this.liveField).append("');\n");
+        }
+        out.append("</script>\n\n");
     }
 
     /**
      * Make the 'div' part of the HTML page, at the location where the graph is to be placed.
+     * @param out Appendable; the destination of the div, e.g., the StringBuilder or Writer of the page
+     * @throws IOException on write error of the destination
+     */
+    public void writeDivHtml(final Appendable out) throws IOException
+    {
+        out.append("<div style=\"width:");
+        out.append(this.width);
+        out.append(";\">\n");
+        out.append("  <canvas id=\"");
+        out.append(this.chartName);
+        out.append("\" width=\"200\" height=\"100\" style=\"border:1px solid #000000;\"></canvas>\n");
+        out.append("</div>\n");
+    }
+
+    /**
+     * Make the 'script' part of the HTML page as a String. Use writeScriptHtml() to write the script into the page directly.
+     * @return String with the 'script' part of the HTML page
+     */
+    public String toScriptHtml()
+    {
+        StringBuilder msg = new StringBuilder();
+        try
+        {
+            writeScriptHtml(msg);
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception); // cannot happen for a StringBuilder
+        }
+        return msg.toString();
+    }
+
+    /**
+     * Make the 'div' part of the HTML page as a String. Use writeDivHtml() to write the div into the page directly.
      * @return String with the 'div' part of the HTML page
      */
     public String toDivHtml()
     {
         StringBuilder msg = new StringBuilder();
-        msg.append("<div style=\"width:");
-        msg.append(this.width);
-        msg.append(";\">\n");
-        msg.append("  <canvas id=\"");
-        msg.append(this.chartName);
-        msg.append("\" width=\"200\" height=\"100\" style=\"border:1px solid #000000;\"></canvas>\n");
-        msg.append("</div>\n");
+        try
+        {
+            writeDivHtml(msg);
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception); // cannot happen for a StringBuilder
+        }
         return msg.toString();
     }
 
@@ -166,10 +234,10 @@ public class LineChart
 
     /**
      * Set the x-values of the points to use for the line chart. The method calls can be chained.
-     * @param x List&lt;Double&gt;; the x values of the line chart
+     * @param x double[]; the x values of the line chart
      * @return LineChart for chaining the method calls
      */
-    public LineChart setX(final List<Double> x)
+    public LineChart setX(final double[] x)
     {
         this.x = x;
         return this;
@@ -177,10 +245,10 @@ public class LineChart
 
     /**
      * Set the y-values of the points to use for the line chart. The method calls can be chained.
-     * @param y List&lt;Double&gt;; the y values of the line chart
+     * @param y double[]; the y values of the line chart
      * @return LineChart for chaining the method calls
      */
-    public LineChart setY(final List<Double> y)
+    public LineChart setY(final double[] y)
     {
         this.y = y;
         return this;
@@ -252,4 +320,58 @@ public class LineChart
         return this;
     }
 
+    /**
+     * Set the maximum number of points that is sent to the browser, e.g., the width of the chart in pixels. Series with more
+     * points are downsampled. The method calls can be chained.
+     * @param maxPoints int; the maximum number of points of the line chart, at least 3
+     * @return LineChart for chaining the method calls
+     * @throws IllegalArgumentException when maxPoints is less than 3
+     */
+    public LineChart setMaxPoints(final int maxPoints)
+    {
+        if (maxPoints < 3)
+            throw new IllegalArgumentException("maxPoints should be at least 3: " + maxPoints);
+        this.maxPoints = maxPoints;
+        return this;
+    }
+
+    /**
+     * Set the method to downsample series with more than the maximum number of points: LTTB to keep the shape of the line, or
+     * MIN_MAX to keep short spikes. The method calls can be chained.
+     * @param downsampling Downsampler.Method; the downsampling method
+     * @return LineChart for chaining the method calls
+     */
+    public LineChart setDownsampling(final Downsampler.Method downsampling)
+    {
+        this.downsampling = downsampling;
+        return this;
+    }
+
+    /**
+     * Make the chart live: the browser appends the value of the given field of every new telegram from the /events stream to
+     * the chart, with the minute of the day as the x-value. Only telegrams of the given date are appended, so the x-axis has to
+     * be in minutes of that day. The method calls can be chained.
+     * @param date String; the date (yyyy-MM-dd) of the chart
+     * @param field String; the field of the telegram events, e.g., powerDelivered or voltageL1
+     * @return LineChart for chaining the method calls
+     */
+    public LineChart setLive(final String date, final String field)
+    {
+        this.liveDate = date;
+        this.liveField = field;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of decimals of the values that are sent to the browser (0-9). The method calls can be chained.
+     * @param decimals int; the maximum number of decimals of the values
+     * @return LineChart for chaining the method calls
+     * @throws IllegalArgumentException when the number of decimals is not in the range 0-9
+     */
+    public LineChart setDecimals(final int decimals)
+    {
+        this.decimals = NumberFormatter.checkDecimals(decimals);
+        return this;
+    }
+
 }
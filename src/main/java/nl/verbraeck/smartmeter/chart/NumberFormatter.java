@@ -0,0 +1,121 @@
+package nl.verbraeck.smartmeter.chart;
+
+import java.io.IOException;
+
+/**
+ * Fast fixed-precision formatting of numbers for the data of the charts. A value is rounded to a fixed number of decimals, and
+ * trailing zeros are left out, so 0.25 with 3 decimals is written as 0.25, 1.0 as 1, and 228.04999 as 228.05. The digits are
+ * appended one by one to the Appendable, without creating a String per value as Double.toString() does. NaN and infinite
+ * values, and values that are too large for the fixed-precision path, are written with Double.toString().
+ * <p>
+ * Copyright (c) 2020-2023 Alexander Verbraeck, Delft, the Netherlands. All rights reserved. <br>
+ * MIT-license.
+ * </p>
+ * @author <a href="https://github.com/averbraeck">Alexander Verbraeck</a>
+ */
+public final class NumberFormatter
+{
+    /** the powers of ten for the supported number of decimals. */
+    private static final long[] POWERS_OF_TEN =
+            {1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L};
+
+    /** the largest scaled value that is written with the fixed-precision path. */
+    private static final double MAX_SCALED = 1.0E17;
+
+    /**
+     * Utility class; do not instantiate.
+     */
+    private NumberFormatter()
+    {
+        // Do not instantiate
+    }
+
+    /**
+     * Check that a number of decimals is supported, for the setters that store it.
+     * @param decimals int; the maximum number of decimals
+     * @return int; the number of decimals
+     * @throws IllegalArgumentException when the number of decimals is not in the range 0-9
+     */
+    public static int checkDecimals(final int decimals)
+    {
+        if (decimals < 0 || decimals >= POWERS_OF_TEN.length)
+            throw new IllegalArgumentException("decimals should be in the range 0-9: " + decimals);
+        return decimals;
+    }
+
+    /**
+     * Append a value with at most the given number of decimals.
+     * @param out Appendable; the destination
+     * @param value double; the value to write
+     * @param decimals int; the maximum number of decimals (0-9)
+     * @throws IOException on write error of the destination
+     */
+    public static void append(final Appendable out, final double value, final int decimals) throws IOException
+    {
+        double scaledValue = Math.abs(value) * POWERS_OF_TEN[decimals];
+        if (!(scaledValue < MAX_SCALED)) // also true for NaN
+        {
+            out.append(Double.toString(value));
+            return;
+        }
+        long scaled = Math.round(scaledValue);
+        if (value < 0.0 && scaled != 0L)
+            out.append('-');
+        long whole = scaled / POWERS_OF_TEN[decimals];
+        long fraction = scaled % POWERS_OF_TEN[decimals];
+        appendDigits(out, whole, 1);
+        if (fraction != 0L)
+        {
+            int digits = decimals;
+            while (fraction % 10L == 0L)
+            {
+                fraction /= 10L;
+                digits--;
+            }
+            out.append('.');
+            appendDigits(out, fraction, digits);
+        }
+    }
+
+    /**
+     * Append the first values of an array as a JavaScript array, e.g., [0,1.5,2.25], with at most the given number of decimals.
+     * @param out Appendable; the destination
+     * @param values double[]; the values
+     * @param length int; the number of values to write
+     * @param decimals int; the maximum number of decimals (0-9)
+     * @throws IOException on write error of the destination
+     */
+    public static void appendArray(final Appendable out, final double[] values, final int length, final int decimals)
+            throws IOException
+    {
+        out.append('[');
+        for (int i = 0; i < length; i++)
+        {
+            if (i > 0)
+                out.append(',');
+            append(out, values[i], decimals);
+        }
+        out.append(']');
+    }
+
+    /**
+     * Append a non-negative number with leading zeros up to the given number of digits.
+     * @param out Appendable; the destination
+     * @param number long; the non-negative number
+     * @param width int; the minimum number of digits
+     * @throws IOException on write error of the destination
+     */
+    private static void appendDigits(final Appendable out, final long number, final int width) throws IOException
+    {
+        long power = 1L;
+        int digits = 1;
+        while (digits < width || power <= number / 10L)
+        {
+            power *= 10L;
+            digits++;
+        }
+        for (; power > 0L; power /= 10L)
+            out.append((char) ('0' + (number / power) % 10L));
+    }
+
+}
@@ -1,7 +1,7 @@
 package nl.verbraeck.smartmeter.chart;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  * Formatting a data series as a scatter plot in the browser, using the chart.js library.
@@ -23,10 +23,13 @@ public class ScatterChart
     private String width = "100%";
 
     /** the x values of the scatter plot. */
-    private List<Double> x = new ArrayList<>();
+    private double[] x = new double[0];
 
     /** the y values of the scatter plot. */
-    private List<Double> y = new ArrayList<>();
+    private double[] y = new double[0];
+
+    /** the maximum number of decimals of the values that are sent to the browser. */
+    private int decimals = 3;
 
     /**
      * Make a scatter plot in a div, where the name is used in the HTML code to link the javascript and the placeholder.
@@ -39,64 +42,91 @@ public class ScatterChart
 
     /**
      * Make the 'script' part of the HTML page, to be placed in a sequence of scripts for the page. The data for the graph is
-     * provided in JSON format.
+     * provided as arrays of numbers.
+     * @param out Appendable; the destination of the script, e.g., the StringBuilder or Writer of the page
+     * @throws IOException on write error of the destination
+     */
+    public void writeScriptHtml(final Appendable out) throws IOException
+    {
+        out.append("\n<script>\n");
+        out.append("  var ctx = document.getElementById('");
+        out.append(this.chartName);
+        out.append("').getContext('2d');\n");
+        out.append("  var chart").append(this.chartName).append(" = new Chart(ctx, {\n");
+        out.append("    type: 'scatter',\n");
+        out.append("    data: {\n");
+        out.append("      datasets: [{\n");
+        out.append("        label: '");
+        out.append(this.title);
+        out.append("',\n");
+        out.append("        data: chartPoints(");
+        NumberFormatter.appendArray(out, this.x, this.x.length, this.decimals);
+        out.append(", ");
+        NumberFormatter.appendArray(out, this.y, this.x.length, this.decimals);
+        out.append(")\n");
+        out.append("      }]\n");
+        out.append("    },\n");
+        out.append("    options: {\n");
+        out.append("        scales: {\n");
+        out.append("            xAxes: [{\n");
+        out.append("                type: 'linear',\n");
+        out.append("                position: 'bottom'\n");
+        out.append("            }]\n");
+        out.append("        }\n");
+        out.append("    }\n");
+        out.append("  });\n");
+        out.append("</script>\n\n");
+    }
+
+    /**
+     * Make the 'div' part of the HTML page, at the location where the graph is to be placed.
+     * @param out Appendable; the destination of the div, e.g., the StringBuilder or Writer of the page
+     * @throws IOException on write error of the destination
+     */
+    public void writeDivHtml(final Appendable out) throws IOException
+    {
+        out.append("<div style=\"width:");
+        out.append(this.width);
+        out.append(";\">\n");
+        out.append("  <canvas id=\"");
+        out.append(this.chartName);
+        out.append("\" width=\"200\" height=\"100\" style=\"border:1px solid #000000;\"></canvas>\n");
+        out.append("</div>\n");
+    }
+
+    /**
+     * Make the 'script' part of the HTML page as a String. Use writeScriptHtml() to write the script into the page directly.
      * @return String with the 'script' part of the HTML page
      */
     public String toScriptHtml()
     {
         StringBuilder msg = new StringBuilder();
-        msg.append("\n<script>\n");
-        msg.append("  var ctx = document.getElementById('");
-        msg.append(this.chartName);
-        msg.append("').getContext('2d');\n");
-        msg.append("  var chart" + this.chartName + " = new Chart(ctx, {\n");
-        msg.append("    type: 'scatter',\n");
-        msg.append("    data: {\n");
-        msg.append("      datasets: [{\n");
-        msg.append("        label: '");
-        msg.append(this.title);
-        msg.append("',\n");
-        msg.append("        data: [");
-        for (int i = 0; i < this.x.size(); i++)
+        try
+        {
+            writeScriptHtml(msg);
+        }
+        catch (IOException exception)
         {
-            if (i > 0)
-                msg.append(", ");
-            msg.append("{ x: ");
-            msg.append(this.x.get(i));
-            msg.append(", y: ");
-            msg.append(this.y.get(i));
-            msg.append("}");
+            throw new UncheckedIOException(exception); // cannot happen for a StringBuilder
         }
-        msg.append("]\n");
-        msg.append("      }]\n");
-        msg.append("    },\n");
-        msg.append("    options: {\n");
-        msg.append("        scales: {\n");
-        msg.append("            xAxes: [{\n");
-        msg.append("                type: 'linear',\n");
-        msg.append("                position: 'bottom'\n");
-        msg.append("            }]\n");
-        msg.append("        }\n");
-        msg.append("    }\n");
-        msg.append("  });\n");
-        msg.append("</script>\n\n");
         return msg.toString();
     }
 
     /**
-     * Make the 'div' part of the HTML page, at the location where the graph is to be placed.
+     * Make the 'div' part of the HTML page as a String. Use writeDivHtml() to write the div into the page directly.
      * @return String with the 'div' part of the HTML page
      */
     public String toDivHtml()
     {
         StringBuilder msg = new StringBuilder();
-        msg.append("<div style=\"width:");
-        msg.append(this.width);
-        msg.append(";\">\n");
-        msg.append("  <canvas id=\"");
-        msg.append(this.chartName);
-        msg.append("\" width=\"200\" height=\"100\" style=\"border:1px solid #000000;\"></canvas>\n");
-        msg.append("</div>\n");
+        try
+        {
+            writeDivHtml(msg);
+        }
+        catch (IOException exception)
+        {
+            throw new UncheckedIOException(exception); // cannot happen for a StringBuilder
+        }
         return msg.toString();
     }
 
@@ -113,10 +143,10 @@ public class ScatterChart
 
     /**
      * Set the x-values of the points to use for the scatter plot. The method calls can be chained.
-     * @param x List&lt;Double&gt;; the x values of the scatter plot
+     * @param x double[]; the x values of the scatter plot
      * @return ScatterChart for chaining the method calls
      */
-    public ScatterChart setX(final List<Double> x)
+    public ScatterChart setX(final double[] x)
     {
         this.x = x;
         return this;
@@ -124,10 +154,10 @@ public class ScatterChart
 
     /**
      * Set the y-values of the points to use for the scatter plot. The method calls can be chained.
-     * @param y List&lt;Double&gt;; the y values of the scatter plot
+     * @param y double[]; the y values of the scatter plot
      * @return ScatterChart for chaining the method calls
      */
-    public ScatterChart setY(final List<Double> y)
+    public ScatterChart setY(final double[] y)
     {
         this.y = y;
         return this;
@@ -144,4 +174,16 @@ public class ScatterChart
         return this;
     }
 
+    /**
+     * Set the maximum number of decimals of the values that are sent to the browser (0-9). The method calls can be chained.
+     * @param decimals int; the maximum number of decimals of the values
+     * @return ScatterChart for chaining the method calls
+     * @throws IllegalArgumentException when the number of decimals is not in the range 0-9
+     */
+    public ScatterChart setDecimals(final int decimals)
+    {
+        this.decimals = NumberFormatter.checkDecimals(decimals);
+        return this;
+    }
+
 }